@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import com.google.gson.Gson;
+import fr.litarvan.openauth.json.GsonCodec;
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.json.JsonModels;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.AuthError;
+import fr.litarvan.openauth.model.request.AuthRequest;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the Yggdrasil requests and parsing of its responses
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class YggdrasilModelBenchmark {
+
+    /**
+     * The default reflection-free codec, the shared Gson with the hand-written adapters, or a plain
+     * reflective Gson for comparison
+     */
+    @Param({"model", "adapters", "reflective"})
+    public String codec;
+
+    private JsonCodec json;
+
+    @Setup
+    public void setup() {
+        switch (codec) {
+            case "model": json = ModelCodec.INSTANCE; break;
+            case "adapters": json = new GsonCodec(JsonModels.GSON); break;
+            default: json = new GsonCodec(new Gson());
+        }
+    }
+
+    private final AuthRequest authRequest = new AuthRequest(AuthAgent.MINECRAFT, "litarvan@example.com", "correct horse battery staple", "4b1d5ba1-3f45-4f2e-8c11-3e7c55d5a0f2");
+
+    @Benchmark
+    public String serializeAuthRequest() {
+        return json.encode(authRequest);
+    }
+
+    /**
+     * The request body as sent, from the byte templates of the model codec
+     */
+    @Benchmark
+    public byte[] encodeAuthRequestBody() {
+        return json.encodeBytes(authRequest);
+    }
+
+    @Benchmark
+    public AuthResponse parseAuthResponse() throws IOException {
+        return json.decode(Payloads.AUTH_RESPONSE, AuthResponse.class);
+    }
+
+    @Benchmark
+    public RefreshResponse parseRefreshResponse() throws IOException {
+        return json.decode(Payloads.REFRESH_RESPONSE, RefreshResponse.class);
+    }
+
+    @Benchmark
+    public AuthError parseAuthError() throws IOException {
+        return json.decode(Payloads.AUTH_ERROR, AuthError.class);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.microsoft;
+
+import fr.litarvan.openauth.Payloads;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Microsoft login helpers: form encoding, token extraction and response reading
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MicrosoftHelpersBenchmark {
+
+    private final HttpClient http = new HttpClient();
+
+    private final MicrosoftAuthenticator authenticator = new MicrosoftAuthenticator();
+
+    private final Map<String, String> params = new LinkedHashMap<>();
+
+    private URL jsonUrl;
+
+    private URL loginPageUrl;
+
+    private byte[] jsonPayload;
+
+    private byte[] loginPagePayload;
+
+    @Setup
+    public void setup() throws MalformedURLException {
+        params.putAll(authenticator.getLoginParams());
+        params.put("login", "litarvan@example.com");
+        params.put("passwd", "correct horse battery staple & co");
+        params.put("PPFT", "DUOdWq1w9cO6hH4hG8aY2q0yI6U1sKqR3XUp2lJ!*$");
+
+        jsonUrl = new URL(MicrosoftAuthenticator.MINECRAFT_PROFILE_ENDPOINT);
+        loginPageUrl = new URL("https://login.live.com/oauth20_authorize.srf");
+        jsonPayload = Payloads.MINECRAFT_PROFILE.getBytes(StandardCharsets.UTF_8);
+        loginPagePayload = Payloads.LOGIN_PAGE.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String buildParams() {
+        return http.buildParams(params);
+    }
+
+    @Benchmark
+    public AuthTokens extractTokens() throws MicrosoftAuthenticationException {
+        return authenticator.extractTokens(Payloads.TOKENS_URL);
+    }
+
+    @Benchmark
+    public String readJsonResponse() throws MicrosoftAuthenticationException {
+        return http.readResponse(new CannedConnection(jsonUrl, jsonPayload));
+    }
+
+    @Benchmark
+    public String readPatchedLoginPage() throws MicrosoftAuthenticationException {
+        return http.readResponse(new CannedConnection(loginPageUrl, loginPagePayload));
+    }
+
+    /**
+     * A connection answering a canned payload, without any I/O
+     */
+    private static class CannedConnection extends HttpURLConnection {
+
+        private final byte[] payload;
+
+        private CannedConnection(URL url, byte[] payload) {
+            super(url);
+            this.payload = payload;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(payload);
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return null;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.microsoft;
+
+import com.google.gson.Gson;
+import fr.litarvan.openauth.json.GsonCodec;
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.json.JsonModels;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.Payloads;
+import fr.litarvan.openauth.microsoft.model.response.MinecraftProfile;
+import fr.litarvan.openauth.microsoft.model.response.MinecraftStoreResponse;
+import fr.litarvan.openauth.microsoft.model.response.XboxLoginResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the Xbox Live and Minecraft services responses
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MicrosoftModelBenchmark {
+
+    /**
+     * The default reflection-free codec, the shared Gson with the hand-written adapters, or a plain
+     * reflective Gson for comparison
+     */
+    @Param({"model", "adapters", "reflective"})
+    public String codec;
+
+    private JsonCodec json;
+
+    @Setup
+    public void setup() {
+        switch (codec) {
+            case "model": json = ModelCodec.INSTANCE; break;
+            case "adapters": json = new GsonCodec(JsonModels.GSON); break;
+            default: json = new GsonCodec(new Gson());
+        }
+    }
+
+    @Benchmark
+    public XboxLoginResponse parseXboxLoginResponse() throws IOException {
+        return json.decode(Payloads.XBOX_LOGIN_RESPONSE, XboxLoginResponse.class);
+    }
+
+    @Benchmark
+    public MinecraftProfile parseMinecraftProfile() throws IOException {
+        return json.decode(Payloads.MINECRAFT_PROFILE, MinecraftProfile.class);
+    }
+
+    @Benchmark
+    public MinecraftStoreResponse parseMinecraftStoreResponse() throws IOException {
+        return json.decode(Payloads.MINECRAFT_STORE_RESPONSE, MinecraftStoreResponse.class);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import fr.litarvan.openauth.model.AuthError;
+
+/**
+ * Auth Result
+ *
+ * <p>
+ *     The outcome of a request of the {@code try} methods of {@link Authenticator}: the response of
+ *     the server, or the error it returned, without anything being thrown. Expected failures (like
+ *     an invalid token on validate) are then handled as plain values.
+ * </p>
+ *
+ * <p>
+ *     The requests produce these results all the way from the response, the throwing methods of
+ *     {@link Authenticator} being built on them with {@link #orElseThrow()}.
+ * </p>
+ *
+ * @param <T> The type of the response (Void for the requests without one)
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class AuthResult<T> {
+
+    /**
+     * The response, or null if the request failed or has no response
+     */
+    private final T value;
+
+    /**
+     * The failure, or null if the request succeeded
+     */
+    private final AuthenticationException failure;
+
+    private AuthResult(T value, AuthenticationException failure) {
+        this.value = value;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates the result of a successful request
+     *
+     * @param value
+     *            The response of the server (optional)
+     *
+     * @return The result
+     */
+    public static <T> AuthResult<T> success(T value) {
+        return new AuthResult<>(value, null);
+    }
+
+    /**
+     * Creates the result of a failed request
+     *
+     * @param failure
+     *            The failure of the request
+     *
+     * @return The result
+     */
+    public static <T> AuthResult<T> failure(AuthenticationException failure) {
+        if (failure == null) {
+            throw new IllegalArgumentException("failure can't be null");
+        }
+
+        return new AuthResult<>(null, failure);
+    }
+
+    /**
+     * Returns whether the request succeeded
+     *
+     * @return If the server accepted the request
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Returns the response of the server
+     *
+     * @return The response, or null if the request failed or has no response
+     */
+    public T getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the error returned by the server, or describing why the request failed
+     *
+     * @return The error, or null if the request succeeded
+     */
+    public AuthError getError() {
+        return failure != null ? failure.getErrorModel() : null;
+    }
+
+    /**
+     * Returns the HTTP status code of the error response
+     *
+     * @return The status code, or -1 if the request succeeded or the server did not answer
+     */
+    public int getStatusCode() {
+        return failure != null ? failure.getStatusCode() : -1;
+    }
+
+    /**
+     * Returns the failure of the request, which has no stack trace if the server answered with an error
+     *
+     * @return The failure, or null if the request succeeded
+     */
+    public AuthenticationException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Returns the response, or throws the failure like the throwing methods of {@link Authenticator} do
+     *
+     * @throws AuthenticationException If the request failed
+     *
+     * @return The response
+     */
+    public T orElseThrow() throws AuthenticationException {
+        if (failure != null) {
+            throw failure;
+        }
+
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        if (failure == null) {
+            return "AuthResult[success]";
+        }
+
+        AuthError error = failure.getErrorModel();
+        return "AuthResult[failure, " + (failure.getStatusCode() != -1 ? failure.getStatusCode() + " " : "")
+                + (error != null ? error.getError() + ": " + error.getErrorMessage() : failure.getMessage()) + "]";
+    }
+}
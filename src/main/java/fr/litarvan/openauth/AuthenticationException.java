@@ -33,6 +33,16 @@ public class AuthenticationException extends Exception {
      */
     private AuthError model;
 
+    /**
+     * The HTTP status code of the response, or -1 if the server did not answer
+     */
+    private int statusCode = -1;
+
+    /**
+     * The delay asked by the server before retrying (Retry-After header) in milliseconds, or -1 if none
+     */
+    private long retryAfter = -1;
+
     /**
      * Create a new Authentication Exception
      *
@@ -44,6 +54,68 @@ public class AuthenticationException extends Exception {
         this.model = model;
     }
 
+    /**
+     * Create a new Authentication Exception from an error response of the server
+     *
+     * @param model
+     *            The given JSON model instance of the error
+     * @param statusCode
+     *            The HTTP status code of the response
+     */
+    public AuthenticationException(AuthError model, int statusCode) {
+        this(model);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Create a new Authentication Exception from an error response of the server
+     *
+     * @param model
+     *            The given JSON model instance of the error
+     * @param statusCode
+     *            The HTTP status code of the response
+     * @param retryAfter
+     *            The delay asked by the server before retrying in milliseconds, or -1 if none
+     */
+    public AuthenticationException(AuthError model, int statusCode, long retryAfter) {
+        this(model, statusCode);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Create a new Authentication Exception for an expected failure: an error response of the server,
+     * or a request refused before being sent. These are frequent outcomes rather than bugs, so their
+     * stack trace can be left unfilled, saving its capture.
+     *
+     * @param model
+     *            The given JSON model instance of the error
+     * @param statusCode
+     *            The HTTP status code of the response, or -1 if the request was not sent
+     * @param retryAfter
+     *            The delay asked by the server before retrying in milliseconds, or -1 if none
+     * @param writableStackTrace
+     *            If the stack trace should be filled
+     */
+    protected AuthenticationException(AuthError model, int statusCode, long retryAfter, boolean writableStackTrace) {
+        super(model.getErrorMessage(), null, true, writableStackTrace);
+        this.model = model;
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Create a new Authentication Exception caused by a failure of the request itself
+     *
+     * @param model
+     *            The JSON model instance describing the error
+     * @param cause
+     *            The exception that made the request fail
+     */
+    public AuthenticationException(AuthError model, Throwable cause) {
+        super(model.getErrorMessage(), cause);
+        this.model = model;
+    }
+
     /**
      * Returns the given JSON model instance of the error
      *
@@ -52,4 +124,22 @@ public class AuthenticationException extends Exception {
     public AuthError getErrorModel() {
         return model;
     }
+
+    /**
+     * Returns the HTTP status code of the error response
+     *
+     * @return The status code, or -1 if the server did not answer
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the delay the server asked to wait before retrying, from its Retry-After header
+     *
+     * @return The delay in milliseconds, or -1 if the server did not give one
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
 }
\ No newline at end of file
@@ -18,18 +18,40 @@
  */
 package fr.litarvan.openauth;
 
-import com.google.gson.Gson;
+import fr.litarvan.openauth.events.AuthEvent;
+import fr.litarvan.openauth.events.AuthEvents;
+import fr.litarvan.openauth.json.InvalidJsonException;
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.metrics.MetricsRecorder;
 import fr.litarvan.openauth.model.AuthAgent;
 import fr.litarvan.openauth.model.AuthError;
 import fr.litarvan.openauth.model.request.*;
 import fr.litarvan.openauth.model.response.AuthResponse;
 import fr.litarvan.openauth.model.response.RefreshResponse;
+import fr.litarvan.openauth.resilience.CircuitBreaker;
+import fr.litarvan.openauth.resilience.RateLimiter;
+import fr.litarvan.openauth.resilience.ResiliencePolicy;
+import fr.litarvan.openauth.resilience.ServerPool;
+import fr.litarvan.openauth.transport.CountingInputStream;
+import fr.litarvan.openauth.transport.HttpRequest;
+import fr.litarvan.openauth.transport.HttpResponse;
+import fr.litarvan.openauth.transport.HttpTransport;
+import fr.litarvan.openauth.transport.HttpTransports;
+import fr.litarvan.openauth.validation.ValidationCache;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * The Authenticator
@@ -41,7 +63,7 @@ import java.nio.charset.StandardCharsets;
  * @version 1.0.4
  * @author Litarvan
  */
-public class Authenticator {
+public class Authenticator implements Closeable {
 
     /**
      * The Mojang official auth server
@@ -51,17 +73,87 @@ public class Authenticator {
     public static final String MOJANG_AUTH_URL = "https://authserver.mojang.com/";
 
     /**
-     * The auth server URL
+     * The maximum number of threads of the default executor of the async requests
+     */
+    public static final int DEFAULT_IO_THREADS = 16;
+
+    /**
+     * The maximum number of characters of an error response read
+     */
+    private static final int MAX_ERROR_LENGTH = 64 * 1024;
+
+    /**
+     * The maximum number of bytes of an unused response body skipped
+     */
+    private static final int MAX_DRAINED_LENGTH = 64 * 1024;
+
+    /**
+     * The buffer unused response bodies are read into, shared since its content is never read
+     */
+    private static final byte[] DRAIN_BUFFER = new byte[8192];
+
+    /**
+     * The auth server URL, null if the authenticator uses a server pool
      */
     private final String authURL;
 
+    /**
+     * The mirrored auth servers, null if the authenticator uses a single auth server URL
+     */
+    private final ServerPool servers;
+
     /**
      * The server auth points
      */
     private final AuthPoints authPoints;
 
     /**
-     * Create an authenticator
+     * The transport used to send the requests
+     */
+    private final HttpTransport transport;
+
+    /**
+     * The executor running the async requests
+     */
+    private final Executor executor;
+
+    /**
+     * The cache of the successful validations (optional)
+     */
+    private volatile ValidationCache validationCache;
+
+    /**
+     * The retry and circuit breaking policy (optional)
+     */
+    private volatile ResiliencePolicy resiliencePolicy;
+
+    /**
+     * The client side rate limiter (optional)
+     */
+    private volatile RateLimiter rateLimiter;
+
+    /**
+     * The recorder of the requests metrics, no-op by default
+     */
+    private volatile MetricsRecorder metrics = MetricsRecorder.NOOP;
+
+    /**
+     * The codec of the requests and responses, the reflection-free one by default
+     */
+    private volatile JsonCodec codec = ModelCodec.INSTANCE;
+
+    /**
+     * The circuit breakers of each auth point, created with the resilience policy
+     */
+    private volatile Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * The refreshes in flight, shared by the concurrent callers refreshing the same token pair
+     */
+    private final Map<RefreshKey, CompletableFuture<AuthResult<RefreshResponse>>> refreshes = new ConcurrentHashMap<>();
+
+    /**
+     * Create an authenticator, with its own {@link HttpTransports#createDefault() default transport}
      *
      * @param authURL
      *            The auth server URL
@@ -70,8 +162,73 @@ public class Authenticator {
      *            The URIs of the multiple requests
      */
     public Authenticator(String authURL, AuthPoints authPoints) {
+        this(authURL, authPoints, HttpTransports.createDefault());
+    }
+
+    /**
+     * Create an authenticator
+     *
+     * @param authURL
+     *            The auth server URL
+     * @param authPoints
+     *            The URIs of the multiple requests
+     * @param transport
+     *            The transport used to send the requests
+     */
+    public Authenticator(String authURL, AuthPoints authPoints, HttpTransport transport) {
+        this(authURL, authPoints, transport, null);
+    }
+
+    /**
+     * Create an authenticator
+     *
+     * @param authURL
+     *            The auth server URL
+     * @param authPoints
+     *            The URIs of the multiple requests
+     * @param transport
+     *            The transport used to send the requests
+     * @param executor
+     *            The executor running the async requests (optional, a shared bounded I/O pool is used by default)
+     */
+    public Authenticator(String authURL, AuthPoints authPoints, HttpTransport transport, Executor executor) {
         this.authURL = authURL;
+        this.servers = null;
+        this.authPoints = authPoints;
+        this.transport = transport;
+        this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * Create an authenticator balancing the requests over mirrored auth servers
+     *
+     * @param servers
+     *            The auth servers, all serving the given auth points
+     * @param authPoints
+     *            The URIs of the multiple requests
+     */
+    public Authenticator(ServerPool servers, AuthPoints authPoints) {
+        this(servers, authPoints, HttpTransports.createDefault(), null);
+    }
+
+    /**
+     * Create an authenticator balancing the requests over mirrored auth servers
+     *
+     * @param servers
+     *            The auth servers, all serving the given auth points
+     * @param authPoints
+     *            The URIs of the multiple requests
+     * @param transport
+     *            The transport used to send the requests
+     * @param executor
+     *            The executor running the async requests (optional, a shared bounded I/O pool is used by default)
+     */
+    public Authenticator(ServerPool servers, AuthPoints authPoints, HttpTransport transport, Executor executor) {
+        this.authURL = null;
+        this.servers = servers;
         this.authPoints = authPoints;
+        this.transport = transport;
+        this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
     }
 
     /**
@@ -113,8 +270,48 @@ public class Authenticator {
      * @return The response sent by the server (parsed from a JSON)
      */
     public AuthResponse authenticate(AuthAgent agent, String username, String password, String clientToken, Proxy proxy) throws AuthenticationException {
+        return tryAuthenticate(agent, username, password, clientToken, proxy).orElseThrow();
+    }
+
+    /**
+     * Authenticates a user using his password, without blocking the current thread.
+     *
+     * @param agent
+     *            The auth agent (optional)
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param clientToken
+     *            The client token (optional, like a key for the access token)
+     *
+     * @return A future resolved by the response sent by the server, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<AuthResponse> authenticateAsync(AuthAgent agent, String username, String password, String clientToken) {
+        return authenticateAsync(agent, username, password, clientToken, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Authenticates a user using his password, without blocking the current thread.
+     *
+     * @param agent
+     *            The auth agent (optional)
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param clientToken
+     *            The client token (optional, like a key for the access token)
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A future resolved by the response sent by the server, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<AuthResponse> authenticateAsync(AuthAgent agent, String username, String password, String clientToken, Proxy proxy) {
         AuthRequest request = new AuthRequest(agent, username, password, clientToken);
-        return (AuthResponse) sendRequest(request, AuthResponse.class, authPoints.getAuthenticatePoint(), proxy);
+        return sendRequestAsync(request, AuthResponse.class, authPoints.getAuthenticatePoint(), proxy);
     }
 
     /**
@@ -137,6 +334,7 @@ public class Authenticator {
     /**
      * Refresh a valid access token. It can be uses to keep a user logged in between gaming sessions
      * and is preferred over storing the user's password in a file.
+     * Concurrent refreshes of the same token pair share a single request, and all get its response.
      *
      * @param accessToken
      *            The saved access token
@@ -150,8 +348,126 @@ public class Authenticator {
      * @return The response sent by the server (parsed from a JSON)
      */
     public RefreshResponse refresh(String accessToken, String clientToken, Proxy proxy) throws AuthenticationException {
-        RefreshRequest request = new RefreshRequest(accessToken, clientToken);
-        return (RefreshResponse) sendRequest(request, RefreshResponse.class, authPoints.getRefreshPoint(), proxy);
+        return tryRefresh(accessToken, clientToken, proxy).orElseThrow();
+    }
+
+    /**
+     * Refresh a valid access token, without blocking the current thread.
+     *
+     * @param accessToken
+     *            The saved access token
+     * @param clientToken
+     *            The saved client token (need to be the same used when authenticated to get the access token)
+     *
+     * @return A future resolved by the response sent by the server, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<RefreshResponse> refreshAsync(String accessToken, String clientToken) {
+        return refreshAsync(accessToken, clientToken, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Refresh a valid access token, without blocking the current thread.
+     *
+     * @param accessToken
+     *            The saved access token
+     * @param clientToken
+     *            The saved client token (need to be the same used when authenticated to get the access token)
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A future resolved by the response sent by the server, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<RefreshResponse> refreshAsync(String accessToken, String clientToken, Proxy proxy) {
+        RefreshKey key = new RefreshKey(accessToken, clientToken);
+        CompletableFuture<AuthResult<RefreshResponse>> flight = new CompletableFuture<>();
+        CompletableFuture<AuthResult<RefreshResponse>> existing = refreshes.putIfAbsent(key, flight);
+
+        if (existing == null) {
+            existing = flight;
+
+            RefreshRequest request = new RefreshRequest(accessToken, clientToken);
+            sendRequestAsync(request, RefreshResponse.class, authPoints.getRefreshPoint(), proxy).whenComplete((response, failure) -> {
+                if (failure instanceof CompletionException && failure.getCause() != null) {
+                    failure = failure.getCause();
+                }
+
+                if (failure == null) {
+                    ValidationCache cache = this.validationCache;
+                    if (cache != null) {
+                        cache.evict(accessToken);
+                    }
+
+                    flight.complete(AuthResult.success(response));
+                } else if (failure instanceof AuthenticationException) {
+                    flight.complete(AuthResult.failure((AuthenticationException) failure));
+                } else {
+                    flight.completeExceptionally(failure);
+                }
+
+                refreshes.remove(key, flight);
+            });
+        }
+
+        // Dependent future, so that a caller cancelling it doesn't cancel the shared refresh
+        return existing.thenApply(result -> {
+            if (!result.isSuccess()) {
+                throw new CompletionException(result.getFailure());
+            }
+
+            return result.getValue();
+        });
+    }
+
+    /**
+     * Sends a refresh request and completes its in-flight future, which waiting callers share
+     *
+     * @param key
+     *            The refreshed token pair
+     * @param flight
+     *            The future to complete with the response
+     * @param proxy
+     *           The proxy to use (optional)
+     */
+    private void runRefresh(RefreshKey key, CompletableFuture<AuthResult<RefreshResponse>> flight, Proxy proxy) {
+        try {
+            RefreshRequest request = new RefreshRequest(key.accessToken, key.clientToken);
+            AuthResult<RefreshResponse> result = sendRequest(request, RefreshResponse.class, authPoints.getRefreshPoint(), proxy);
+
+            if (result.isSuccess()) {
+                ValidationCache cache = this.validationCache;
+                if (cache != null) {
+                    cache.evict(key.accessToken);
+                }
+            }
+
+            flight.complete(result);
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+        } finally {
+            refreshes.remove(key, flight);
+        }
+    }
+
+    /**
+     * Rethrows the failure of a shared request, which only completes exceptionally with unexpected exceptions
+     * (the errors of the server being results)
+     *
+     * @param failure
+     *            The exception the request completed with
+     *
+     * @return Never returns, only declared to be thrown by callers
+     */
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+
+        throw new IllegalStateException("Unexpected failure of a refresh", failure);
     }
 
     /**
@@ -187,8 +503,51 @@ public class Authenticator {
      * @throws AuthenticationException If the server returned an error as a JSON
      */
     public void validate(String accessToken, Proxy proxy) throws AuthenticationException {
+        tryValidate(accessToken, proxy).orElseThrow();
+    }
+
+    /**
+     * Check if an access token is a valid session token with a currently-active session, without
+     * blocking the current thread. See {@link #validate(String)}.
+     *
+     * @param accessToken
+     *            The access token to check
+     *
+     * @return A future completed when the token is valid, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<Void> validateAsync(String accessToken) {
+        return validateAsync(accessToken, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Check if an access token is a valid session token with a currently-active session, without
+     * blocking the current thread. See {@link #validate(String, Proxy)}.
+     *
+     * @param accessToken
+     *            The access token to check
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A future completed when the token is valid, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<Void> validateAsync(String accessToken, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null && cache.isValid(accessToken)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long stamp = cache != null ? cache.stamp() : 0;
+
         ValidateRequest request = new ValidateRequest(accessToken);
-        sendRequest(request, null, authPoints.getValidatePoint(), proxy);
+        return sendRequestAsync(request, null, authPoints.getValidatePoint(), proxy).thenApply(response -> {
+            if (cache != null) {
+                cache.put(accessToken, stamp);
+            }
+
+            return null;
+        });
     }
 
     /**
@@ -218,8 +577,50 @@ public class Authenticator {
      * @throws AuthenticationException If the server returned an error as a JSON
      */
     public void signout(String username, String password, Proxy proxy) throws AuthenticationException {
+        trySignout(username, password, proxy).orElseThrow();
+    }
+
+    /**
+     * Invalidates accessTokens using an account's username and password, without blocking the current thread.
+     *
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     *
+     * @return A future completed when the tokens are invalidated, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<Void> signoutAsync(String username, String password) {
+        return signoutAsync(username, password, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Invalidates accessTokens using an account's username and password, without blocking the current thread.
+     *
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A future completed when the tokens are invalidated, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
+     */
+    public CompletableFuture<Void> signoutAsync(String username, String password, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null) {
+            cache.clear();
+        }
+
         SignoutRequest request = new SignoutRequest(username, password);
-        sendRequest(request, null, authPoints.getSignoutPoint(), proxy);
+        return sendRequestAsync(request, null, authPoints.getSignoutPoint(), proxy).whenComplete((response, failure) -> {
+            // Again, for the validations answered while the signout was in flight
+            if (cache != null) {
+                cache.clear();
+            }
+        }).thenApply(response -> null);
     }
 
     /**
@@ -249,153 +650,1191 @@ public class Authenticator {
      * @throws AuthenticationException If the server returned an error as a JSON
      */
     public void invalidate(String accessToken, String clientToken, Proxy proxy) throws AuthenticationException {
-        InvalidateRequest request = new InvalidateRequest(accessToken, clientToken);
-        sendRequest(request, null, authPoints.getInvalidatePoint(), proxy);
+        tryInvalidate(accessToken, clientToken, proxy).orElseThrow();
     }
 
     /**
-     * Send a request to the auth server
-     *
-     * @param request
-     *            The auth request to send
-     * @param model
-     *            The model of the response
-     * @param authPoint
-     *            The auth point of the request
-     * @throws AuthenticationException
-     *            If it returned an error or the request failed
+     * Invalidates accessTokens using a client/access token pair, without blocking the current thread.
      *
-     * @throws AuthenticationException If the server returned an error as a JSON
+     * @param accessToken
+     *            Valid access token to invalidate
+     * @param clientToken
+     *            Client token used when authenticated to get the access token
      *
-     * @return Instance of the given response model if it not null
+     * @return A future completed when the token is invalidated, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
      */
-    private Object sendRequest(Object request, Class<?> model, String authPoint) throws AuthenticationException {
-        return sendRequest(request, model, authPoint, Proxy.NO_PROXY);
+    public CompletableFuture<Void> invalidateAsync(String accessToken, String clientToken) {
+        return invalidateAsync(accessToken, clientToken, Proxy.NO_PROXY);
     }
 
     /**
-     * Send a request to the auth server
+     * Invalidates accessTokens using a client/access token pair, without blocking the current thread.
      *
-     * @param request
-     *            The auth request to send
-     * @param model
-     *            The model of the response
-     * @param authPoint
-     *            The auth point of the request
+     * @param accessToken
+     *            Valid access token to invalidate
+     * @param clientToken
+     *            Client token used when authenticated to get the access token
      * @param proxy
      *           The proxy to use (optional)
-     * @throws AuthenticationException
-     *            If it returned an error or the request failed
-     *
-     * @throws AuthenticationException If the server returned an error as a JSON
      *
-     * @return Instance of the given response model if it not null
+     * @return A future completed when the token is invalidated, or completed exceptionally with
+     *         an {@link AuthenticationException} if the server returned an error
      */
-    private Object sendRequest(Object request, Class<?> model, String authPoint, Proxy proxy) throws AuthenticationException {
-        Gson gson = new Gson();
-        String response;
-
-        try {
-            response = sendPostRequest(this.authURL + authPoint, gson.toJson(request), proxy);
-        } catch (IOException e) {
-            throw new AuthenticationException(new AuthError("Can't send the request : " + e.getClass().getName(), e.getMessage(), "Unknown"));
+    public CompletableFuture<Void> invalidateAsync(String accessToken, String clientToken, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null) {
+            cache.evict(accessToken);
         }
 
-        if(model != null)
-            return gson.fromJson(response, model);
-        else
-            return null;
+        InvalidateRequest request = new InvalidateRequest(accessToken, clientToken);
+        return sendRequestAsync(request, null, authPoints.getInvalidatePoint(), proxy).whenComplete((response, failure) -> {
+            // Again, for the validations answered while the invalidation was in flight
+            if (cache != null) {
+                cache.evict(accessToken);
+            }
+        }).thenApply(response -> null);
     }
 
     /**
-     * Sends a post request of a json
-     *
-     * @param url
-     *            The url to send the request
-     * @param json
-     *            The json to send
-     * @throws IOException
-     *            If it failed
+     * Authenticates a user using his password, returning the error of the server instead of throwing it.
+     * See {@link #authenticate(AuthAgent, String, String, String)}.
      *
-     * @throws AuthenticationException If the request returned an error JSON or not a JSON
+     * @param agent
+     *            The auth agent (optional)
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param clientToken
+     *            The client token (optional, like a key for the access token)
      *
-     * @return The request response
+     * @return The response sent by the server, or the reason why the authentication failed
      */
-    private String sendPostRequest(String url, String json) throws AuthenticationException, IOException {
-        return sendPostRequest(url, json, Proxy.NO_PROXY);
+    public AuthResult<AuthResponse> tryAuthenticate(AuthAgent agent, String username, String password, String clientToken) {
+        return tryAuthenticate(agent, username, password, clientToken, Proxy.NO_PROXY);
     }
 
     /**
-     * Sends a post request of a json
+     * Authenticates a user using his password, returning the error of the server instead of throwing it.
+     * See {@link #authenticate(AuthAgent, String, String, String, Proxy)}.
      *
-     * @param url
-     *            The url to send the request
-     * @param json
-     *            The json to send
-     * @param proxy
-     *           The proxy to use (optional)
-     * @throws IOException
-     *            If it failed
-     *
-     * @throws AuthenticationException If the request returned an error JSON or not a JSON
-     *
-     * @return The request response
-     */
-    private String sendPostRequest(String url, String json, Proxy proxy) throws AuthenticationException, IOException {
-        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
-        URL serverURL = new URL(url);
-        HttpURLConnection connection = (HttpURLConnection) serverURL.openConnection(proxy != null ? proxy : Proxy.NO_PROXY);
-        connection.setRequestMethod("POST");
-
-        // Sending post request
-        connection.setDoOutput(true);
-        connection.setRequestProperty("Accept-Charset", "UTF-8");
-        connection.setRequestProperty("Content-Type", "application/json;charset=utf-8");
-        connection.setRequestProperty("Content-Length", String.valueOf(jsonBytes.length));
-        DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-        wr.write(jsonBytes, 0, jsonBytes.length);
-        wr.flush();
-        wr.close();
+     * @param agent
+     *            The auth agent (optional)
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param clientToken
+     *            The client token (optional, like a key for the access token)
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return The response sent by the server, or the reason why the authentication failed
+     */
+    public AuthResult<AuthResponse> tryAuthenticate(AuthAgent agent, String username, String password, String clientToken, Proxy proxy) {
+        AuthRequest request = new AuthRequest(agent, username, password, clientToken);
+        return sendRequest(request, AuthResponse.class, authPoints.getAuthenticatePoint(), proxy);
+    }
 
-        connection.connect();
+    /**
+     * Refreshes a valid access token, returning the error of the server instead of throwing it.
+     * See {@link #refresh(String, String)}.
+     *
+     * @param accessToken
+     *            The saved access token
+     * @param clientToken
+     *            The saved client token (need to be the same used when authenticated to get the access token)
+     *
+     * @return The response sent by the server, or the reason why the refresh failed
+     */
+    public AuthResult<RefreshResponse> tryRefresh(String accessToken, String clientToken) {
+        return tryRefresh(accessToken, clientToken, Proxy.NO_PROXY);
+    }
 
-        int responseCode = connection.getResponseCode();
+    /**
+     * Refreshes a valid access token, returning the error of the server instead of throwing it.
+     * See {@link #refresh(String, String, Proxy)}.
+     *
+     * @param accessToken
+     *            The saved access token
+     * @param clientToken
+     *            The saved client token (need to be the same used when authenticated to get the access token)
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return The response sent by the server, or the reason why the refresh failed
+     */
+    public AuthResult<RefreshResponse> tryRefresh(String accessToken, String clientToken, Proxy proxy) {
+        RefreshKey key = new RefreshKey(accessToken, clientToken);
+        CompletableFuture<AuthResult<RefreshResponse>> flight = new CompletableFuture<>();
+        CompletableFuture<AuthResult<RefreshResponse>> existing = refreshes.putIfAbsent(key, flight);
 
-        if(responseCode == 204) {
-            connection.disconnect();
-            return null;
+        if (existing != null) {
+            // Another thread is already refreshing this token, the server would reject a second refresh
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return AuthResult.failure(new AuthenticationException(new AuthError("Interrupted", "Interrupted while waiting for a refresh", "Unknown"), e));
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+
+        runRefresh(key, flight, proxy);
+
+        try {
+            return flight.getNow(null);
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Check if an access token is a valid session token with a currently-active session, an invalid
+     * token being a failed result rather than an exception. See {@link #validate(String)}.
+     *
+     * @param accessToken
+     *            The access token to check
+     *
+     * @return A successful result if the token is valid, or the error of the server
+     */
+    public AuthResult<Void> tryValidate(String accessToken) {
+        return tryValidate(accessToken, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Check if an access token is a valid session token with a currently-active session, an invalid
+     * token being a failed result rather than an exception. See {@link #validate(String, Proxy)}.
+     *
+     * @param accessToken
+     *            The access token to check
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A successful result if the token is valid, or the error of the server
+     */
+    public AuthResult<Void> tryValidate(String accessToken, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null && cache.isValid(accessToken)) {
+            return AuthResult.success(null);
+        }
+
+        // Taken before the request, so that an invalidation sent meanwhile isn't overwritten
+        long stamp = cache != null ? cache.stamp() : 0;
+
+        ValidateRequest request = new ValidateRequest(accessToken);
+        AuthResult<Void> result = sendRequest(request, null, authPoints.getValidatePoint(), proxy);
+
+        if (cache != null && result.isSuccess()) {
+            cache.put(accessToken, stamp);
+        }
+
+        return result;
+    }
+
+    /**
+     * Invalidates accessTokens using an account's username and password, returning the error of the
+     * server instead of throwing it. See {@link #signout(String, String)}.
+     *
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     *
+     * @return A successful result, or the reason why the signout failed
+     */
+    public AuthResult<Void> trySignout(String username, String password) {
+        return trySignout(username, password, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Invalidates accessTokens using an account's username and password, returning the error of the
+     * server instead of throwing it. See {@link #signout(String, String, Proxy)}.
+     *
+     * @param username
+     *            User account name
+     * @param password
+     *            User account password
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A successful result, or the reason why the signout failed
+     */
+    public AuthResult<Void> trySignout(String username, String password, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null) {
+            cache.clear();
+        }
+
+        SignoutRequest request = new SignoutRequest(username, password);
+        try {
+            return sendRequest(request, null, authPoints.getSignoutPoint(), proxy);
+        } finally {
+            // Again, for the validations answered while the signout was in flight
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Invalidates an accessToken using a client/access token pair, returning the error of the server
+     * instead of throwing it. See {@link #invalidate(String, String)}.
+     *
+     * @param accessToken
+     *            Valid access token to invalidate
+     * @param clientToken
+     *            Client token used when authenticated to get the access token
+     *
+     * @return A successful result, or the reason why the invalidation failed
+     */
+    public AuthResult<Void> tryInvalidate(String accessToken, String clientToken) {
+        return tryInvalidate(accessToken, clientToken, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Invalidates an accessToken using a client/access token pair, returning the error of the server
+     * instead of throwing it. See {@link #invalidate(String, String, Proxy)}.
+     *
+     * @param accessToken
+     *            Valid access token to invalidate
+     * @param clientToken
+     *            Client token used when authenticated to get the access token
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A successful result, or the reason why the invalidation failed
+     */
+    public AuthResult<Void> tryInvalidate(String accessToken, String clientToken, Proxy proxy) {
+        ValidationCache cache = this.validationCache;
+        if (cache != null) {
+            cache.evict(accessToken);
+        }
+
+        InvalidateRequest request = new InvalidateRequest(accessToken, clientToken);
+        try {
+            return sendRequest(request, null, authPoints.getInvalidatePoint(), proxy);
+        } finally {
+            // Again, for the validations answered while the invalidation was in flight
+            if (cache != null) {
+                cache.evict(accessToken);
+            }
+        }
+    }
+
+    /**
+     * Runs a request on the executor of this authenticator. When there is a rate limiter, the permit of the
+     * request is reserved first and the request only handed to the executor once it is due, so that it doesn't
+     * hold a thread while waiting.
+     *
+     * @param authPoint
+     *            The auth point of the request
+     * @param request
+     *            The request to run
+     *
+     * @return A future resolved by the request result
+     */
+    private <T> CompletableFuture<T> async(String authPoint, AuthCall<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        Consumer<Boolean> submit = permitted -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(request.call(permitted));
+                    } catch (AuthenticationException | RuntimeException | Error e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        };
+
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter == null) {
+            submit.accept(false);
+            return future;
+        }
+
+        // Refused before reserving a permit, which an open breaker would waste
+        CircuitBreaker breaker = getCircuitBreaker(authPoint);
+        if (breaker != null && breaker.getState() == CircuitBreaker.State.OPEN) {
+            AuthenticationException open = circuitOpen(authPoint);
+            metrics.onRequest(authPoint, 0, open);
+            future.completeExceptionally(open);
+
+            return future;
+        }
+
+        limiter.acquireAsync(authPoint).thenAccept(acquired -> {
+            if (acquired) {
+                submit.accept(true);
+                return;
+            }
+
+            AuthenticationException refused = rateLimited(authPoint);
+            metrics.onRequest(authPoint, 0, refused);
+            future.completeExceptionally(refused);
+        });
+
+        return future;
+    }
+
+    /**
+     * Send a request to the auth server
+     *
+     * @param request
+     *            The auth request to send
+     * @param model
+     *            The model of the response
+     * @param authPoint
+     *            The auth point of the request
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return Instance of the given response model if it not null, or the error returned by the server or
+     *         describing why the request failed
+     */
+    private <T> AuthResult<T> sendRequest(Object request, Class<T> model, String authPoint, Proxy proxy) {
+        return sendRequest(request, model, authPoint, proxy, false);
+    }
+
+    /**
+     * Send a request to the auth server
+     *
+     * @param request
+     *            The auth request to send
+     * @param model
+     *            The model of the response
+     * @param authPoint
+     *            The auth point of the request
+     * @param proxy
+     *           The proxy to use (optional)
+     * @param permitted
+     *            If the permit of the rate limiter was already acquired for the first attempt
+     *
+     * @return Instance of the given response model if it not null, or the error returned by the server or
+     *         describing why the request failed
+     */
+    private <T> AuthResult<T> sendRequest(Object request, Class<T> model, String authPoint, Proxy proxy, boolean permitted) {
+        byte[] body = codec.encodeBytes(request);
+
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == MetricsRecorder.NOOP) {
+            return sendResilientRequest(authPoint, body, model, proxy, permitted);
+        }
+
+        long start = System.nanoTime();
+        AuthResult<T> result = sendResilientRequest(authPoint, body, model, proxy, permitted);
+
+        metrics.onRequest(authPoint, System.nanoTime() - start, result.getFailure());
+        return result;
+    }
+
+    /**
+     * Send a request to the auth server, without blocking any thread while waiting for its response when the
+     * transport is asynchronous. The response is then parsed on the executor of this authenticator.
+     * Requests with a resilience policy, a rate limiter or a server pool are sent from the executor instead,
+     * as they may wait between their attempts.
+     *
+     * @param request
+     *            The auth request to send
+     * @param model
+     *            The model of the response
+     * @param authPoint
+     *            The auth point of the request
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return A future resolved by the instance of the given response model if it not null, or completed
+     *         exceptionally with an {@link AuthenticationException} if the server returned an error or the request failed
+     */
+    private <T> CompletableFuture<T> sendRequestAsync(Object request, Class<T> model, String authPoint, Proxy proxy) {
+        if (!transport.isAsync() || servers != null || resiliencePolicy != null || rateLimiter != null) {
+            return async(authPoint, permitted -> sendRequest(request, model, authPoint, proxy, permitted).orElseThrow());
         }
 
-        InputStream is;
-        if(responseCode == 200)
-            is = connection.getInputStream();
-        else
-            is = connection.getErrorStream();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        MetricsRecorder metrics = this.metrics;
+        long start = System.nanoTime();
+
+        String url = this.authURL + authPoint;
+        AuthEvent event = AuthEvents.begin(authPoint, url);
 
-        String response;
+        Consumer<Throwable> fail = failure -> {
+            AuthenticationException e = failure instanceof IOException
+                    ? new AuthenticationException(new AuthError("Can't send the request : " + failure.getClass().getName(), failure.getMessage(), "Unknown"), failure)
+                    : failure instanceof AuthenticationException ? (AuthenticationException) failure : null;
 
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        response = br.readLine();
+            event.commit();
+
+            if (e != null) {
+                metrics.onRequest(authPoint, System.nanoTime() - start, e);
+                future.completeExceptionally(e);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        };
+
+        CompletableFuture<HttpResponse> response;
         try {
-            br.close();
+            byte[] body = codec.encodeBytes(request);
+            event.addBytesOut(body.length);
+
+            response = transport.executeAsync(newPostRequest(url, body, proxy, 0));
+        } catch (IOException | RuntimeException e) {
+            fail.accept(e);
+            return future;
+        }
+
+        response.whenComplete((httpResponse, failure) -> {
+            if (failure != null) {
+                fail.accept(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                return;
+            }
+
+            Runnable parse = () -> {
+                AuthResult<T> result;
+                try (HttpResponse closed = httpResponse) {
+                    result = readResponse(closed, model, authPoint, event);
+                } catch (IOException | RuntimeException | Error e) {
+                    fail.accept(e);
+                    return;
+                }
+
+                if (!result.isSuccess()) {
+                    fail.accept(result.getFailure());
+                    return;
+                }
+
+                event.commit();
+                metrics.onRequest(authPoint, System.nanoTime() - start, null);
+                future.complete(result.getValue());
+            };
+
+            try {
+                executor.execute(parse);
+            } catch (RejectedExecutionException e) {
+                try {
+                    httpResponse.close();
+                } catch (IOException ignored) {
+                    // Failing anyway
+                }
+
+                fail.accept(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Send a request to the auth server, retrying it and tracking the health of its endpoint
+     * according to the resilience policy (if any)
+     *
+     * @param authPoint
+     *            The auth point of the request
+     * @param body
+     *            The json to send, as UTF-8 bytes
+     * @param model
+     *            The model of the response (optional, the body is skipped if null)
+     * @param proxy
+     *           The proxy to use (optional)
+     * @param permitted
+     *            If the permit of the rate limiter was already acquired for the first attempt
+     *
+     * @return The request response, or the error returned by the server, or why the request failed or was not
+     *         sent (the endpoint being unhealthy)
+     */
+    private <T> AuthResult<T> sendResilientRequest(String authPoint, byte[] body, Class<T> model, Proxy proxy, boolean permitted) {
+        ResiliencePolicy policy = this.resiliencePolicy;
+        RateLimiter limiter = this.rateLimiter;
+
+        if (policy == null && limiter == null) {
+            return sendRequest(authPoint, body, model, proxy);
+        }
+
+        CircuitBreaker breaker = policy != null ? getCircuitBreaker(authPoint) : null;
+        AuthResult<T> last = null;
+
+        for (int attempt = 1; ; attempt++) {
+            // Before the permit, so that an open breaker doesn't use up the rate of the endpoint
+            if (breaker != null && !breaker.tryAcquire()) {
+                // A retry stopped by the breaker the previous attempt opened returns the actual failure
+                return last != null ? last : AuthResult.failure(circuitOpen(authPoint));
+            }
+
+            if (limiter != null && !(permitted && attempt == 1)) {
+                AuthenticationException refused = acquirePermit(limiter, authPoint);
+                if (refused != null) {
+                    if (breaker != null) {
+                        breaker.release();
+                    }
+
+                    return last != null ? last : AuthResult.failure(refused);
+                }
+            }
+
+            AuthResult<T> result;
+            try {
+                result = sendRequest(authPoint, body, model, proxy);
+            } catch (RuntimeException e) {
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+
+                throw e;
+            }
+
+            AuthenticationException failure = result.getFailure();
+            if (failure == null) {
+                if (limiter != null) {
+                    limiter.onResponse(authPoint, 200, -1);
+                }
+                if (breaker != null) {
+                    breaker.onSuccess();
+                }
+
+                return result;
+            }
+
+            if (limiter != null && failure.getStatusCode() != -1) {
+                limiter.onResponse(authPoint, failure.getStatusCode(), failure.getRetryAfter());
+            }
+
+            if (policy == null) {
+                return result;
+            }
+
+            if (!policy.isFailure(failure)) {
+                // The endpoint answered properly, the error is about the request itself
+                breaker.onSuccess();
+                return result;
+            }
+
+            breaker.onFailure();
+            last = result;
+
+            if (attempt >= policy.getMaxAttempts() || !policy.isRetriable(failure) || failure.getRetryAfter() > policy.getMaxDelay()) {
+                return result;
+            }
+
+            try {
+                Thread.sleep(Math.max(policy.backoff(attempt), failure.getRetryAfter()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Waits for the rate limiter to allow a request
+     *
+     * @param limiter
+     *            The rate limiter
+     * @param authPoint
+     *            The auth point of the request
+     *
+     * @return Null once the request can be sent, or the failure of the request if the permit would take too long
+     *         or the thread was interrupted
+     */
+    private static AuthenticationException acquirePermit(RateLimiter limiter, String authPoint) {
+        try {
+            if (!limiter.acquire(authPoint)) {
+                return rateLimited(authPoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new AuthenticationException(new AuthError("Interrupted", "Interrupted while waiting for the rate limiter", "Unknown"), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the failure of a request refused by the rate limiter
+     *
+     * @param authPoint
+     *            The auth point of the request
+     *
+     * @return The failure, without stack trace
+     */
+    private static AuthenticationException rateLimited(String authPoint) {
+        return new AuthenticationException(new AuthError("Rate limited", "Too many requests to the " + authPoint + " endpoint, the request was not sent", "Unknown"), -1, -1, false);
+    }
+
+    /**
+     * Creates the failure of a request refused by an open circuit breaker
+     *
+     * @param authPoint
+     *            The auth point of the request
+     *
+     * @return The failure, without stack trace
+     */
+    private static AuthenticationException circuitOpen(String authPoint) {
+        return new AuthenticationException(new AuthError("Circuit breaker open", "The " + authPoint + " endpoint is unhealthy, the request was not sent", "Unknown"), -1, -1, false);
+    }
+
+    /**
+     * Send a request to the auth server, once
+     *
+     * @param authPoint
+     *            The auth point of the request
+     * @param body
+     *            The json to send, as UTF-8 bytes
+     * @param model
+     *            The model of the response (optional, the body is skipped if null)
+     * @param proxy
+     *           The proxy to use (optional)
+     *
+     * @return The request response, or the error returned by the server or describing why the request failed
+     */
+    private <T> AuthResult<T> sendRequest(String authPoint, byte[] body, Class<T> model, Proxy proxy) {
+        if (servers != null) {
+            return sendBalancedRequest(authPoint, body, model, proxy);
+        }
+
+        try {
+            return sendPostRequest(this.authURL + authPoint, body, model, proxy, authPoint, 0);
         } catch (IOException e) {
-            e.printStackTrace();
+            return AuthResult.failure(new AuthenticationException(new AuthError("Can't send the request : " + e.getClass().getName(), e.getMessage(), "Unknown"), e));
+        }
+    }
+
+    /**
+     * Sends a request to the best server of the pool, failing over to the next best servers if it
+     * is unreachable or failed, until the deadline of the pool is reached
+     *
+     * @param authPoint
+     *            The auth point of the request
+     * @param body
+     *            The JSON request, as UTF-8 bytes
+     * @param model
+     *            The model of the response (optional, the body is skipped if null)
+     * @param proxy
+     *            The proxy to use (optional)
+     *
+     * @return The response, or the error returned by the last tried server, or why no server could be reached
+     */
+    private <T> AuthResult<T> sendBalancedRequest(String authPoint, byte[] body, Class<T> model, Proxy proxy) {
+        long deadlineStart = System.nanoTime();
+        List<ServerPool.Server> tried = new ArrayList<>(2);
+
+        while (true) {
+            ServerPool.Server server = servers.select(tried);
+            tried.add(server);
+
+            // The attempt can't outlast the deadline, the next servers would never be tried otherwise
+            int timeout = (int) Math.max(1, Math.min(servers.getRemainingTime(deadlineStart), Integer.MAX_VALUE));
+
+            long start = servers.onStart(server);
+            AuthResult<T> result;
+
+            try {
+                result = sendPostRequest(server.getUrl() + authPoint, body, model, proxy, authPoint, timeout);
+            } catch (IOException e) {
+                result = AuthResult.failure(new AuthenticationException(new AuthError("Can't send the request : " + e.getClass().getName(), e.getMessage(), "Unknown"), e));
+            } catch (RuntimeException e) {
+                servers.onFailure(server, start);
+                throw e;
+            }
+
+            int status = result.getStatusCode();
+            if (result.isSuccess() || (status != -1 && status < 500 && status != 429)) {
+                // The server answered properly, an error being about the request itself
+                servers.onSuccess(server, start);
+                return result;
+            }
+
+            servers.onFailure(server, start);
+
+            if (tried.size() >= servers.getServers().size() || !servers.isWithinDeadline(deadlineStart)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Sends a post request of a json, traced as an {@link AuthEvent}, and parses its response as it is received
+     *
+     * @param url
+     *            The url to send the request
+     * @param body
+     *            The json to send, as UTF-8 bytes
+     * @param model
+     *            The model of the response (optional, the body is skipped if null)
+     * @param proxy
+     *            The proxy to use (optional)
+     * @param stage
+     *            The stage of the authentication the request is part of (optional)
+     * @param timeout
+     *            The timeout of the request in milliseconds, or 0 to use the ones of the transport
+     *
+     * @throws IOException If an I/O error occurred, or the response is not a valid JSON
+     *
+     * @return The request response (null if there is no model or the response was empty), or the error returned
+     *         by the server
+     */
+    private <T> AuthResult<T> sendPostRequest(String url, byte[] body, Class<T> model, Proxy proxy, String stage, int timeout) throws IOException {
+        HttpRequest request = newPostRequest(url, body, proxy, timeout);
+
+        AuthEvent event = AuthEvents.begin(stage, url);
+        event.addBytesOut(body.length);
+
+        try (HttpResponse httpResponse = transport.execute(request)) {
+            return readResponse(httpResponse, model, stage, event);
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Creates a post request of a json
+     *
+     * @param url
+     *            The url to send the request
+     * @param body
+     *            The json to send, as UTF-8 bytes
+     * @param proxy
+     *            The proxy to use (optional)
+     * @param timeout
+     *            The timeout of the request in milliseconds, or 0 to use the ones of the transport
+     *
+     * @throws IOException If the url is malformed
+     *
+     * @return The request
+     */
+    private static HttpRequest newPostRequest(String url, byte[] body, Proxy proxy, int timeout) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept-Charset", "UTF-8");
+        headers.put("Content-Type", "application/json;charset=utf-8");
+
+        return new HttpRequest("POST", new URL(url), headers, body, proxy, timeout);
+    }
+
+    /**
+     * Parses the response of a request as it is received
+     *
+     * @param httpResponse
+     *            The response
+     * @param model
+     *            The model of the response (optional, the body is skipped if null)
+     * @param authPoint
+     *            The auth point of the request, the size of the body being recorded by the metrics
+     * @param event
+     *            The event tracing the request
+     *
+     * @throws IOException If an I/O error occurred, or the response is not a valid JSON
+     *
+     * @return The request response (null if there is no model or the response was empty), or the error returned
+     *         by the server
+     */
+    private <T> AuthResult<T> readResponse(HttpResponse httpResponse, Class<T> model, String authPoint, AuthEvent event) throws IOException {
+        int responseCode = httpResponse.getStatusCode();
+        event.setStatus(responseCode);
+
+        MetricsRecorder metrics = this.metrics;
+        InputStream in = httpResponse.getBody();
+        CountingInputStream counter = null;
+
+        if (event != AuthEvent.NOOP || metrics != MetricsRecorder.NOOP) {
+            in = counter = new CountingInputStream(in);
         }
-        connection.disconnect();
 
-        while (response != null && response.startsWith("\uFEFF"))
-            response = response.substring(1);
+        try {
+            if (responseCode != 200 && responseCode != 204) {
+                return AuthResult.failure(readError(in, responseCode, httpResponse.getRetryAfter()));
+            }
 
-        if (responseCode != 200) {
-            Gson gson = new Gson();
+            if (model == null || responseCode == 204) {
+                drain(in);
+                return AuthResult.success(null);
+            }
 
-            if (response != null && !response.startsWith("{"))
-                throw new AuthenticationException(new AuthError("Internal server error", response, "Remote"));
+            return AuthResult.success(codec.decode(new BomSkippingReader(new InputStreamReader(in, StandardCharsets.UTF_8)), model));
+        } finally {
+            if (counter != null) {
+                // Read decompressed, if the transport negotiated it
+                long decoded = counter.getCount();
+                long received = httpResponse.getBytesReceived();
+                if (received == -1) {
+                    received = decoded;
+                }
 
-            throw new AuthenticationException(gson.fromJson(response, AuthError.class));
+                event.addBytesIn(received);
+                metrics.onResponseBody(authPoint, received, decoded);
+            }
         }
+    }
 
-        return response;
+    /**
+     * Reads the error returned by the server
+     *
+     * @param in
+     *            The response body
+     * @param responseCode
+     *            The response status code
+     * @param retryAfter
+     *            The delay the server asked to wait before retrying, in milliseconds, or -1
+     *
+     * @throws IOException If the body couldn't be read
+     *
+     * @return The failure of the request, without stack trace
+     */
+    private AuthenticationException readError(InputStream in, int responseCode, long retryAfter) throws IOException {
+        // Errors are small, they are read entirely (up to a limit) to handle non JSON ones
+        StringBuilder response = new StringBuilder();
+        Reader reader = new BomSkippingReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        char[] buffer = new char[1024];
+
+        int read;
+        while (response.length() < MAX_ERROR_LENGTH && (read = reader.read(buffer)) != -1) {
+            response.append(buffer, 0, read);
+        }
+
+        String error = response.toString().trim();
+        if (error.isEmpty()) {
+            return new AuthenticationException(new AuthError("HTTP " + responseCode, "The server returned an empty error response", null), responseCode, retryAfter, false);
+        }
+
+        if (!error.startsWith("{"))
+            return new AuthenticationException(new AuthError("Internal server error", error, "Remote"), responseCode, retryAfter, false);
+
+        try {
+            return new AuthenticationException(codec.decode(error, AuthError.class), responseCode, retryAfter, false);
+        } catch (InvalidJsonException e) {
+            return new AuthenticationException(new AuthError("Internal server error", error, "Remote"), responseCode, retryAfter, false);
+        }
+    }
+
+    /**
+     * Skips a response body without storing it, up to {@link #MAX_DRAINED_LENGTH} bytes (the transport
+     * closes the connection if there is more)
+     *
+     * @param in
+     *            The response body
+     *
+     * @throws IOException If the body couldn't be read
+     */
+    private static void drain(InputStream in) throws IOException {
+        long drained = 0;
+
+        int read;
+        while (drained < MAX_DRAINED_LENGTH && (read = in.read(DRAIN_BUFFER)) != -1) {
+            drained += read;
+        }
+    }
+
+    /**
+     * Sets the cache of the successful validations, disabled by default. When set, {@link #validate(String)}
+     * only sends a request for the tokens that were not validated recently.
+     *
+     * @param validationCache
+     *            The new cache, or null to disable it
+     */
+    public void setValidationCache(ValidationCache validationCache) {
+        this.validationCache = validationCache;
+    }
+
+    /**
+     * Returns the cache of the successful validations
+     *
+     * @return The validation cache, or null if disabled
+     */
+    public ValidationCache getValidationCache() {
+        return this.validationCache;
+    }
+
+    /**
+     * Sets the retry and circuit breaking policy, disabled by default. When set, retriable failures
+     * are retried with backoff, and requests to an unhealthy endpoint fail fast. The circuit breakers
+     * are reset when the policy changes.
+     *
+     * @param resiliencePolicy
+     *            The new policy (for example {@link ResiliencePolicy#DEFAULT}), or null to disable it
+     */
+    public void setResiliencePolicy(ResiliencePolicy resiliencePolicy) {
+        this.circuitBreakers = new ConcurrentHashMap<>();
+        this.resiliencePolicy = resiliencePolicy;
+    }
+
+    /**
+     * Returns the retry and circuit breaking policy
+     *
+     * @return The resilience policy, or null if disabled
+     */
+    public ResiliencePolicy getResiliencePolicy() {
+        return this.resiliencePolicy;
+    }
+
+    /**
+     * Returns the circuit breaker of an auth point, to check its health
+     *
+     * @param authPoint
+     *            The auth point (for example {@code getAuthPoints().getRefreshPoint()})
+     *
+     * @return The circuit breaker, or null if there is no resilience policy
+     */
+    public CircuitBreaker getCircuitBreaker(String authPoint) {
+        ResiliencePolicy policy = this.resiliencePolicy;
+        if (policy == null) {
+            return null;
+        }
+
+        return circuitBreakers.computeIfAbsent(authPoint, point -> new CircuitBreaker(point, policy));
+    }
+
+    /**
+     * Sets the client side rate limiter, disabled by default. When set, requests wait for a permit of
+     * their auth point before being sent.
+     *
+     * @param rateLimiter
+     *            The new rate limiter, or null to disable it
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Returns the client side rate limiter
+     *
+     * @return The rate limiter, or null if disabled
+     */
+    public RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    /**
+     * Sets the recorder of the latency and outcome of the requests, a no-op one by default
+     *
+     * @param metrics
+     *            The new recorder (for example an {@link fr.litarvan.openauth.metrics.InMemoryMetrics}), or null to disable the metrics
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics) {
+        this.metrics = metrics != null ? metrics : MetricsRecorder.NOOP;
+    }
+
+    /**
+     * Returns the recorder of the requests metrics
+     *
+     * @return The recorder, {@link MetricsRecorder#NOOP} if disabled
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the codec converting the requests and responses to and from JSON
+     *
+     * @param codec
+     *            The new codec (for example a {@link fr.litarvan.openauth.json.GsonCodec}), or null to use the default {@link ModelCodec}
+     */
+    public void setJsonCodec(JsonCodec codec) {
+        this.codec = codec != null ? codec : ModelCodec.INSTANCE;
+    }
+
+    /**
+     * Returns the codec of the requests and responses
+     *
+     * @return The JSON codec
+     */
+    public JsonCodec getJsonCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Returns the server pool of this authenticator
+     *
+     * @return The mirrored auth servers, or null if the authenticator uses a single auth server URL
+     */
+    public ServerPool getServerPool() {
+        return this.servers;
+    }
+
+    /**
+     * Returns the auth points of the server
+     *
+     * @return The auth points
+     */
+    public AuthPoints getAuthPoints() {
+        return this.authPoints;
+    }
+
+    /**
+     * Resolves and connects to the auth server (each server of the pool, if any) ahead of time, for example when
+     * the launcher starts, so that the first request only pays for itself. The connections are opened in
+     * parallel on the executor of this authenticator, and kept by its transport.
+     *
+     * @return A future completed once every server is ready, or completed exceptionally with an
+     *         {@link AuthenticationException} if one couldn't be reached
+     */
+    public CompletableFuture<Void> prewarm() {
+        return prewarm(Proxy.NO_PROXY);
+    }
+
+    /**
+     * Resolves and connects to the auth server (each server of the pool, if any) ahead of time. See {@link #prewarm()}.
+     *
+     * @param proxy
+     *           The proxy the requests will go through
+     *
+     * @return A future completed once every server is ready, or completed exceptionally with an
+     *         {@link AuthenticationException} if one couldn't be reached
+     */
+    public CompletableFuture<Void> prewarm(Proxy proxy) {
+        List<String> urls = new ArrayList<>();
+        if (servers != null) {
+            for (ServerPool.Server server : servers.getServers()) {
+                urls.add(server.getUrl());
+            }
+        } else {
+            urls.add(authURL);
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures.add(future);
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        transport.prewarm(new URL(url), proxy);
+                        future.complete(null);
+                    } catch (IOException e) {
+                        future.completeExceptionally(new AuthenticationException(new AuthError("Can't connect : " + e.getClass().getName(), e.getMessage(), "Unknown"), e));
+                    } catch (RuntimeException | Error e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Closes the transport of this authenticator, and its pooled connections
+     */
+    @Override
+    public void close() {
+        transport.close();
+    }
+
+    /**
+     * The key of an in-flight refresh
+     */
+    private static final class RefreshKey {
+        private final String accessToken;
+        private final String clientToken;
+
+        RefreshKey(String accessToken, String clientToken) {
+            this.accessToken = accessToken;
+            this.clientToken = clientToken;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RefreshKey)) {
+                return false;
+            }
+
+            RefreshKey key = (RefreshKey) o;
+            return Objects.equals(accessToken, key.accessToken) && Objects.equals(clientToken, key.clientToken);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accessToken, clientToken);
+        }
+    }
+
+    /**
+     * A blocking request to the auth server
+     */
+    @FunctionalInterface
+    private interface AuthCall<T> {
+        /**
+         * @param permitted
+         *            If the permit of the rate limiter was already acquired for the request
+         */
+        T call(boolean permitted) throws AuthenticationException;
+    }
+
+    /**
+     * A reader skipping the byte order marks at the start of a response, in place in the caller's buffer
+     */
+    private static final class BomSkippingReader extends FilterReader {
+
+        private boolean started;
+
+        private BomSkippingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c;
+            do {
+                c = super.read();
+            } while (!started && c == '\uFEFF');
+
+            started = true;
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            while (true) {
+                int read = super.read(buffer, offset, length);
+                if (started || read <= 0) {
+                    return read;
+                }
+
+                int skipped = 0;
+                while (skipped < read && buffer[offset + skipped] == '\uFEFF') {
+                    skipped++;
+                }
+
+                if (skipped < read) {
+                    started = true;
+                    System.arraycopy(buffer, offset + skipped, buffer, offset, read - skipped);
+
+                    return read - skipped;
+                }
+            }
+        }
+    }
+
+    /**
+     * The default executor of the async requests: a bounded pool of daemon threads, shared by every
+     * authenticator and created on first use
+     */
+    private static final class DefaultExecutor {
+        private static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    DEFAULT_IO_THREADS, DEFAULT_IO_THREADS,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "OpenAuth-IO-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+            );
+            executor.allowCoreThreadTimeOut(true);
+
+            return executor;
+        }
     }
 
 }
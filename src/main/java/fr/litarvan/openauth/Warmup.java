@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthenticationException;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthenticator;
+import fr.litarvan.openauth.microsoft.model.response.MicrosoftRefreshResponse;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.transport.HttpRequest;
+import fr.litarvan.openauth.transport.HttpResponse;
+import fr.litarvan.openauth.transport.HttpTransport;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Warmup
+ *
+ * <p>
+ *     Runs the logins ahead of time, so that the first real one doesn't pay for the class loading of the
+ *     models, the creation of the JSON adapters, the compilation of the patterns, the loading of the trust store
+ *     and the interpreted execution.
+ *     Both authenticators go through their whole flows (request serialization, response parsing, token
+ *     extraction) against canned responses of the auth servers, without any network access.
+ * </p>
+ *
+ * <p>
+ *     Start it in the background with {@link #runAsync()} when the launcher starts, along with
+ *     {@link Authenticator#prewarm()} and {@link MicrosoftAuthenticator#prewarm()} for the network side.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class Warmup {
+
+    /**
+     * Default number of runs of the logins, enough for their hot code to be compiled
+     */
+    public static final int DEFAULT_ITERATIONS = 200;
+
+    /**
+     * The url of the canned Yggdrasil server, never resolved
+     */
+    private static final String SERVER_URL = "https://warmup.invalid/";
+
+    static final String AUTH_RESPONSE = "{\"accessToken\":\"eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJ3YXJtdXAifQ.d2FybXVw\","
+            + "\"clientToken\":\"7c6d4a1e-5f0b-4c8e-9a3d-2b1f0e9d8c7b\","
+            + "\"availableProfiles\":[{\"name\":\"Warmup\",\"id\":\"0f1e2d3c4b5a69788796a5b4c3d2e1f0\"}],"
+            + "\"selectedProfile\":{\"name\":\"Warmup\",\"id\":\"0f1e2d3c4b5a69788796a5b4c3d2e1f0\"}}";
+
+    static final String REFRESH_RESPONSE = "{\"accessToken\":\"eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJyZWZyZXNoZWQifQ.d2FybXVw\","
+            + "\"clientToken\":\"7c6d4a1e-5f0b-4c8e-9a3d-2b1f0e9d8c7b\","
+            + "\"selectedProfile\":{\"name\":\"Warmup\",\"id\":\"0f1e2d3c4b5a69788796a5b4c3d2e1f0\"}}";
+
+    static final String AUTH_ERROR = "{\"error\":\"ForbiddenOperationException\",\"errorMessage\":\"Invalid credentials. Invalid username or password.\"}";
+
+    static final String XBOX_LOGIN_RESPONSE = "{\"IssueInstant\":\"2021-06-14T18:38:43.0311452Z\",\"NotAfter\":\"2021-06-28T18:38:43.0311452Z\","
+            + "\"Token\":\"EwAYA+pvBAAUKods63Ys1fGlwiccIFJ+qE1hANsAAT5JlYJrDyVJ4X8SMv2mFvgpYmZ7C2oWa6YGwOvyFkYxq4h2xIO1Jkq1uYI6sM1ea1xr\","
+            + "\"DisplayClaims\":{\"xui\":[{\"uhs\":\"2535437716432741\"}]}}";
+
+    static final String MINECRAFT_LOGIN_RESPONSE = "{\"username\":\"5e6b3a4c-8d2f-1a0b-9c8d-7e6f5a4b3c2d\","
+            + "\"access_token\":\"eyJhbGciOiJIUzI1NiJ9.eyJ4dWlkIjoid2FybXVwIn0.d2FybXVw\",\"token_type\":\"Bearer\",\"expires_in\":86400}";
+
+    static final String MINECRAFT_STORE_RESPONSE = "{\"items\":["
+            + "{\"name\":\"product_minecraft\",\"signature\":\"eyJ0eXAiOiJKV1QiLCJhbGciOiJSUzI1NiJ9\"},"
+            + "{\"name\":\"game_minecraft\",\"signature\":\"eyJ0eXAiOiJKV1QiLCJhbGciOiJSUzI1NiJ9\"}],"
+            + "\"signature\":\"eyJ0eXAiOiJKV1QiLCJhbGciOiJSUzI1NiJ9\",\"keyId\":\"1\"}";
+
+    static final String MINECRAFT_PROFILE = "{\"id\":\"0f1e2d3c4b5a69788796a5b4c3d2e1f0\",\"name\":\"Warmup\","
+            + "\"skins\":[{\"id\":\"6a6e65e5-76dd-4c3c-a625-162924514568\",\"state\":\"ACTIVE\","
+            + "\"url\":\"http://textures.minecraft.net/texture/1a4af718455d4aab528e7a61f86fa25e6a369d1768dcb13f7df319a713eb810b\","
+            + "\"variant\":\"CLASSIC\",\"alias\":\"STEVE\"}],\"capes\":[]}";
+
+    static final String MICROSOFT_REFRESH_RESPONSE = "{\"token_type\":\"bearer\",\"expires_in\":86400,"
+            + "\"scope\":\"service::user.auth.xboxlive.com::MBI_SSL\",\"access_token\":\"EwAIA+pvBAAUKods63Ys1fGlwiccIFJ+qE1hANsAAZV1\","
+            + "\"refresh_token\":\"M.R3_BAY.-CcNEaVukxRNe6ry!s0rnS*EyK1GwXo1xU\",\"user_id\":\"5e6b3a4c8d2f1a0b\"}";
+
+    static final String TOKENS_URL = "https://login.live.com/oauth20_desktop.srf?lc=1033"
+            + "#access_token=EwAIA%2bpvBAAUKods63Ys1fGlwiccIFJ%2bqE1hANsAAZV1&token_type=bearer&expires_in=86400"
+            + "&scope=service::user.auth.xboxlive.com::MBI_SSL&refresh_token=M.R3_BAY.-CcNEaVukxRNe6ry%21s0rnS%2aEyK1GwXo1xU"
+            + "&user_id=5e6b3a4c8d2f1a0b";
+
+    static final String LOGIN_PAGE = "<!DOCTYPE html><html><head><title>Sign in to your Microsoft account</title>"
+            + "<script>var ServerData = {urlPost: 'https://login.live.com/ppsecure/post.srf?contextid=A1B2C3',"
+            + "sFTTag:'<input type=\"hidden\" name=\"PPFT\" id=\"i0327\" value=\"DUOdWq1w9cO6hH4hG8aY2q0yI6U1sKqR3XUp2lJ\"/>'};"
+            + "</script></head><body></body></html>";
+
+    private Warmup() {
+    }
+
+    /**
+     * Runs the logins {@link #DEFAULT_ITERATIONS} times with the default JSON codec
+     */
+    public static void run() {
+        run(ModelCodec.INSTANCE, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Runs the logins
+     *
+     * @param codec
+     *            The JSON codec the authenticators will use
+     * @param iterations
+     *            The number of runs
+     */
+    public static void run(JsonCodec codec, int iterations) {
+        try {
+            // Loads the trust store and the cipher suites, which the first HTTPS connection would do otherwise
+            SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The warmup failed", e);
+        }
+
+        HttpTransport transport = new CannedTransport();
+
+        Authenticator authenticator = new Authenticator(SERVER_URL, AuthPoints.NORMAL_AUTH_POINTS, transport, Runnable::run);
+        authenticator.setJsonCodec(codec);
+
+        WarmupAuthenticator microsoft = new WarmupAuthenticator(codec, transport);
+
+        try {
+            for (int i = 0; i < iterations; i++) {
+                AuthResponse response = authenticator.authenticate(AuthAgent.MINECRAFT, "warmup", "warmup", null);
+                authenticator.refreshAsync(response.getAccessToken(), response.getClientToken()).join();
+                authenticator.validate(response.getAccessToken());
+                authenticator.invalidate(response.getAccessToken(), response.getClientToken());
+
+                // Answered by an error, to go through its parsing too
+                authenticator.trySignout("warmup", "warmup");
+
+                microsoft.login();
+            }
+        } catch (AuthenticationException | MicrosoftAuthenticationException | IOException e) {
+            throw new IllegalStateException("The warmup failed", e);
+        }
+    }
+
+    /**
+     * Runs the logins on a background thread
+     *
+     * @return A future completed when they are done
+     */
+    public static CompletableFuture<Void> runAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                run();
+                future.complete(null);
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        }, "OpenAuth-Warmup");
+        thread.setDaemon(true);
+        thread.start();
+
+        return future;
+    }
+
+    /**
+     * The Microsoft authenticator, with the login page parsing and the token extraction of the webview
+     */
+    private static final class WarmupAuthenticator extends MicrosoftAuthenticator {
+        private final JsonCodec codec;
+
+        private WarmupAuthenticator(JsonCodec codec, HttpTransport transport) {
+            super(codec, transport);
+            this.codec = codec;
+        }
+
+        private void login() throws MicrosoftAuthenticationException, IOException {
+            parsePreAuthData(LOGIN_PAGE);
+            loginWithTokens(extractTokens(TOKENS_URL));
+
+            // Read through a HttpURLConnection by loginWithRefreshToken
+            codec.decode(MICROSOFT_REFRESH_RESPONSE, MicrosoftRefreshResponse.class);
+        }
+    }
+
+    /**
+     * Answers the canned response of each endpoint, without network
+     */
+    private static final class CannedTransport implements HttpTransport {
+
+        @Override
+        public HttpResponse execute(HttpRequest request) {
+            String path = request.getUrl().getPath();
+
+            switch (path) {
+                case "/authenticate": return respond(200, AUTH_RESPONSE);
+                case "/refresh": return respond(200, REFRESH_RESPONSE);
+                case "/validate":
+                case "/invalidate": return respond(204, null);
+                case "/signout": return respond(403, AUTH_ERROR);
+                case "/user/authenticate":
+                case "/xsts/authorize": return respond(200, XBOX_LOGIN_RESPONSE);
+                case "/authentication/login_with_xbox": return respond(200, MINECRAFT_LOGIN_RESPONSE);
+                case "/entitlements/mcstore": return respond(200, MINECRAFT_STORE_RESPONSE);
+                case "/minecraft/profile": return respond(200, MINECRAFT_PROFILE);
+                default: return respond(404, null);
+            }
+        }
+
+        private static HttpResponse respond(int status, String body) {
+            byte[] bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            Map<String, String> headers = body != null
+                    ? Collections.singletonMap("Content-Type", "application/json; charset=utf-8")
+                    : Collections.emptyMap();
+
+            return new HttpResponse(status, headers, new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
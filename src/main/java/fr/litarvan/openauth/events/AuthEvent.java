@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.events;
+
+/**
+ * Auth Event
+ *
+ * <p>
+ *     A request being traced, as returned by {@link AuthEvents#begin}. When tracing is off, this
+ *     is {@link #NOOP} and every method does nothing.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public interface AuthEvent {
+
+    /**
+     * The event doing nothing, returned when tracing is off
+     */
+    AuthEvent NOOP = new AuthEvent() {
+        @Override
+        public void setStatus(int status) {
+        }
+
+        @Override
+        public void addBytesIn(long bytes) {
+        }
+
+        @Override
+        public void addBytesOut(long bytes) {
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    /**
+     * @param status
+     *            The HTTP status code of the response
+     */
+    void setStatus(int status);
+
+    /**
+     * @param bytes
+     *            A number of bytes received
+     */
+    void addBytesIn(long bytes);
+
+    /**
+     * @param bytes
+     *            A number of bytes sent
+     */
+    void addBytesOut(long bytes);
+
+    /**
+     * Ends the event and emits it, its duration being the time since {@link AuthEvents#begin}
+     */
+    void commit();
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.events;
+
+/**
+ * Auth Events
+ *
+ * <p>
+ *     Emits an event for each request sent to an auth server, to profile them with a tool like
+ *     Java Flight Recorder. On Java 8 this class does nothing; from Java 11 the multi-release jar
+ *     replaces it by a version emitting {@code fr.litarvan.openauth.Request} JFR events, free when
+ *     no recording is enabled.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class AuthEvents {
+
+    private AuthEvents() {
+    }
+
+    /**
+     * Starts tracing a request
+     *
+     * @param stage
+     *            The stage of the authentication the request is part of (like the auth point)
+     * @param endpoint
+     *            The URL the request is sent to
+     *
+     * @return The event to complete then commit, {@link AuthEvent#NOOP} if tracing is off
+     */
+    public static AuthEvent begin(String stage, String endpoint) {
+        return AuthEvent.NOOP;
+    }
+
+    /**
+     * @return If the requests are currently traced
+     */
+    public static boolean isEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Format Type Adapter
+ *
+ * <p>
+ *     Runs a {@link ModelFormat} on Gson's reader and writer, so that the Gson instance of
+ *     {@link JsonModels} reads and writes the models exactly like {@link ModelCodec} does.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+class FormatTypeAdapter<T> extends TypeAdapter<T> {
+
+    private final ModelFormat<T> format;
+
+    FormatTypeAdapter(ModelFormat<T> format) {
+        this.format = format;
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        format.write(new GsonOutput(out), value);
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        return format.read(new GsonInput(in));
+    }
+
+    private static class GsonInput implements JsonInput {
+
+        private final JsonReader in;
+
+        private GsonInput(JsonReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            in.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            in.endObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            in.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            in.endArray();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return in.hasNext();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return in.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return in.nextString();
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            return in.nextLong();
+        }
+
+        @Override
+        public boolean nextNull() throws IOException {
+            if (in.peek() != JsonToken.NULL) {
+                return false;
+            }
+
+            in.nextNull();
+            return true;
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            in.skipValue();
+        }
+    }
+
+    private static class GsonOutput implements JsonOutput {
+
+        private final JsonWriter out;
+
+        private GsonOutput(JsonWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            out.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            out.endObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            out.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            out.endArray();
+        }
+
+        @Override
+        public JsonOutput name(String name) throws IOException {
+            out.name(name);
+            return this;
+        }
+
+        @Override
+        public void value(String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public void nullValue() throws IOException {
+            out.nullValue();
+        }
+    }
+}
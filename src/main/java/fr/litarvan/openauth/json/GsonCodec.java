@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Gson Codec
+ *
+ * <p>
+ *     A {@link JsonCodec} running on a Gson instance, by default the one of {@link JsonModels},
+ *     which knows the library models through the same hand-written formats as {@link ModelCodec}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class GsonCodec implements JsonCodec {
+
+    private final Gson gson;
+
+    /**
+     * Gson Codec constructor, using the shared {@link JsonModels#GSON}
+     */
+    public GsonCodec() {
+        this(JsonModels.GSON);
+    }
+
+    /**
+     * Gson Codec constructor
+     *
+     * @param gson
+     *            The Gson instance to use
+     */
+    public GsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String encode(Object value) {
+        return gson.toJson(value);
+    }
+
+    @Override
+    public <T> T decode(Reader reader, Class<T> type) throws IOException {
+        try {
+            return gson.fromJson(new JsonReader(reader), type);
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new InvalidJsonException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the Gson instance of this codec
+     *
+     * @return The Gson instance
+     */
+    public Gson getGson() {
+        return this.gson;
+    }
+}
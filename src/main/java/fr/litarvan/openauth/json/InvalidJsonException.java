@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+
+/**
+ * Invalid JSON Exception
+ *
+ * <p>
+ *     Thrown by a {@link JsonCodec} reading a document that is not valid JSON, or doesn't match
+ *     the expected type.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class InvalidJsonException extends IOException {
+
+    /**
+     * @param message
+     *            The problem, and where it was found
+     */
+    public InvalidJsonException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message
+     *            The problem
+     * @param cause
+     *            The error of the underlying JSON library
+     */
+    public InvalidJsonException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * JSON Byte Writer
+ *
+ * <p>
+ *     The reusable UTF-8 output buffer of the {@link RequestTemplate}s: constant parts are copied in
+ *     as precomputed bytes, and strings are escaped (like {@link JsonTextWriter} does) and encoded
+ *     straight into it, without intermediate {@link String}s nor char arrays.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class JsonByteWriter {
+
+    /**
+     * The size above which the buffer is not kept for the next request
+     */
+    private static final int MAX_RETAINED_SIZE = 16 * 1024;
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<JsonByteWriter> CURRENT = ThreadLocal.withInitial(JsonByteWriter::new);
+
+    private byte[] buffer = new byte[512];
+    private int length;
+
+    /**
+     * One bit per nesting level, set once the object or array at that level has an element
+     */
+    private long nonEmpty;
+
+    /**
+     * One bit per nesting level, set if the level is an array
+     */
+    private long arrays;
+
+    private int depth;
+
+    /**
+     * Returns the writer of the current thread, reset
+     *
+     * @return The writer
+     */
+    static JsonByteWriter get() {
+        JsonByteWriter writer = CURRENT.get();
+        if (writer.buffer.length > MAX_RETAINED_SIZE) {
+            writer.buffer = new byte[512];
+        }
+
+        writer.length = 0;
+        writer.nonEmpty = 0;
+        writer.depth = 0;
+
+        return writer;
+    }
+
+    /**
+     * Encodes a name as the bytes written before its value
+     *
+     * @param name
+     *            The name
+     * @param first
+     *            If it is the first of its object, not preceded by a comma
+     *
+     * @return The bytes of the name, quoted and followed by a colon
+     */
+    static byte[] encodeKey(String name, boolean first) {
+        JsonByteWriter writer = new JsonByteWriter();
+        if (!first) {
+            writer.write((byte) ',');
+        }
+
+        writer.string(name);
+        writer.write((byte) ':');
+
+        return writer.toByteArray();
+    }
+
+    void beginObject() {
+        beforeValue();
+        write((byte) '{');
+        push();
+    }
+
+    void endObject() {
+        depth--;
+        write((byte) '}');
+    }
+
+    void beginArray() {
+        beforeValue();
+        write((byte) '[');
+        push();
+    }
+
+    void endArray() {
+        depth--;
+        write((byte) ']');
+    }
+
+    /**
+     * Writes the name of the next field of the current object
+     *
+     * @param first
+     *            The bytes of the name as the first field
+     * @param next
+     *            The bytes of the name preceded by a comma
+     */
+    void key(byte[] first, byte[] next) {
+        long bit = 1L << (depth - 1);
+        write((nonEmpty & bit) == 0 ? first : next);
+        nonEmpty |= bit;
+    }
+
+    void value(String value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+
+        beforeValue();
+        string(value);
+    }
+
+    void value(long value) {
+        beforeValue();
+
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        // Digits were written from the least significant one
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    void nullValue() {
+        beforeValue();
+        write(NULL);
+    }
+
+    /**
+     * @return A copy of the written bytes
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Writes the comma before an array element. Object fields get theirs from {@link #key}.
+     */
+    private void beforeValue() {
+        if (depth == 0) {
+            return;
+        }
+
+        long bit = 1L << (depth - 1);
+        if ((nonEmpty & bit) == 0) {
+            nonEmpty |= bit;
+        } else if (isArray(depth)) {
+            write((byte) ',');
+        }
+    }
+
+    private boolean isArray(int level) {
+        return (arrays & (1L << (level - 1))) != 0;
+    }
+
+    private void push() {
+        if (depth == 64) {
+            throw new IllegalStateException("Nesting too deep");
+        }
+
+        long bit = 1L << depth;
+        nonEmpty &= ~bit;
+
+        // Called right after writing the opening bracket
+        if (buffer[length - 1] == '[') {
+            arrays |= bit;
+        } else {
+            arrays &= ~bit;
+        }
+
+        depth++;
+    }
+
+    private void string(String value) {
+        int count = value.length();
+
+        // Worst case: 3 bytes per char, or 6 for an escape, plus the quotes
+        ensure(count * 6 + 2);
+        byte[] buffer = this.buffer;
+        int length = this.length;
+
+        buffer[length++] = '"';
+
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buffer[length++] = (byte) c;
+                    continue;
+                }
+
+                buffer[length++] = '\\';
+                switch (c) {
+                    case '"': buffer[length++] = '"'; break;
+                    case '\\': buffer[length++] = '\\'; break;
+                    case '\b': buffer[length++] = 'b'; break;
+                    case '\f': buffer[length++] = 'f'; break;
+                    case '\n': buffer[length++] = 'n'; break;
+                    case '\r': buffer[length++] = 'r'; break;
+                    case '\t': buffer[length++] = 't'; break;
+                    default: length = unicodeEscape(buffer, length, c);
+                }
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c == '\u2028' || c == '\u2029') {
+                buffer[length++] = '\\';
+                length = unicodeEscape(buffer, length, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced like String#getBytes does
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        buffer[length++] = '"';
+        this.length = length;
+    }
+
+    private static int unicodeEscape(byte[] buffer, int length, char c) {
+        buffer[length++] = 'u';
+        buffer[length++] = HEX[(c >> 12) & 0xF];
+        buffer[length++] = HEX[(c >> 8) & 0xF];
+        buffer[length++] = HEX[(c >> 4) & 0xF];
+        buffer[length++] = HEX[c & 0xF];
+
+        return length;
+    }
+
+    private void write(byte b) {
+        ensure(1);
+        buffer[length++] = b;
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensure(int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+}
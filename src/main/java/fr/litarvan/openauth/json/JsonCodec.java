@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON Codec
+ *
+ * <p>
+ *     Converts the requests and responses to and from JSON. {@link fr.litarvan.openauth.Authenticator}
+ *     and the Microsoft {@code HttpClient} use {@link ModelCodec#INSTANCE} by default, which knows the
+ *     library models without reflection nor Gson; {@link GsonCodec} uses a Gson instance instead, and
+ *     any other JSON stack can be plugged in by implementing this interface.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public interface JsonCodec {
+
+    /**
+     * Converts a value to JSON
+     *
+     * @param value
+     *            The value (like a request model)
+     *
+     * @return Its JSON representation
+     */
+    String encode(Object value);
+
+    /**
+     * Converts a value to the UTF-8 bytes of its JSON, like sent as a request body
+     *
+     * @param value
+     *            The value (like a request model)
+     *
+     * @return The bytes of its JSON representation
+     */
+    default byte[] encodeBytes(Object value) {
+        return encode(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a value from a JSON document
+     *
+     * @param reader
+     *            The reader of the document, not closed by this method
+     * @param type
+     *            The type of the value (like a response model)
+     *
+     * @throws IOException If the reader failed, or the document is not valid JSON of the given type
+     *
+     * @return The value, or null if the document is empty or null
+     */
+    <T> T decode(Reader reader, Class<T> type) throws IOException;
+
+    /**
+     * Reads a value from a JSON document
+     *
+     * @param json
+     *            The document
+     * @param type
+     *            The type of the value (like a response model)
+     *
+     * @throws IOException If the document is not valid JSON of the given type
+     *
+     * @return The value, or null if the document is empty or null
+     */
+    default <T> T decode(String json, Class<T> type) throws IOException {
+        return decode(new StringReader(json), type);
+    }
+}
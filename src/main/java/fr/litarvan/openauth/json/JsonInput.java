@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+
+/**
+ * A stream of JSON tokens read by a {@link ModelFormat}, from the codec's own reader or from Gson's
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+interface JsonInput {
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    /**
+     * @return If the current object or array has another element
+     */
+    boolean hasNext() throws IOException;
+
+    String nextName() throws IOException;
+
+    /**
+     * @return The next string, or the text of the next number
+     */
+    String nextString() throws IOException;
+
+    /**
+     * @return The next number, or the value of the next string holding a number
+     */
+    long nextLong() throws IOException;
+
+    /**
+     * Consumes the next value if it is null
+     *
+     * @return If it was null
+     */
+    boolean nextNull() throws IOException;
+
+    /**
+     * Skips the next value, with all its nested values
+     */
+    void skipValue() throws IOException;
+}
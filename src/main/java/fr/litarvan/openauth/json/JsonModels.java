@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import fr.litarvan.openauth.microsoft.model.request.MinecraftLoginRequest;
+import fr.litarvan.openauth.microsoft.model.request.XSTSAuthorizationProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLiveLoginProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLoginRequest;
+import fr.litarvan.openauth.microsoft.model.response.*;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.AuthError;
+import fr.litarvan.openauth.model.AuthProfile;
+import fr.litarvan.openauth.model.request.*;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+
+/**
+ * JSON Models
+ *
+ * <p>
+ *     The Gson instance shared by all the requests. Gson is thread-safe, and this one knows every
+ *     request and response model through the hand-written {@link YggdrasilTypeAdapters} and
+ *     {@link MicrosoftTypeAdapters}, looked up once when this class is loaded: no request builds
+ *     a Gson or reflects on a model anymore.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class JsonModels {
+
+    /**
+     * The shared Gson instance
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new YggdrasilTypeAdapters())
+            .registerTypeAdapterFactory(new MicrosoftTypeAdapters())
+            .disableHtmlEscaping()
+            .create();
+
+    static {
+        // Resolves and caches the adapters now rather than on the first requests
+        Class<?>[] models = {
+                AuthAgent.class, AuthError.class, AuthProfile.class,
+                AuthRequest.class, RefreshRequest.class, ValidateRequest.class, SignoutRequest.class, InvalidateRequest.class,
+                AuthResponse.class, RefreshResponse.class,
+                MinecraftLoginRequest.class, XboxLiveLoginProperties.class, XSTSAuthorizationProperties.class, XboxLoginRequest.class,
+                MicrosoftRefreshResponse.class, MinecraftLoginResponse.class, MinecraftProfile.class, MinecraftStoreResponse.class,
+                XboxLoginResponse.class
+        };
+
+        for (Class<?> model : models) {
+            GSON.getAdapter(model);
+        }
+    }
+
+    private JsonModels() {
+    }
+}
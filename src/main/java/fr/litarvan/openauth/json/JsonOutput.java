@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+
+/**
+ * A stream of JSON tokens written by a {@link ModelFormat}, to the codec's own writer or to Gson's.
+ * A name followed by a null value is dropped, like Gson does by default.
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+interface JsonOutput {
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    JsonOutput name(String name) throws IOException;
+
+    /**
+     * @param value
+     *            The string, written as null if it is null
+     */
+    void value(String value) throws IOException;
+
+    void value(long value) throws IOException;
+
+    void nullValue() throws IOException;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.util.Arrays;
+
+/**
+ * JSON Text Writer
+ *
+ * <p>
+ *     The compact JSON writer of {@link ModelCodec}, appending to a {@link StringBuilder}. It escapes
+ *     strings like Gson does with HTML escaping disabled, and drops the names of null values.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class JsonTextWriter implements JsonOutput {
+
+    // Scopes, stacked for each nesting level
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int EMPTY_ARRAY = 4;
+    private static final int NONEMPTY_ARRAY = 5;
+
+    private final StringBuilder out;
+
+    private int[] stack = new int[16];
+    private int depth = 1;
+
+    /**
+     * The name of the next value, only written once the value is known not to be null
+     */
+    private String deferredName;
+
+    JsonTextWriter(StringBuilder out) {
+        this.out = out;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    @Override
+    public void beginObject() {
+        beforeValue();
+        out.append('{');
+        push(EMPTY_OBJECT);
+    }
+
+    @Override
+    public void endObject() {
+        end(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    @Override
+    public void beginArray() {
+        beforeValue();
+        out.append('[');
+        push(EMPTY_ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+        end(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    @Override
+    public JsonOutput name(String name) {
+        int scope = stack[depth - 1];
+        if (deferredName != null || (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT)) {
+            throw new IllegalStateException("Unexpected name " + name);
+        }
+
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public void value(String value) {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+
+        beforeValue();
+        string(value);
+    }
+
+    @Override
+    public void value(long value) {
+        beforeValue();
+        out.append(value);
+    }
+
+    @Override
+    public void nullValue() {
+        if (deferredName != null) {
+            deferredName = null;
+            return;
+        }
+
+        beforeValue();
+        out.append("null");
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+
+        stack[depth++] = scope;
+    }
+
+    private void end(int empty, int nonempty, char bracket) {
+        int scope = stack[depth - 1];
+        if (deferredName != null || (scope != empty && scope != nonempty)) {
+            throw new IllegalStateException("Unexpected " + bracket);
+        }
+
+        depth--;
+        out.append(bracket);
+    }
+
+    /**
+     * Writes the separator and the deferred name before a value
+     */
+    private void beforeValue() {
+        switch (stack[depth - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                out.append(',');
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                if (deferredName == null) {
+                    throw new IllegalStateException("Expected a name");
+                }
+
+                if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    out.append(',');
+                }
+
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                string(deferredName);
+                out.append(':');
+                deferredName = null;
+                break;
+            default:
+                throw new IllegalStateException("The document already has a value");
+        }
+    }
+
+    private void string(String value) {
+        out.append('"');
+
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape;
+
+            if (c < 0x20) {
+                switch (c) {
+                    case '\b': escape = "\\b"; break;
+                    case '\f': escape = "\\f"; break;
+                    case '\n': escape = "\\n"; break;
+                    case '\r': escape = "\\r"; break;
+                    case '\t': escape = "\\t"; break;
+                    default: escape = String.format("\\u%04x", (int) c);
+                }
+            } else if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\u2028') {
+                escape = "\\u2028";
+            } else if (c == '\u2029') {
+                escape = "\\u2029";
+            } else {
+                continue;
+            }
+
+            out.append(value, start, i).append(escape);
+            start = i + 1;
+        }
+
+        out.append(value, start, value.length()).append('"');
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * JSON Token Reader
+ *
+ * <p>
+ *     The strict, streaming JSON reader of {@link ModelCodec}: it reads the document from a buffered
+ *     window of its reader, and only builds a string for the names and values it returns.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class JsonTokenReader implements JsonInput {
+
+    // Tokens, peeked before being consumed
+    private static final int NONE = 0;
+    private static final int BEGIN_OBJECT = 1;
+    private static final int END_OBJECT = 2;
+    private static final int BEGIN_ARRAY = 3;
+    private static final int END_ARRAY = 4;
+    private static final int NAME = 5;
+    private static final int STRING = 6;
+    private static final int NUMBER = 7;
+    private static final int TRUE = 8;
+    private static final int FALSE = 9;
+    private static final int NULL = 10;
+    private static final int END_DOCUMENT = 11;
+
+    // Scopes, stacked for each nesting level
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader reader;
+
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[16];
+    private int depth = 1;
+
+    private int peeked = NONE;
+
+    /**
+     * The builder of the strings crossing the end of the buffer, or holding escapes
+     */
+    private final StringBuilder builder = new StringBuilder();
+
+    JsonTokenReader(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[1024];
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @param json
+     *            The whole document, read in a single window
+     */
+    JsonTokenReader(String json) {
+        this.reader = null;
+        this.buffer = json.toCharArray();
+        this.limit = buffer.length;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return If the document is empty, which is only checked before reading it
+     */
+    boolean isEmpty() throws IOException {
+        return peek() == END_DOCUMENT;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the value read
+     *
+     * @throws InvalidJsonException If something does
+     */
+    void endDocument() throws IOException {
+        expect(END_DOCUMENT, "the end of the document");
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(BEGIN_OBJECT, "an object");
+        push(EMPTY_OBJECT);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(END_OBJECT, "the end of an object");
+        depth--;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(BEGIN_ARRAY, "an array");
+        push(EMPTY_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(END_ARRAY, "the end of an array");
+        depth--;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        int p = peek();
+        return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(NAME, "a name");
+        return readString();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        int p = peek();
+        if (p == STRING) {
+            peeked = NONE;
+            return readString();
+        } else if (p == NUMBER) {
+            peeked = NONE;
+            return readNumber();
+        }
+
+        throw unexpected("a string");
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        int p = peek();
+        if (p != STRING && p != NUMBER) {
+            throw unexpected("a number");
+        }
+
+        peeked = NONE;
+        String text = p == STRING ? readString() : readNumber();
+
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // Like Gson, accepts a double holding an exact long (like 3600.0)
+            try {
+                double value = Double.parseDouble(text);
+                if (value == (long) value) {
+                    return (long) value;
+                }
+            } catch (NumberFormatException ignored) {
+                // Reported below
+            }
+
+            throw new InvalidJsonException("Expected a long but was " + text + locate());
+        }
+    }
+
+    @Override
+    public boolean nextNull() throws IOException {
+        if (peek() != NULL) {
+            return false;
+        }
+
+        peeked = NONE;
+        return true;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int count = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT: beginObject(); count++; break;
+                case BEGIN_ARRAY: beginArray(); count++; break;
+                case END_OBJECT: endObject(); count--; break;
+                case END_ARRAY: endArray(); count--; break;
+                case NAME:
+                case STRING: peeked = NONE; readString(); break;
+                case NUMBER: peeked = NONE; readNumber(); break;
+                case END_DOCUMENT: throw unexpected("a value");
+                default: peeked = NONE;
+            }
+        } while (count > 0);
+    }
+
+    private void expect(int token, String expected) throws IOException {
+        if (peek() != token) {
+            throw unexpected(expected);
+        }
+
+        peeked = NONE;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+
+        stack[depth++] = scope;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == NONE) {
+            peeked = doPeek();
+        }
+
+        return peeked;
+    }
+
+    private int doPeek() throws IOException {
+        int scope = stack[depth - 1];
+        int c;
+
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return END_ARRAY;
+                }
+
+                pos--;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[depth - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+
+                if (c == '}') {
+                    return END_OBJECT;
+                } else if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+
+                    c = nextNonWhitespace();
+                }
+
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+
+                return NAME;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                if (!skipWhitespace()) {
+                    return END_DOCUMENT;
+                }
+
+                break;
+            default:
+                if (!skipWhitespace()) {
+                    return END_DOCUMENT;
+                }
+
+                throw syntaxError("Expected the end of the document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{': return BEGIN_OBJECT;
+            case '[': return BEGIN_ARRAY;
+            case '"': return STRING;
+            case 't': literal("rue"); return TRUE;
+            case 'f': literal("alse"); return FALSE;
+            case 'n': literal("ull"); return NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return NUMBER;
+                }
+
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    private void literal(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (nextChar() != rest.charAt(i)) {
+                throw syntaxError("Expected a value");
+            }
+        }
+    }
+
+    /**
+     * Reads a string whose opening quote was consumed, up to its closing quote
+     */
+    private String readString() throws IOException {
+        builder.setLength(0);
+        boolean built = false;
+
+        while (true) {
+            int start = pos;
+
+            while (pos < limit) {
+                char c = buffer[pos++];
+
+                if (c == '"') {
+                    if (!built) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+
+                    builder.append(buffer, start, pos - start - 1);
+                    return builder.toString();
+                } else if (c == '\\') {
+                    builder.append(buffer, start, pos - start - 1);
+                    builder.append(readEscape());
+                    built = true;
+                    start = pos;
+                } else if (c < 0x20) {
+                    throw syntaxError("Unescaped control character in a string");
+                }
+            }
+
+            builder.append(buffer, start, pos - start);
+            built = true;
+
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = nextChar();
+
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/': return c;
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+
+                    value = (value << 4) | digit;
+                }
+
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape \\" + c);
+        }
+    }
+
+    /**
+     * Reads the text of a number, up to the first character that can't be part of it
+     */
+    private String readNumber() throws IOException {
+        builder.setLength(0);
+
+        while (true) {
+            int start = pos;
+
+            while (pos < limit) {
+                char c = buffer[pos];
+                if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                    if (builder.length() == 0) {
+                        return new String(buffer, start, pos - start);
+                    }
+
+                    builder.append(buffer, start, pos - start);
+                    return builder.toString();
+                }
+
+                pos++;
+            }
+
+            builder.append(buffer, start, pos - start);
+            if (!fill()) {
+                return builder.toString();
+            }
+        }
+    }
+
+    /**
+     * @return The next character after whitespace, the end of the document being an error
+     */
+    private char nextNonWhitespace() throws IOException {
+        if (!skipWhitespace()) {
+            throw syntaxError("Unexpected end of the document");
+        }
+
+        return buffer[pos++];
+    }
+
+    /**
+     * Skips the whitespace before the next character
+     *
+     * @return If there is a next character
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return true;
+                }
+
+                pos++;
+            }
+
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private char nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of the document");
+        }
+
+        return buffer[pos++];
+    }
+
+    /**
+     * Reads the next window of the document, once the current one is consumed
+     *
+     * @return If there was anything left to read
+     */
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+
+        int read = reader.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = Math.max(read, 0);
+
+        return read > 0;
+    }
+
+    private InvalidJsonException unexpected(String expected) throws IOException {
+        String token;
+        switch (peek()) {
+            case BEGIN_OBJECT: token = "an object"; break;
+            case END_OBJECT: token = "the end of an object"; break;
+            case BEGIN_ARRAY: token = "an array"; break;
+            case END_ARRAY: token = "the end of an array"; break;
+            case NAME: token = "a name"; break;
+            case STRING: token = "a string"; break;
+            case NUMBER: token = "a number"; break;
+            case TRUE:
+            case FALSE: token = "a boolean"; break;
+            case NULL: token = "null"; break;
+            default: token = "the end of the document";
+        }
+
+        return new InvalidJsonException("Expected " + expected + " but was " + token + locate());
+    }
+
+    private InvalidJsonException syntaxError(String message) {
+        return new InvalidJsonException(message + locate());
+    }
+
+    private String locate() {
+        return " (at depth " + (depth - 1) + ")";
+    }
+}
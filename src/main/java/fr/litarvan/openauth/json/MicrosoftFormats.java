@@ -0,0 +1,440 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import fr.litarvan.openauth.microsoft.model.request.MinecraftLoginRequest;
+import fr.litarvan.openauth.microsoft.model.request.XSTSAuthorizationProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLiveLoginProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLoginRequest;
+import fr.litarvan.openauth.microsoft.model.response.*;
+import fr.litarvan.openauth.microsoft.model.response.MinecraftProfile.MinecraftSkin;
+import fr.litarvan.openauth.microsoft.model.response.MinecraftStoreResponse.StoreProduct;
+import fr.litarvan.openauth.microsoft.model.response.XboxLoginResponse.XboxLiveLoginResponseClaims;
+import fr.litarvan.openauth.microsoft.model.response.XboxLoginResponse.XboxLiveUserInfo;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Microsoft Formats
+ *
+ * <p>
+ *     The hand-written {@link ModelFormat}s of the {@code fr.litarvan.openauth.microsoft.model} requests
+ *     and responses, reading and writing the same JSON fields as Gson's reflective adapters.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class MicrosoftFormats {
+
+    static final ModelFormat<MinecraftLoginRequest> MINECRAFT_LOGIN_REQUEST = new ModelFormat<MinecraftLoginRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, MinecraftLoginRequest value) throws IOException {
+            out.name("identityToken").value(value.getIdentityToken());
+        }
+
+        @Override
+        protected MinecraftLoginRequest readFields(JsonInput in) throws IOException {
+            String identityToken = null;
+
+            while (in.hasNext()) {
+                if ("identityToken".equals(in.nextName())) {
+                    identityToken = nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+
+            return new MinecraftLoginRequest(identityToken);
+        }
+    };
+
+    static final ModelFormat<XboxLiveLoginProperties> XBOX_LIVE_LOGIN_PROPERTIES = new ModelFormat<XboxLiveLoginProperties>() {
+        @Override
+        protected void writeFields(JsonOutput out, XboxLiveLoginProperties value) throws IOException {
+            out.name("AuthMethod").value(value.getAuthMethod());
+            out.name("SiteName").value(value.getSiteName());
+            out.name("RpsTicket").value(value.getRpsTicket());
+        }
+
+        @Override
+        protected XboxLiveLoginProperties readFields(JsonInput in) throws IOException {
+            String authMethod = null;
+            String siteName = null;
+            String rpsTicket = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "AuthMethod": authMethod = nextString(in); break;
+                    case "SiteName": siteName = nextString(in); break;
+                    case "RpsTicket": rpsTicket = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new XboxLiveLoginProperties(authMethod, siteName, rpsTicket);
+        }
+    };
+
+    static final ModelFormat<XSTSAuthorizationProperties> XSTS_AUTHORIZATION_PROPERTIES = new ModelFormat<XSTSAuthorizationProperties>() {
+        @Override
+        protected void writeFields(JsonOutput out, XSTSAuthorizationProperties value) throws IOException {
+            out.name("SandboxId").value(value.getSandboxId());
+            writeStringArray(out, "UserTokens", value.getUserTokens());
+        }
+
+        @Override
+        protected XSTSAuthorizationProperties readFields(JsonInput in) throws IOException {
+            String sandboxId = null;
+            String[] userTokens = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "SandboxId": sandboxId = nextString(in); break;
+                    case "UserTokens": userTokens = nextStringArray(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new XSTSAuthorizationProperties(sandboxId, userTokens);
+        }
+    };
+
+    static final ModelFormat<MicrosoftRefreshResponse> MICROSOFT_REFRESH_RESPONSE = new ModelFormat<MicrosoftRefreshResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, MicrosoftRefreshResponse value) throws IOException {
+            out.name("token_type").value(value.getTokenType());
+            out.name("expires_in").value(value.getExpiresIn());
+            out.name("scope").value(value.getScope());
+            out.name("access_token").value(value.getAccessToken());
+            out.name("refresh_token").value(value.getRefreshToken());
+            out.name("user_id").value(value.getUserId());
+        }
+
+        @Override
+        protected MicrosoftRefreshResponse readFields(JsonInput in) throws IOException {
+            String tokenType = null;
+            long expiresIn = 0;
+            String scope = null;
+            String accessToken = null;
+            String refreshToken = null;
+            String userId = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token_type": tokenType = nextString(in); break;
+                    case "expires_in": expiresIn = nextLong(in, 0); break;
+                    case "scope": scope = nextString(in); break;
+                    case "access_token": accessToken = nextString(in); break;
+                    case "refresh_token": refreshToken = nextString(in); break;
+                    case "user_id": userId = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new MicrosoftRefreshResponse(tokenType, expiresIn, scope, accessToken, refreshToken, userId);
+        }
+    };
+
+    static final ModelFormat<MinecraftLoginResponse> MINECRAFT_LOGIN_RESPONSE = new ModelFormat<MinecraftLoginResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, MinecraftLoginResponse value) throws IOException {
+            out.name("username").value(value.getUsername());
+            out.name("access_token").value(value.getAccessToken());
+            out.name("token_type").value(value.getTokenType());
+            out.name("expires_in").value(value.getExpiresIn());
+        }
+
+        @Override
+        protected MinecraftLoginResponse readFields(JsonInput in) throws IOException {
+            String username = null;
+            String accessToken = null;
+            String tokenType = null;
+            long expiresIn = 0;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username": username = nextString(in); break;
+                    case "access_token": accessToken = nextString(in); break;
+                    case "token_type": tokenType = nextString(in); break;
+                    case "expires_in": expiresIn = nextLong(in, 0); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new MinecraftLoginResponse(username, accessToken, tokenType, expiresIn);
+        }
+    };
+
+    static final ModelFormat<MinecraftSkin> MINECRAFT_SKIN = new ModelFormat<MinecraftSkin>() {
+        @Override
+        protected void writeFields(JsonOutput out, MinecraftSkin value) throws IOException {
+            out.name("id").value(value.getId());
+            out.name("state").value(value.getState());
+            out.name("url").value(value.getUrl());
+            out.name("variant").value(value.getVariant());
+            out.name("alias").value(value.getAlias());
+        }
+
+        @Override
+        protected MinecraftSkin readFields(JsonInput in) throws IOException {
+            String id = null;
+            String state = null;
+            String url = null;
+            String variant = null;
+            String alias = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": id = nextString(in); break;
+                    case "state": state = nextString(in); break;
+                    case "url": url = nextString(in); break;
+                    case "variant": variant = nextString(in); break;
+                    case "alias": alias = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new MinecraftSkin(id, state, url, variant, alias);
+        }
+    };
+
+    static final ModelFormat<MinecraftProfile> MINECRAFT_PROFILE = new ModelFormat<MinecraftProfile>() {
+        @Override
+        protected void writeFields(JsonOutput out, MinecraftProfile value) throws IOException {
+            out.name("id").value(value.getId());
+            out.name("name").value(value.getName());
+            writeArray(out, "skins", value.getSkins(), MINECRAFT_SKIN);
+        }
+
+        @Override
+        protected MinecraftProfile readFields(JsonInput in) throws IOException {
+            String id = null;
+            String name = null;
+            MinecraftSkin[] skins = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": id = nextString(in); break;
+                    case "name": name = nextString(in); break;
+                    case "skins": skins = nextArray(in, MINECRAFT_SKIN, MinecraftSkin[]::new); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new MinecraftProfile(id, name, skins);
+        }
+    };
+
+    static final ModelFormat<StoreProduct> STORE_PRODUCT = new ModelFormat<StoreProduct>() {
+        @Override
+        protected void writeFields(JsonOutput out, StoreProduct value) throws IOException {
+            out.name("name").value(value.getName());
+            out.name("signature").value(value.getSignature());
+        }
+
+        @Override
+        protected StoreProduct readFields(JsonInput in) throws IOException {
+            String name = null;
+            String signature = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name": name = nextString(in); break;
+                    case "signature": signature = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new StoreProduct(name, signature);
+        }
+    };
+
+    static final ModelFormat<MinecraftStoreResponse> MINECRAFT_STORE_RESPONSE = new ModelFormat<MinecraftStoreResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, MinecraftStoreResponse value) throws IOException {
+            writeArray(out, "items", value.getItems(), STORE_PRODUCT);
+            out.name("signature").value(value.getSignature());
+            out.name("keyId").value(value.getKeyId());
+        }
+
+        @Override
+        protected MinecraftStoreResponse readFields(JsonInput in) throws IOException {
+            StoreProduct[] items = null;
+            String signature = null;
+            String keyId = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "items": items = nextArray(in, STORE_PRODUCT, StoreProduct[]::new); break;
+                    case "signature": signature = nextString(in); break;
+                    case "keyId": keyId = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new MinecraftStoreResponse(items, signature, keyId);
+        }
+    };
+
+    static final ModelFormat<XboxLiveUserInfo> XBOX_LIVE_USER_INFO = new ModelFormat<XboxLiveUserInfo>() {
+        @Override
+        protected void writeFields(JsonOutput out, XboxLiveUserInfo value) throws IOException {
+            out.name("uhs").value(value.getUserHash());
+        }
+
+        @Override
+        protected XboxLiveUserInfo readFields(JsonInput in) throws IOException {
+            String uhs = null;
+
+            while (in.hasNext()) {
+                if ("uhs".equals(in.nextName())) {
+                    uhs = nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+
+            return new XboxLiveUserInfo(uhs);
+        }
+    };
+
+    static final ModelFormat<XboxLiveLoginResponseClaims> XBOX_LIVE_LOGIN_RESPONSE_CLAIMS = new ModelFormat<XboxLiveLoginResponseClaims>() {
+        @Override
+        protected void writeFields(JsonOutput out, XboxLiveLoginResponseClaims value) throws IOException {
+            writeArray(out, "xui", value.getUsers(), XBOX_LIVE_USER_INFO);
+        }
+
+        @Override
+        protected XboxLiveLoginResponseClaims readFields(JsonInput in) throws IOException {
+            XboxLiveUserInfo[] xui = null;
+
+            while (in.hasNext()) {
+                if ("xui".equals(in.nextName())) {
+                    xui = nextArray(in, XBOX_LIVE_USER_INFO, XboxLiveUserInfo[]::new);
+                } else {
+                    in.skipValue();
+                }
+            }
+
+            return new XboxLiveLoginResponseClaims(xui);
+        }
+    };
+
+    static final ModelFormat<XboxLoginResponse> XBOX_LOGIN_RESPONSE = new ModelFormat<XboxLoginResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, XboxLoginResponse value) throws IOException {
+            out.name("IssueInstant").value(value.getIssueInstant());
+            out.name("NotAfter").value(value.getNotAfter());
+            out.name("Token").value(value.getToken());
+            out.name("DisplayClaims");
+            XBOX_LIVE_LOGIN_RESPONSE_CLAIMS.write(out, value.getDisplayClaims());
+        }
+
+        @Override
+        protected XboxLoginResponse readFields(JsonInput in) throws IOException {
+            String issueInstant = null;
+            String notAfter = null;
+            String token = null;
+            XboxLiveLoginResponseClaims displayClaims = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "IssueInstant": issueInstant = nextString(in); break;
+                    case "NotAfter": notAfter = nextString(in); break;
+                    case "Token": token = nextString(in); break;
+                    case "DisplayClaims": displayClaims = XBOX_LIVE_LOGIN_RESPONSE_CLAIMS.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new XboxLoginResponse(issueInstant, notAfter, token, displayClaims);
+        }
+    };
+
+    /**
+     * The format of the generic Xbox login request, its properties being written with the format of
+     * their runtime class. The requests are never read back by the library: their properties are
+     * skipped, as their type is erased.
+     */
+    static final ModelFormat<XboxLoginRequest<Object>> XBOX_LOGIN_REQUEST = new ModelFormat<XboxLoginRequest<Object>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void writeFields(JsonOutput out, XboxLoginRequest<Object> value) throws IOException {
+            Object properties = value.getProperties();
+
+            out.name("Properties");
+            if (properties == null) {
+                out.nullValue();
+            } else {
+                ModelFormat<Object> format = (ModelFormat<Object>) FORMATS.get(properties.getClass());
+                if (format == null) {
+                    throw new IllegalArgumentException("No JSON format for " + properties.getClass().getName());
+                }
+
+                format.write(out, properties);
+            }
+
+            out.name("RelyingParty").value(value.getSiteName());
+            out.name("TokenType").value(value.getTokenType());
+        }
+
+        @Override
+        protected XboxLoginRequest<Object> readFields(JsonInput in) throws IOException {
+            String relyingParty = null;
+            String tokenType = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "RelyingParty": relyingParty = nextString(in); break;
+                    case "TokenType": tokenType = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new XboxLoginRequest<>(null, relyingParty, tokenType);
+        }
+    };
+
+    /**
+     * The formats, by model class
+     */
+    static final Map<Class<?>, ModelFormat<?>> FORMATS = new HashMap<>();
+
+    static {
+        FORMATS.put(MinecraftLoginRequest.class, MINECRAFT_LOGIN_REQUEST);
+        FORMATS.put(XboxLiveLoginProperties.class, XBOX_LIVE_LOGIN_PROPERTIES);
+        FORMATS.put(XSTSAuthorizationProperties.class, XSTS_AUTHORIZATION_PROPERTIES);
+        FORMATS.put(XboxLoginRequest.class, XBOX_LOGIN_REQUEST);
+        FORMATS.put(MicrosoftRefreshResponse.class, MICROSOFT_REFRESH_RESPONSE);
+        FORMATS.put(MinecraftLoginResponse.class, MINECRAFT_LOGIN_RESPONSE);
+        FORMATS.put(MinecraftSkin.class, MINECRAFT_SKIN);
+        FORMATS.put(MinecraftProfile.class, MINECRAFT_PROFILE);
+        FORMATS.put(StoreProduct.class, STORE_PRODUCT);
+        FORMATS.put(MinecraftStoreResponse.class, MINECRAFT_STORE_RESPONSE);
+        FORMATS.put(XboxLiveUserInfo.class, XBOX_LIVE_USER_INFO);
+        FORMATS.put(XboxLiveLoginResponseClaims.class, XBOX_LIVE_LOGIN_RESPONSE_CLAIMS);
+        FORMATS.put(XboxLoginResponse.class, XBOX_LOGIN_RESPONSE);
+    }
+
+    private MicrosoftFormats() {
+    }
+}
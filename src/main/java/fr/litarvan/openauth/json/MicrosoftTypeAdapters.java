@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import fr.litarvan.openauth.microsoft.model.request.XboxLoginRequest;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Microsoft Type Adapters
+ *
+ * <p>
+ *     The {@link TypeAdapter}s of the {@code fr.litarvan.openauth.microsoft.model} requests and responses,
+ *     running their hand-written {@link MicrosoftFormats} on Gson's reader and writer.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class MicrosoftTypeAdapters implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw == XboxLoginRequest.class) {
+            return (TypeAdapter<T>) new XboxLoginRequestAdapter(gson, type.getType());
+        }
+
+        ModelFormat<T> format = (ModelFormat<T>) MicrosoftFormats.FORMATS.get(raw);
+        return format != null ? new FormatTypeAdapter<>(format) : null;
+    }
+
+    /**
+     * The adapter of the generic Xbox login request, its properties being written with the adapter
+     * of their runtime class, and read with the one of the declared type argument
+     */
+    private static class XboxLoginRequestAdapter extends TypeAdapter<XboxLoginRequest<Object>> {
+
+        private final Gson gson;
+
+        private final TypeAdapter<?> propertiesAdapter;
+
+        private XboxLoginRequestAdapter(Gson gson, Type type) {
+            this.gson = gson;
+
+            Type properties = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments()[0] : JsonElement.class;
+            this.propertiesAdapter = gson.getAdapter(TypeToken.get(properties));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, XboxLoginRequest<Object> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            Object properties = value.getProperties();
+
+            out.beginObject();
+            out.name("Properties");
+            if (properties == null) {
+                out.nullValue();
+            } else {
+                ((TypeAdapter<Object>) gson.getAdapter(properties.getClass())).write(out, properties);
+            }
+
+            out.name("RelyingParty").value(value.getSiteName());
+            out.name("TokenType").value(value.getTokenType());
+            out.endObject();
+        }
+
+        @Override
+        public XboxLoginRequest<Object> read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Object properties = null;
+            String relyingParty = null;
+            String tokenType = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "Properties": properties = propertiesAdapter.read(in); break;
+                    case "RelyingParty": relyingParty = nextString(in); break;
+                    case "TokenType": tokenType = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new XboxLoginRequest<>(properties, relyingParty, tokenType);
+        }
+
+        private static String nextString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            return in.nextString();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Model Codec
+ *
+ * <p>
+ *     The default {@link JsonCodec}: it reads and writes the request and response models of the
+ *     library with their hand-written formats, on its own streaming reader and writer, without
+ *     reflection nor Gson. Request bodies are written from precomputed byte templates in a reusable
+ *     buffer of the calling thread. Any other type is delegated to a {@link GsonCodec} when Gson is on the
+ *     classpath, which it doesn't need to be otherwise.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class ModelCodec implements JsonCodec {
+
+    /**
+     * The codec instance, which is thread-safe
+     */
+    public static final ModelCodec INSTANCE = new ModelCodec();
+
+    private static final Map<Class<?>, ModelFormat<?>> FORMATS = new HashMap<>();
+
+    static {
+        FORMATS.putAll(YggdrasilFormats.FORMATS);
+        FORMATS.putAll(MicrosoftFormats.FORMATS);
+    }
+
+    private ModelCodec() {
+    }
+
+    /**
+     * Returns whether a type is read and written by this codec itself, rather than delegated to Gson
+     *
+     * @param type
+     *            The type
+     *
+     * @return If it is one of the library models
+     */
+    public boolean supports(Class<?> type) {
+        return FORMATS.containsKey(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String encode(Object value) {
+        if (value == null) {
+            return "null";
+        }
+
+        ModelFormat<Object> format = (ModelFormat<Object>) FORMATS.get(value.getClass());
+        if (format == null) {
+            return fallback(value.getClass()).encode(value);
+        }
+
+        StringBuilder json = new StringBuilder(128);
+        try {
+            format.write(new JsonTextWriter(json), value);
+        } catch (IOException e) {
+            // The writer appends to a StringBuilder, and never fails
+            throw new IllegalStateException(e);
+        }
+
+        return json.toString();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encodeBytes(Object value) {
+        RequestTemplate<Object> template = value != null ? (RequestTemplate<Object>) RequestTemplates.TEMPLATES.get(value.getClass()) : null;
+        if (template == null) {
+            return JsonCodec.super.encodeBytes(value);
+        }
+
+        JsonByteWriter out = JsonByteWriter.get();
+        template.write(out, value);
+
+        return out.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(Reader reader, Class<T> type) throws IOException {
+        ModelFormat<T> format = (ModelFormat<T>) FORMATS.get(type);
+        if (format == null) {
+            return fallback(type).decode(reader, type);
+        }
+
+        return read(new JsonTokenReader(reader), format);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(String json, Class<T> type) throws IOException {
+        ModelFormat<T> format = (ModelFormat<T>) FORMATS.get(type);
+        if (format == null) {
+            return fallback(type).decode(json, type);
+        }
+
+        return read(new JsonTokenReader(json), format);
+    }
+
+    private static <T> T read(JsonTokenReader in, ModelFormat<T> format) throws IOException {
+        if (in.isEmpty()) {
+            return null;
+        }
+
+        T value = format.read(in);
+        in.endDocument();
+
+        return value;
+    }
+
+    private static JsonCodec fallback(Class<?> type) {
+        if (!GsonFallback.AVAILABLE) {
+            throw new IllegalArgumentException("No JSON format for " + type.getName() + ", and Gson is not on the classpath");
+        }
+
+        return GsonFallback.Codec.INSTANCE;
+    }
+
+    /**
+     * The Gson codec of the other types, only loaded when Gson is there
+     */
+    private static final class GsonFallback {
+
+        static final boolean AVAILABLE = isAvailable();
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("com.google.gson.Gson", false, ModelCodec.class.getClassLoader());
+                return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+
+        private static final class Codec {
+            static final JsonCodec INSTANCE = new GsonCodec();
+        }
+    }
+}
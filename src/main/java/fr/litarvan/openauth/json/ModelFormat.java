@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Model Format
+ *
+ * <p>
+ *     The hand-written JSON format of a model, independent of Gson: {@link ModelCodec} runs it on its
+ *     own reader and writer, and the {@link YggdrasilTypeAdapters} and {@link MicrosoftTypeAdapters}
+ *     on Gson's. It handles null values, and gives the helpers reading optional fields the way Gson's
+ *     reflective adapters do (a JSON null leaves the field to its default value, unknown fields are
+ *     skipped).
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+abstract class ModelFormat<T> {
+
+    public final void write(JsonOutput out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeFields(out, value);
+        out.endObject();
+    }
+
+    public final T read(JsonInput in) throws IOException {
+        if (in.nextNull()) {
+            return null;
+        }
+
+        in.beginObject();
+        T value = readFields(in);
+        in.endObject();
+
+        return value;
+    }
+
+    /**
+     * Writes the fields of a model, null ones being dropped by the writer
+     *
+     * @param out
+     *            The writer, inside the model object
+     * @param value
+     *            The model
+     *
+     * @throws IOException If the writer failed
+     */
+    protected abstract void writeFields(JsonOutput out, T value) throws IOException;
+
+    /**
+     * Reads all the fields of a model
+     *
+     * @param in
+     *            The reader, inside the model object
+     *
+     * @throws IOException If the JSON is malformed
+     *
+     * @return The model
+     */
+    protected abstract T readFields(JsonInput in) throws IOException;
+
+    static String nextString(JsonInput in) throws IOException {
+        return in.nextNull() ? null : in.nextString();
+    }
+
+    static int nextInt(JsonInput in, int defaultValue) throws IOException {
+        if (in.nextNull()) {
+            return defaultValue;
+        }
+
+        long value = in.nextLong();
+        if (value != (int) value) {
+            throw new InvalidJsonException("Expected an int but was " + value);
+        }
+
+        return (int) value;
+    }
+
+    static long nextLong(JsonInput in, long defaultValue) throws IOException {
+        return in.nextNull() ? defaultValue : in.nextLong();
+    }
+
+    static <E> E[] nextArray(JsonInput in, ModelFormat<E> format, IntFunction<E[]> factory) throws IOException {
+        if (in.nextNull()) {
+            return null;
+        }
+
+        List<E> elements = new ArrayList<>();
+
+        in.beginArray();
+        while (in.hasNext()) {
+            elements.add(format.read(in));
+        }
+        in.endArray();
+
+        return elements.toArray(factory.apply(elements.size()));
+    }
+
+    static <E> void writeArray(JsonOutput out, String name, E[] elements, ModelFormat<E> format) throws IOException {
+        if (elements == null) {
+            out.name(name).nullValue();
+            return;
+        }
+
+        out.name(name).beginArray();
+        for (E element : elements) {
+            format.write(out, element);
+        }
+        out.endArray();
+    }
+
+    static String[] nextStringArray(JsonInput in) throws IOException {
+        if (in.nextNull()) {
+            return null;
+        }
+
+        List<String> elements = new ArrayList<>();
+
+        in.beginArray();
+        while (in.hasNext()) {
+            elements.add(nextString(in));
+        }
+        in.endArray();
+
+        return elements.toArray(new String[0]);
+    }
+
+    static void writeStringArray(JsonOutput out, String name, String[] elements) throws IOException {
+        if (elements == null) {
+            out.name(name).nullValue();
+            return;
+        }
+
+        out.name(name).beginArray();
+        for (String element : elements) {
+            out.value(element);
+        }
+        out.endArray();
+    }
+}
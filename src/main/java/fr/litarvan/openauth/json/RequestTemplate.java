@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+/**
+ * Request Template
+ *
+ * <p>
+ *     The precomputed byte template of a request model: the quoted names of its fields are encoded
+ *     once, with and without their leading comma, and {@link #writeFields} only splices the escaped
+ *     values between them. Like {@link ModelFormat}, null fields are dropped.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+abstract class RequestTemplate<T> {
+
+    /**
+     * The bytes of each field name as the first field of the object
+     */
+    private final byte[][] first;
+
+    /**
+     * The bytes of each field name preceded by a comma
+     */
+    private final byte[][] next;
+
+    /**
+     * @param fields
+     *            The names of the fields, in the order they are written
+     */
+    RequestTemplate(String... fields) {
+        this.first = new byte[fields.length][];
+        this.next = new byte[fields.length][];
+
+        for (int i = 0; i < fields.length; i++) {
+            this.first[i] = JsonByteWriter.encodeKey(fields[i], true);
+            this.next[i] = JsonByteWriter.encodeKey(fields[i], false);
+        }
+    }
+
+    final void write(JsonByteWriter out, T value) {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeFields(out, value);
+        out.endObject();
+    }
+
+    /**
+     * Writes the fields of a model, with the helpers of this class
+     *
+     * @param out
+     *            The writer, inside the model object
+     * @param value
+     *            The model
+     */
+    protected abstract void writeFields(JsonByteWriter out, T value);
+
+    protected final void string(JsonByteWriter out, int field, String value) {
+        if (value != null) {
+            out.key(first[field], next[field]);
+            out.value(value);
+        }
+    }
+
+    protected final void number(JsonByteWriter out, int field, long value) {
+        out.key(first[field], next[field]);
+        out.value(value);
+    }
+
+    protected final <E> void object(JsonByteWriter out, int field, RequestTemplate<E> template, E value) {
+        if (value != null) {
+            out.key(first[field], next[field]);
+            template.write(out, value);
+        }
+    }
+
+    protected final void stringArray(JsonByteWriter out, int field, String[] values) {
+        if (values == null) {
+            return;
+        }
+
+        out.key(first[field], next[field]);
+        out.beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+}
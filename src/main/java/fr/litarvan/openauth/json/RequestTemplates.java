@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import fr.litarvan.openauth.microsoft.model.request.MinecraftLoginRequest;
+import fr.litarvan.openauth.microsoft.model.request.XSTSAuthorizationProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLiveLoginProperties;
+import fr.litarvan.openauth.microsoft.model.request.XboxLoginRequest;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.request.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request Templates
+ *
+ * <p>
+ *     The {@link RequestTemplate}s of the Yggdrasil and Microsoft requests, writing the same bytes
+ *     as their {@link YggdrasilFormats} and {@link MicrosoftFormats}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class RequestTemplates {
+
+    static final RequestTemplate<AuthAgent> AGENT = new RequestTemplate<AuthAgent>("name", "version") {
+        @Override
+        protected void writeFields(JsonByteWriter out, AuthAgent value) {
+            string(out, 0, value.getName());
+            number(out, 1, value.getVersion());
+        }
+    };
+
+    static final RequestTemplate<AuthRequest> AUTH_REQUEST = new RequestTemplate<AuthRequest>("agent", "username", "password", "clientToken") {
+        @Override
+        protected void writeFields(JsonByteWriter out, AuthRequest value) {
+            object(out, 0, AGENT, value.getAgent());
+            string(out, 1, value.getUsername());
+            string(out, 2, value.getPassword());
+            string(out, 3, value.getClientToken());
+        }
+    };
+
+    static final RequestTemplate<RefreshRequest> REFRESH_REQUEST = new RequestTemplate<RefreshRequest>("accessToken", "clientToken") {
+        @Override
+        protected void writeFields(JsonByteWriter out, RefreshRequest value) {
+            string(out, 0, value.getAccessToken());
+            string(out, 1, value.getClientToken());
+        }
+    };
+
+    static final RequestTemplate<ValidateRequest> VALIDATE_REQUEST = new RequestTemplate<ValidateRequest>("accessToken") {
+        @Override
+        protected void writeFields(JsonByteWriter out, ValidateRequest value) {
+            string(out, 0, value.getAccessToken());
+        }
+    };
+
+    static final RequestTemplate<SignoutRequest> SIGNOUT_REQUEST = new RequestTemplate<SignoutRequest>("username", "password") {
+        @Override
+        protected void writeFields(JsonByteWriter out, SignoutRequest value) {
+            string(out, 0, value.getUsername());
+            string(out, 1, value.getPassword());
+        }
+    };
+
+    static final RequestTemplate<InvalidateRequest> INVALIDATE_REQUEST = new RequestTemplate<InvalidateRequest>("accessToken", "clientToken") {
+        @Override
+        protected void writeFields(JsonByteWriter out, InvalidateRequest value) {
+            string(out, 0, value.getAccessToken());
+            string(out, 1, value.getClientToken());
+        }
+    };
+
+    static final RequestTemplate<MinecraftLoginRequest> MINECRAFT_LOGIN_REQUEST = new RequestTemplate<MinecraftLoginRequest>("identityToken") {
+        @Override
+        protected void writeFields(JsonByteWriter out, MinecraftLoginRequest value) {
+            string(out, 0, value.getIdentityToken());
+        }
+    };
+
+    static final RequestTemplate<XboxLiveLoginProperties> XBOX_LIVE_LOGIN_PROPERTIES = new RequestTemplate<XboxLiveLoginProperties>("AuthMethod", "SiteName", "RpsTicket") {
+        @Override
+        protected void writeFields(JsonByteWriter out, XboxLiveLoginProperties value) {
+            string(out, 0, value.getAuthMethod());
+            string(out, 1, value.getSiteName());
+            string(out, 2, value.getRpsTicket());
+        }
+    };
+
+    static final RequestTemplate<XSTSAuthorizationProperties> XSTS_AUTHORIZATION_PROPERTIES = new RequestTemplate<XSTSAuthorizationProperties>("SandboxId", "UserTokens") {
+        @Override
+        protected void writeFields(JsonByteWriter out, XSTSAuthorizationProperties value) {
+            string(out, 0, value.getSandboxId());
+            stringArray(out, 1, value.getUserTokens());
+        }
+    };
+
+    /**
+     * The template of the generic Xbox login request, its properties being written with the template
+     * of their runtime class
+     */
+    static final RequestTemplate<XboxLoginRequest<Object>> XBOX_LOGIN_REQUEST = new RequestTemplate<XboxLoginRequest<Object>>("Properties", "RelyingParty", "TokenType") {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void writeFields(JsonByteWriter out, XboxLoginRequest<Object> value) {
+            Object properties = value.getProperties();
+            if (properties != null) {
+                RequestTemplate<Object> template = (RequestTemplate<Object>) TEMPLATES.get(properties.getClass());
+                if (template == null) {
+                    throw new IllegalArgumentException("No JSON format for " + properties.getClass().getName());
+                }
+
+                object(out, 0, template, properties);
+            }
+
+            string(out, 1, value.getSiteName());
+            string(out, 2, value.getTokenType());
+        }
+    };
+
+    /**
+     * The templates, by request class
+     */
+    static final Map<Class<?>, RequestTemplate<?>> TEMPLATES = new HashMap<>();
+
+    static {
+        TEMPLATES.put(AuthAgent.class, AGENT);
+        TEMPLATES.put(AuthRequest.class, AUTH_REQUEST);
+        TEMPLATES.put(RefreshRequest.class, REFRESH_REQUEST);
+        TEMPLATES.put(ValidateRequest.class, VALIDATE_REQUEST);
+        TEMPLATES.put(SignoutRequest.class, SIGNOUT_REQUEST);
+        TEMPLATES.put(InvalidateRequest.class, INVALIDATE_REQUEST);
+        TEMPLATES.put(MinecraftLoginRequest.class, MINECRAFT_LOGIN_REQUEST);
+        TEMPLATES.put(XboxLiveLoginProperties.class, XBOX_LIVE_LOGIN_PROPERTIES);
+        TEMPLATES.put(XSTSAuthorizationProperties.class, XSTS_AUTHORIZATION_PROPERTIES);
+        TEMPLATES.put(XboxLoginRequest.class, XBOX_LOGIN_REQUEST);
+    }
+
+    private RequestTemplates() {
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.AuthError;
+import fr.litarvan.openauth.model.AuthProfile;
+import fr.litarvan.openauth.model.request.*;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Yggdrasil Formats
+ *
+ * <p>
+ *     The hand-written {@link ModelFormat}s of the {@code fr.litarvan.openauth.model} requests and
+ *     responses, reading and writing the same JSON fields as Gson's reflective adapters.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class YggdrasilFormats {
+
+    static final ModelFormat<AuthAgent> AGENT = new ModelFormat<AuthAgent>() {
+        @Override
+        protected void writeFields(JsonOutput out, AuthAgent value) throws IOException {
+            out.name("name").value(value.getName());
+            out.name("version").value(value.getVersion());
+        }
+
+        @Override
+        protected AuthAgent readFields(JsonInput in) throws IOException {
+            String name = null;
+            int version = 0;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name": name = nextString(in); break;
+                    case "version": version = nextInt(in, 0); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new AuthAgent(name, version);
+        }
+    };
+
+    static final ModelFormat<AuthError> ERROR = new ModelFormat<AuthError>() {
+        @Override
+        protected void writeFields(JsonOutput out, AuthError value) throws IOException {
+            out.name("error").value(value.getError());
+            out.name("errorMessage").value(value.getErrorMessage());
+            out.name("cause").value(value.getCause());
+        }
+
+        @Override
+        protected AuthError readFields(JsonInput in) throws IOException {
+            String error = null;
+            String errorMessage = null;
+            String cause = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "error": error = nextString(in); break;
+                    case "errorMessage": errorMessage = nextString(in); break;
+                    case "cause": cause = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new AuthError(error, errorMessage, cause);
+        }
+    };
+
+    static final ModelFormat<AuthProfile> PROFILE = new ModelFormat<AuthProfile>() {
+        @Override
+        protected void writeFields(JsonOutput out, AuthProfile value) throws IOException {
+            out.name("name").value(value.getName());
+            out.name("id").value(value.getId());
+        }
+
+        @Override
+        protected AuthProfile readFields(JsonInput in) throws IOException {
+            String name = null;
+            String id = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name": name = nextString(in); break;
+                    case "id": id = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new AuthProfile(name, id);
+        }
+    };
+
+    static final ModelFormat<AuthRequest> AUTH_REQUEST = new ModelFormat<AuthRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, AuthRequest value) throws IOException {
+            out.name("agent");
+            AGENT.write(out, value.getAgent());
+            out.name("username").value(value.getUsername());
+            out.name("password").value(value.getPassword());
+            out.name("clientToken").value(value.getClientToken());
+        }
+
+        @Override
+        protected AuthRequest readFields(JsonInput in) throws IOException {
+            AuthAgent agent = null;
+            String username = null;
+            String password = null;
+            String clientToken = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "agent": agent = AGENT.read(in); break;
+                    case "username": username = nextString(in); break;
+                    case "password": password = nextString(in); break;
+                    case "clientToken": clientToken = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new AuthRequest(agent, username, password, clientToken);
+        }
+    };
+
+    static final ModelFormat<RefreshRequest> REFRESH_REQUEST = new ModelFormat<RefreshRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, RefreshRequest value) throws IOException {
+            out.name("accessToken").value(value.getAccessToken());
+            out.name("clientToken").value(value.getClientToken());
+        }
+
+        @Override
+        protected RefreshRequest readFields(JsonInput in) throws IOException {
+            String accessToken = null;
+            String clientToken = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "accessToken": accessToken = nextString(in); break;
+                    case "clientToken": clientToken = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new RefreshRequest(accessToken, clientToken);
+        }
+    };
+
+    static final ModelFormat<ValidateRequest> VALIDATE_REQUEST = new ModelFormat<ValidateRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, ValidateRequest value) throws IOException {
+            out.name("accessToken").value(value.getAccessToken());
+        }
+
+        @Override
+        protected ValidateRequest readFields(JsonInput in) throws IOException {
+            String accessToken = null;
+
+            while (in.hasNext()) {
+                if ("accessToken".equals(in.nextName())) {
+                    accessToken = nextString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+
+            return new ValidateRequest(accessToken);
+        }
+    };
+
+    static final ModelFormat<SignoutRequest> SIGNOUT_REQUEST = new ModelFormat<SignoutRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, SignoutRequest value) throws IOException {
+            out.name("username").value(value.getUsername());
+            out.name("password").value(value.getPassword());
+        }
+
+        @Override
+        protected SignoutRequest readFields(JsonInput in) throws IOException {
+            String username = null;
+            String password = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username": username = nextString(in); break;
+                    case "password": password = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new SignoutRequest(username, password);
+        }
+    };
+
+    static final ModelFormat<InvalidateRequest> INVALIDATE_REQUEST = new ModelFormat<InvalidateRequest>() {
+        @Override
+        protected void writeFields(JsonOutput out, InvalidateRequest value) throws IOException {
+            out.name("accessToken").value(value.getAccessToken());
+            out.name("clientToken").value(value.getClientToken());
+        }
+
+        @Override
+        protected InvalidateRequest readFields(JsonInput in) throws IOException {
+            String accessToken = null;
+            String clientToken = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "accessToken": accessToken = nextString(in); break;
+                    case "clientToken": clientToken = nextString(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new InvalidateRequest(accessToken, clientToken);
+        }
+    };
+
+    static final ModelFormat<AuthResponse> AUTH_RESPONSE = new ModelFormat<AuthResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, AuthResponse value) throws IOException {
+            out.name("accessToken").value(value.getAccessToken());
+            out.name("clientToken").value(value.getClientToken());
+            writeArray(out, "availableProfiles", value.getAvailableProfiles(), PROFILE);
+            out.name("selectedProfile");
+            PROFILE.write(out, value.getSelectedProfile());
+        }
+
+        @Override
+        protected AuthResponse readFields(JsonInput in) throws IOException {
+            String accessToken = null;
+            String clientToken = null;
+            AuthProfile[] availableProfiles = null;
+            AuthProfile selectedProfile = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "accessToken": accessToken = nextString(in); break;
+                    case "clientToken": clientToken = nextString(in); break;
+                    case "availableProfiles": availableProfiles = nextArray(in, PROFILE, AuthProfile[]::new); break;
+                    case "selectedProfile": selectedProfile = PROFILE.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new AuthResponse(accessToken, clientToken, availableProfiles, selectedProfile);
+        }
+    };
+
+    static final ModelFormat<RefreshResponse> REFRESH_RESPONSE = new ModelFormat<RefreshResponse>() {
+        @Override
+        protected void writeFields(JsonOutput out, RefreshResponse value) throws IOException {
+            out.name("accessToken").value(value.getAccessToken());
+            out.name("clientToken").value(value.getClientToken());
+            out.name("selectedProfile");
+            PROFILE.write(out, value.getSelectedProfile());
+        }
+
+        @Override
+        protected RefreshResponse readFields(JsonInput in) throws IOException {
+            String accessToken = null;
+            String clientToken = null;
+            AuthProfile selectedProfile = null;
+
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "accessToken": accessToken = nextString(in); break;
+                    case "clientToken": clientToken = nextString(in); break;
+                    case "selectedProfile": selectedProfile = PROFILE.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+
+            return new RefreshResponse(accessToken, clientToken, selectedProfile);
+        }
+    };
+
+    /**
+     * The formats, by model class
+     */
+    static final Map<Class<?>, ModelFormat<?>> FORMATS = new HashMap<>();
+
+    static {
+        FORMATS.put(AuthAgent.class, AGENT);
+        FORMATS.put(AuthError.class, ERROR);
+        FORMATS.put(AuthProfile.class, PROFILE);
+        FORMATS.put(AuthRequest.class, AUTH_REQUEST);
+        FORMATS.put(RefreshRequest.class, REFRESH_REQUEST);
+        FORMATS.put(ValidateRequest.class, VALIDATE_REQUEST);
+        FORMATS.put(SignoutRequest.class, SIGNOUT_REQUEST);
+        FORMATS.put(InvalidateRequest.class, INVALIDATE_REQUEST);
+        FORMATS.put(AuthResponse.class, AUTH_RESPONSE);
+        FORMATS.put(RefreshResponse.class, REFRESH_RESPONSE);
+    }
+
+    private YggdrasilFormats() {
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Yggdrasil Type Adapters
+ *
+ * <p>
+ *     The {@link TypeAdapter}s of the {@code fr.litarvan.openauth.model} requests and responses,
+ *     running their hand-written {@link YggdrasilFormats} on Gson's reader and writer.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class YggdrasilTypeAdapters implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        ModelFormat<T> format = (ModelFormat<T>) YggdrasilFormats.FORMATS.get(type.getRawType());
+        return format != null ? new FormatTypeAdapter<>(format) : null;
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.loadgen;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.metrics.EndpointSnapshot;
+import fr.litarvan.openauth.metrics.InMemoryMetrics;
+import fr.litarvan.openauth.metrics.LatencySnapshot;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthResult;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthenticationException;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthenticator;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.AuthError;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+import fr.litarvan.openauth.transport.HttpTransport;
+import fr.litarvan.openauth.transport.NioHttpTransport;
+import fr.litarvan.openauth.transport.PooledHttpTransport;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load Generator
+ *
+ * <p>
+ *     A command line tool sending a mix of requests to an auth server for a fixed duration, then
+ *     reporting the throughput, latency percentiles and errors (by {@link AuthError} type) of each
+ *     operation. The load is either a fixed number of concurrent users sending requests back to back
+ *     ({@code --concurrency}), or a fixed rate of requests whatever the server latency ({@code --rate}),
+ *     in which case latencies are measured from the time each request was due to be sent.
+ * </p>
+ *
+ * <p>
+ *     Run it with {@code ./gradlew run --args="--url=http://127.0.0.1:25585/ --rate=2000"}, for example
+ *     against the stub server started by {@code ./gradlew stubServer}. {@code --help} lists the options.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class LoadGenerator {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadGenerator [options]",
+            "",
+            "  --mode=yggdrasil|microsoft   The authenticator to drive (default: yggdrasil)",
+            "  --url=<url>                  The Yggdrasil server URL (default: http://127.0.0.1:25585/)",
+            "  --mix=<op:weight,...>        The Yggdrasil operations mix, among authenticate, refresh and validate",
+            "                               (default: validate:80,refresh:15,authenticate:5)",
+            "  --username=<name>            The account used to authenticate (default: loadgen)",
+            "  --password=<password>        Its password (default: loadgen)",
+            "  --refresh-token=<token>      The Microsoft refresh token, required in microsoft mode",
+            "  --concurrency=<n>            Concurrent users sending requests back to back (default: 16)",
+            "  --rate=<n>                   Requests per second instead, whatever the latency (open loop)",
+            "  --duration=<seconds>         The measured duration (default: 30)",
+            "  --warmup=<seconds>           A first run whose results are discarded (default: 5)",
+            "  --max-connections=<n>        The maximum connections to the server (default: 64)",
+            "  --transport=pooled|nio       The blocking connection pool, or the non-blocking transport (default: pooled)",
+            "  --io-threads=<n>             The I/O threads of the non-blocking transport (default: 2)",
+            "  --max-in-flight=<n>          In rate mode, requests over this many in flight are dropped (default: 10000)",
+            "  --report-interval=<seconds>  The interval of the progress lines (default: 5)");
+
+    private static final String DROPPED = "Dropped (too many in flight)";
+
+    private final Map<String, String> options;
+
+    private final HttpTransport transport;
+
+    private final ExecutorService executor;
+
+    private final Authenticator authenticator;
+
+    private final MicrosoftAuthenticator microsoftAuthenticator;
+
+    private final Operation[] mix;
+
+    private final ConcurrentLinkedQueue<Session> sessions = new ConcurrentLinkedQueue<>();
+
+    private final AtomicReference<String> refreshToken = new AtomicReference<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile InMemoryMetrics metrics = new InMemoryMetrics();
+
+    private volatile boolean running;
+
+    /**
+     * Load Generator constructor
+     *
+     * @param options
+     *            The command line options, without their leading dashes
+     */
+    public LoadGenerator(Map<String, String> options) {
+        this.options = options;
+
+        boolean microsoft = "microsoft".equals(get("mode", "yggdrasil"));
+        this.transport = createTransport();
+
+        // As many threads as connections: in rate mode the requests beyond wait in the queue, without
+        // slowing the driver down, and their latency includes that wait. The non-blocking transport only
+        // needs threads to parse the responses, the Microsoft login still blocks one per request.
+        int poolSize = this.transport.isAsync() && !microsoft
+                ? Runtime.getRuntime().availableProcessors()
+                : Math.max(getInt("max-connections", 64), getInt("concurrency", 16));
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "LoadGenerator-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        if (microsoft) {
+            String token = options.get("refresh-token");
+            if (token == null) {
+                throw new IllegalArgumentException("--refresh-token is required in microsoft mode");
+            }
+
+            this.refreshToken.set(token);
+            this.microsoftAuthenticator = new MicrosoftAuthenticator(ModelCodec.INSTANCE, transport);
+            this.authenticator = null;
+            this.mix = new Operation[]{Operation.MICROSOFT_LOGIN};
+        } else {
+            this.authenticator = new Authenticator(get("url", "http://127.0.0.1:25585/"), AuthPoints.NORMAL_AUTH_POINTS, transport, executor);
+            this.microsoftAuthenticator = null;
+            this.mix = parseMix(get("mix", "validate:80,refresh:15,authenticate:5"));
+        }
+    }
+
+    private HttpTransport createTransport() {
+        int maxConnections = getInt("max-connections", 64);
+
+        switch (get("transport", "pooled")) {
+            case "pooled":
+                return new PooledHttpTransport(maxConnections, 30, TimeUnit.SECONDS);
+            case "nio":
+                return new NioHttpTransport(getInt("io-threads", NioHttpTransport.DEFAULT_IO_THREADS), maxConnections);
+            default:
+                throw new IllegalArgumentException("--transport must be pooled or nio");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                System.out.println(USAGE);
+                return;
+            }
+            if (!arg.startsWith("--")) {
+                System.err.println("Unknown argument: " + arg);
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+
+            int equals = arg.indexOf('=');
+            options.put(equals == -1 ? arg.substring(2) : arg.substring(2, equals), equals == -1 ? "true" : arg.substring(equals + 1));
+        }
+
+        try {
+            new LoadGenerator(options).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the warmup then the measured load, and prints the report
+     *
+     * @throws InterruptedException If interrupted while running
+     */
+    public void run() throws InterruptedException {
+        if (options.containsKey("rate") ? getInt("rate", 0) <= 0 : getInt("concurrency", 16) <= 0) {
+            throw new IllegalArgumentException("--rate and --concurrency must be positive");
+        }
+
+        String load = options.containsKey("rate") ? getInt("rate", 0) + " req/s" : getInt("concurrency", 16) + " concurrent users";
+        System.out.println("Driving " + (authenticator != null ? get("url", "http://127.0.0.1:25585/") : "Microsoft login") + " with " + load);
+
+        int warmup = getInt("warmup", 5);
+        if (warmup > 0) {
+            System.out.println("Warming up for " + warmup + "s...");
+            drive(warmup);
+        }
+
+        int duration = getInt("duration", 30);
+        System.out.println("Running for " + duration + "s...");
+
+        metrics = new InMemoryMetrics();
+        long elapsed = drive(duration);
+
+        report(metrics.snapshot(), elapsed);
+        System.out.println();
+        System.out.println("Peak live threads: " + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+        if (authenticator != null) {
+            authenticator.close();
+        } else {
+            transport.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends the load for a duration, waiting for the requests in flight at the end
+     *
+     * @param seconds
+     *            The duration
+     *
+     * @return The time it took, in nanoseconds
+     */
+    private long drive(int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long interval = TimeUnit.SECONDS.toNanos(getInt("report-interval", 5));
+
+        running = true;
+
+        Thread driver;
+        if (options.containsKey("rate")) {
+            driver = new Thread(() -> openLoop(getInt("rate", 0), end), "LoadGenerator-Driver");
+        } else {
+            driver = new Thread(() -> closedLoop(getInt("concurrency", 16)), "LoadGenerator-Driver");
+        }
+        driver.setDaemon(true);
+        driver.start();
+
+        long nextReport = start + interval;
+        long lastCount = 0;
+
+        while (System.nanoTime() < end) {
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, Math.min(end, nextReport) - System.nanoTime()));
+
+            if (System.nanoTime() >= nextReport) {
+                long count = count(metrics.snapshot());
+                System.out.printf("  %3ds: %.1f req/s, %d in flight%n", TimeUnit.NANOSECONDS.toSeconds(nextReport - start), (count - lastCount) / (interval / 1e9), inFlight.get());
+
+                lastCount = count;
+                nextReport += interval;
+            }
+        }
+
+        running = false;
+        driver.join();
+
+        while (inFlight.get() > 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Keeps a fixed number of users each sending a request as soon as their previous one completed
+     */
+    private void closedLoop(int users) {
+        for (int i = 0; i < users; i++) {
+            nextRequest();
+        }
+    }
+
+    private void nextRequest() {
+        if (!running) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        // Async, so that requests failing immediately don't recurse
+        send(pick(), start).whenCompleteAsync((r, t) -> nextRequest(), executor);
+    }
+
+    /**
+     * Sends requests at a fixed rate, each one being due at a fixed time whatever happens to the others
+     */
+    private void openLoop(int rate, long end) {
+        int maxInFlight = getInt("max-in-flight", 10000);
+        double period = 1e9 / rate;
+        long start = System.nanoTime();
+
+        for (long i = 0; running; i++) {
+            long due = start + (long) (i * period);
+            if (due >= end) {
+                break;
+            }
+
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = pick();
+            if (inFlight.get() >= maxInFlight) {
+                metrics.record(operation.getName(), System.nanoTime() - due, DROPPED);
+                continue;
+            }
+
+            send(operation, due);
+        }
+    }
+
+    private CompletableFuture<?> send(Operation operation, long due) {
+        inFlight.incrementAndGet();
+
+        CompletableFuture<?> future;
+        try {
+            future = operation.send(this);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.whenComplete((r, t) -> {
+            metrics.record(operation.getName(), System.nanoTime() - due, t == null ? null : errorType(t));
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private CompletableFuture<?> authenticate() {
+        return authenticator.authenticateAsync(AuthAgent.MINECRAFT, get("username", "loadgen"), get("password", "loadgen"), null)
+                .thenAccept(response -> sessions.add(new Session(response.getAccessToken(), response.getClientToken())));
+    }
+
+    private CompletableFuture<?> refresh() {
+        Session session = sessions.poll();
+        if (session == null) {
+            return authenticate();
+        }
+
+        CompletableFuture<RefreshResponse> future = authenticator.refreshAsync(session.accessToken, session.clientToken);
+        return future.thenAccept(response -> sessions.add(new Session(response.getAccessToken(), response.getClientToken())));
+    }
+
+    private CompletableFuture<?> validate() {
+        Session session = sessions.poll();
+        if (session == null) {
+            return authenticate();
+        }
+
+        return authenticator.validateAsync(session.accessToken).whenComplete((r, t) -> sessions.add(session));
+    }
+
+    private CompletableFuture<?> microsoftLogin() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                MicrosoftAuthResult result = microsoftAuthenticator.loginWithRefreshToken(refreshToken.get());
+                refreshToken.set(result.getRefreshToken());
+
+                return result;
+            } catch (MicrosoftAuthenticationException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private Operation pick() {
+        return mix[ThreadLocalRandom.current().nextInt(mix.length)];
+    }
+
+    private static Operation[] parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        int total = 0;
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Operation operation = Operation.byName(parts[0]);
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+
+            if (operation == null || operation == Operation.MICROSOFT_LOGIN || weight < 0) {
+                throw new IllegalArgumentException("Invalid mix entry: " + entry);
+            }
+
+            weights.merge(operation, weight, Integer::sum);
+            total += weight;
+        }
+
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix must contain at least one operation");
+        }
+
+        // One slot per weight unit, so that picking a random slot follows the mix
+        Operation[] slots = new Operation[total];
+        int i = 0;
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            for (int j = 0; j < weight.getValue(); j++) {
+                slots[i++] = weight.getKey();
+            }
+        }
+
+        return slots;
+    }
+
+    private static String errorType(Throwable t) {
+        Throwable error = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+
+        if (error instanceof AuthenticationException) {
+            AuthError model = ((AuthenticationException) error).getErrorModel();
+            if (model != null && model.getError() != null) {
+                return model.getError();
+            }
+        }
+
+        return error.getClass().getSimpleName();
+    }
+
+    private static long count(Map<String, EndpointSnapshot> snapshots) {
+        long count = 0;
+        for (EndpointSnapshot snapshot : snapshots.values()) {
+            count += snapshot.getLatency().getCount();
+        }
+
+        return count;
+    }
+
+    private static void report(Map<String, EndpointSnapshot> snapshots, long elapsed) {
+        double seconds = elapsed / 1e9;
+
+        System.out.println();
+        System.out.printf("%-14s %10s %10s %9s %9s %9s %9s %9s %9s%n", "operation", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        long total = 0;
+        LongAdder errors = new LongAdder();
+        Map<String, Long> errorTypes = new LinkedHashMap<>();
+
+        for (EndpointSnapshot snapshot : snapshots.values()) {
+            LatencySnapshot latency = snapshot.getLatency();
+            total += latency.getCount();
+            errors.add(snapshot.getErrorCount());
+            snapshot.getErrors().forEach((type, count) -> errorTypes.merge(snapshot.getAuthPoint() + ": " + type, count, Long::sum));
+
+            System.out.printf("%-14s %10d %10.1f %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", snapshot.getAuthPoint(), latency.getCount(), latency.getCount() / seconds,
+                    snapshot.getErrorCount(), latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6,
+                    latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+        }
+
+        System.out.printf("%-14s %10d %10.1f %9d%n", "total", total, total / seconds, errors.sum());
+
+        if (!errorTypes.isEmpty()) {
+            System.out.println();
+            System.out.println("Errors:");
+            errorTypes.forEach((type, count) -> System.out.printf("  %-60s %d%n", type, count));
+        }
+    }
+
+    private String get(String option, String defaultValue) {
+        return options.getOrDefault(option, defaultValue);
+    }
+
+    private int getInt(String option, int defaultValue) {
+        String value = options.get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + option + " must be a number");
+        }
+    }
+
+    private enum Operation {
+        AUTHENTICATE("authenticate") {
+            @Override
+            CompletableFuture<?> send(LoadGenerator generator) {
+                return generator.authenticate();
+            }
+        },
+        REFRESH("refresh") {
+            @Override
+            CompletableFuture<?> send(LoadGenerator generator) {
+                return generator.refresh();
+            }
+        },
+        VALIDATE("validate") {
+            @Override
+            CompletableFuture<?> send(LoadGenerator generator) {
+                return generator.validate();
+            }
+        },
+        MICROSOFT_LOGIN("microsoft") {
+            @Override
+            CompletableFuture<?> send(LoadGenerator generator) {
+                return generator.microsoftLogin();
+            }
+        };
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        abstract CompletableFuture<?> send(LoadGenerator generator);
+
+        String getName() {
+            return name;
+        }
+
+        static Operation byName(String name) {
+            for (Operation operation : values()) {
+                if (operation.name.equals(name)) {
+                    return operation;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class Session {
+
+        private final String accessToken;
+
+        private final String clientToken;
+
+        private Session(String accessToken, String clientToken) {
+            this.accessToken = accessToken;
+            this.clientToken = clientToken;
+        }
+    }
+}
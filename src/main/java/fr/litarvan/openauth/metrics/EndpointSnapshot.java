@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.metrics;
+
+import java.util.Map;
+
+/**
+ * Endpoint Snapshot
+ *
+ * <p>
+ *     The metrics of an auth point at a given time, taken by {@link InMemoryMetrics#snapshot()}
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class EndpointSnapshot {
+
+    private final String authPoint;
+
+    private final long successes;
+
+    private final Map<String, Long> errors;
+
+    private final LatencySnapshot latency;
+
+    private final long bytesReceived;
+
+    private final long bytesDecoded;
+
+    EndpointSnapshot(String authPoint, long successes, Map<String, Long> errors, LatencySnapshot latency, long bytesReceived, long bytesDecoded) {
+        this.authPoint = authPoint;
+        this.successes = successes;
+        this.errors = errors;
+        this.latency = latency;
+        this.bytesReceived = bytesReceived;
+        this.bytesDecoded = bytesDecoded;
+    }
+
+    /**
+     * @return The auth point
+     */
+    public String getAuthPoint() {
+        return authPoint;
+    }
+
+    /**
+     * @return The number of successful requests
+     */
+    public long getSuccesses() {
+        return successes;
+    }
+
+    /**
+     * @return The number of failed requests, by error type
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return The total number of failed requests
+     */
+    public long getErrorCount() {
+        long count = 0;
+        for (long c : errors.values()) {
+            count += c;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The latency of all the requests, successful or not
+     */
+    public LatencySnapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return The number of bytes of response bodies received, compressed or not
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return The number of bytes of the same response bodies once decompressed
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded;
+    }
+
+    /**
+     * @return The number of bytes decompressed per byte received, 1 if nothing was received compressed
+     */
+    public double getCompressionRatio() {
+        return bytesReceived > 0 ? (double) bytesDecoded / bytesReceived : 1;
+    }
+
+    @Override
+    public String toString() {
+        return authPoint + ": successes=" + successes + " errors=" + errors + " latency[" + latency + "]"
+                + " bytes[received=" + bytesReceived + " decoded=" + bytesDecoded + "]";
+    }
+}
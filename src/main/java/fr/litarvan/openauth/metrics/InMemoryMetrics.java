@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.metrics;
+
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.model.AuthError;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In Memory Metrics
+ *
+ * <p>
+ *     A {@link MetricsRecorder} keeping, for each auth point, a {@link LatencyHistogram} of the
+ *     requests, counters of the successes and of each {@link AuthError#getError()} type, and the
+ *     compressed and decompressed sizes of the response bodies, to be read with {@link #snapshot()}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class InMemoryMetrics implements MetricsRecorder {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void onRequest(String authPoint, long latency, AuthenticationException error) {
+        String type = null;
+        if (error != null) {
+            AuthError model = error.getErrorModel();
+            type = model != null && model.getError() != null ? model.getError() : "Unknown";
+        }
+
+        record(authPoint, latency, type);
+    }
+
+    @Override
+    public void onResponseBody(String authPoint, long received, long decoded) {
+        Endpoint endpoint = endpoints.computeIfAbsent(authPoint, k -> new Endpoint());
+        endpoint.bytesReceived.add(received);
+        endpoint.bytesDecoded.add(decoded);
+    }
+
+    /**
+     * Records a finished request, or any other timed operation
+     *
+     * @param key
+     *            The auth point of the request, or the name of the operation
+     * @param latency
+     *            The time it took, in nanoseconds
+     * @param errorType
+     *            The type of its error, or null if it succeeded
+     */
+    public void record(String key, long latency, String errorType) {
+        Endpoint endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint());
+        endpoint.latency.record(latency);
+
+        if (errorType == null) {
+            endpoint.successes.increment();
+        } else {
+            endpoint.errors.computeIfAbsent(errorType, t -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the metrics of every auth point that received requests
+     *
+     * @return The snapshots, by auth point
+     */
+    public Map<String, EndpointSnapshot> snapshot() {
+        Map<String, EndpointSnapshot> snapshots = new TreeMap<>();
+        endpoints.forEach((authPoint, endpoint) -> snapshots.put(authPoint, endpoint.snapshot(authPoint)));
+
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Takes a snapshot of the metrics of an auth point
+     *
+     * @param authPoint
+     *            The auth point
+     *
+     * @return The snapshot, or null if the auth point didn't receive any request
+     */
+    public EndpointSnapshot snapshot(String authPoint) {
+        Endpoint endpoint = endpoints.get(authPoint);
+        return endpoint != null ? endpoint.snapshot(authPoint) : null;
+    }
+
+    /**
+     * Clears all the metrics
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    private static class Endpoint {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder successes = new LongAdder();
+
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private final LongAdder bytesReceived = new LongAdder();
+
+        private final LongAdder bytesDecoded = new LongAdder();
+
+        private EndpointSnapshot snapshot(String authPoint) {
+            Map<String, Long> errorCounts = new TreeMap<>();
+            errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+
+            return new EndpointSnapshot(authPoint, successes.sum(), Collections.unmodifiableMap(errorCounts), latency.snapshot(),
+                    bytesReceived.sum(), bytesDecoded.sum());
+        }
+    }
+}
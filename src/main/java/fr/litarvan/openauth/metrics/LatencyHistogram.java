@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency Histogram
+ *
+ * <p>
+ *     A lock-free histogram of durations, with HDR-style log-linear buckets: each power of two
+ *     is split in 32 linear sub-buckets, so any recorded value is known within about 3%, from
+ *     1 nanosecond to more than an hour, in a fixed 10KB array.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits of precision of a bucket (32 sub-buckets per power of two)
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The highest trackable value is 2^MAX_BITS - 1 nanoseconds (~73 minutes), larger values are clamped
+     */
+    private static final int MAX_BITS = 42;
+
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     *
+     * @param nanos
+     *            The duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // Retry
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    /**
+     * Takes a snapshot of the histogram. Concurrent recordings may be partially included.
+     *
+     * @return The snapshot
+     */
+    public LatencySnapshot snapshot() {
+        long[] buckets = new long[counts.length()];
+        long count = 0;
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = counts.get(i);
+            count += buckets[i];
+        }
+
+        return new LatencySnapshot(buckets, count, count == 0 ? 0 : min.get(), max.get(), count == 0 ? 0 : sum.sum() / (double) count);
+    }
+
+    private static int indexOf(long value) {
+        if (value < (1 << SUB_BUCKET_BITS)) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value recorded in a bucket
+     *
+     * @param index
+     *            The index of the bucket
+     *
+     * @return The upper bound of the bucket, in nanoseconds
+     */
+    static long highestValueAt(int index) {
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        if (shift <= 0) {
+            return index;
+        }
+
+        long lowest = ((long) (index & ((1 << SUB_BUCKET_BITS) - 1)) + (1 << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.metrics;
+
+/**
+ * Latency Snapshot
+ *
+ * <p>
+ *     An immutable copy of a {@link LatencyHistogram}, with its percentiles. All the values are
+ *     in nanoseconds.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class LatencySnapshot {
+
+    private final long[] buckets;
+
+    private final long count;
+
+    private final long min;
+
+    private final long max;
+
+    private final double mean;
+
+    LatencySnapshot(long[] buckets, long count, long min, long max, double mean) {
+        this.buckets = buckets;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall, within the
+     * precision of the histogram
+     *
+     * @param percentile
+     *            The percentile, from 0 to 100
+     *
+     * @return The value at this percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueAt(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The lowest recorded value
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return The highest recorded value
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of the recorded values
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms", count, mean / 1e6,
+                getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6, getPercentile(99.9) / 1e6, max / 1e6);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.metrics;
+
+import fr.litarvan.openauth.AuthenticationException;
+
+/**
+ * Metrics Recorder
+ *
+ * <p>
+ *     Receives the outcome and latency of each request sent by an {@link fr.litarvan.openauth.Authenticator},
+ *     across all its retries and failovers. Implementations must be thread-safe and fast, they are called
+ *     on the request path. The default {@link #NOOP} recorder is skipped entirely, without even timing
+ *     the requests.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ *
+ * @see InMemoryMetrics
+ */
+public interface MetricsRecorder {
+
+    /**
+     * The recorder doing nothing, used by default
+     */
+    MetricsRecorder NOOP = (authPoint, latency, error) -> {
+    };
+
+    /**
+     * Records a finished request
+     *
+     * @param authPoint
+     *            The auth point the request was sent to
+     * @param latency
+     *            The time the request took, in nanoseconds
+     * @param error
+     *            The error of the request, or null if it succeeded
+     */
+    void onRequest(String authPoint, long latency, AuthenticationException error);
+
+    /**
+     * Records the size of a response body, compressed by the server when the transport negotiated it
+     *
+     * @param authPoint
+     *            The auth point the request was sent to
+     * @param received
+     *            The number of bytes received
+     * @param decoded
+     *            The number of bytes once decompressed, the same as received if the body wasn't compressed
+     */
+    default void onResponseBody(String authPoint, long received, long decoded) {
+    }
+}
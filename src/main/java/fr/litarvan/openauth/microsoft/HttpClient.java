@@ -18,23 +18,58 @@
  */
 package fr.litarvan.openauth.microsoft;
 
-import com.google.gson.Gson;
-
+import fr.litarvan.openauth.events.AuthEvent;
+import fr.litarvan.openauth.events.AuthEvents;
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.metrics.MetricsRecorder;
+import fr.litarvan.openauth.transport.ContentEncoding;
+import fr.litarvan.openauth.transport.CountingInputStream;
+import fr.litarvan.openauth.transport.DnsCache;
+import fr.litarvan.openauth.transport.HttpRequest;
+import fr.litarvan.openauth.transport.HttpResponse;
+import fr.litarvan.openauth.transport.HttpTransport;
+import fr.litarvan.openauth.transport.HttpTransports;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
 import java.net.Proxy;
+import java.net.Socket;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
 
 public class HttpClient
 {
     public static final String MIME_TYPE_JSON = "application/json";
     public static final String MIME_TYPE_URLENCODED_FORM = "application/x-www-form-urlencoded";
 
-    private final Gson gson;
+    // Like HttpURLConnection
+    private static final int MAX_REDIRECTS = 20;
+
+    private static final String USER_AGENT = "Mozilla/5.0 (XboxReplay; XboxLiveAuth/3.0) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/71.0.3578.98 " +
+            "Safari/537.36";
+
+    private static final Pattern INTEGRITY_PATTERN = Pattern.compile("integrity ?=");
+    private static final Pattern INTEGRITY_ATTRIBUTE_PATTERN = Pattern.compile("setAttribute\\(\"integrity\"");
+
+    private final JsonCodec codec;
     private final Proxy proxy;
+    private final HttpTransport transport;
+    private volatile MetricsRecorder metrics = MetricsRecorder.NOOP;
 
     public HttpClient()
     {
@@ -42,8 +77,24 @@ public class HttpClient
     }
     public HttpClient(Proxy proxy)
     {
-        this.gson = new Gson();
+        this(proxy, ModelCodec.INSTANCE);
+    }
+    public HttpClient(Proxy proxy, JsonCodec codec)
+    {
+        this(proxy, codec, HttpTransports.shared());
+    }
+
+    /**
+     * @param proxy The proxy to use
+     * @param codec The codec converting the requests and responses to and from JSON
+     * @param transport The transport sending the JSON requests, or null to send them with {@link HttpURLConnection}s
+     *                  (by default the one shared by every client on Java 11+, and none on Java 8)
+     */
+    public HttpClient(Proxy proxy, JsonCodec codec, HttpTransport transport)
+    {
+        this.codec = codec;
         this.proxy = proxy;
+        this.transport = transport;
     }
 
 
@@ -54,11 +105,77 @@ public class HttpClient
 
     public <T> T getJson(String url, String token, Class<T> responseClass) throws MicrosoftAuthenticationException
     {
-        HttpURLConnection connection = createConnection(url);
-        connection.addRequestProperty("Authorization", "Bearer " + token);
-        connection.addRequestProperty("Accept", MIME_TYPE_JSON);
+        return getJson(url, token, responseClass, null);
+    }
+
+    public <T> T getJson(String url, String token, Class<T> responseClass, String stage) throws MicrosoftAuthenticationException
+    {
+        AuthEvent event = AuthEvents.begin(stage, url);
+        if (transport != null) {
+            Map<String, String> headers = createHeaders();
+            headers.put("Authorization", "Bearer " + token);
+            headers.put("Accept", MIME_TYPE_JSON);
+
+            return sendJson("GET", url, headers, null, responseClass, event);
+        }
+
+        HttpURLConnection connection = null;
+
+        try {
+            connection = createConnection(url);
+            connection.addRequestProperty("Authorization", "Bearer " + token);
+            connection.addRequestProperty("Accept", MIME_TYPE_JSON);
+
+            return readJson(connection, responseClass, event);
+        } finally {
+            commit(event, connection);
+        }
+    }
+
+    /**
+     * Gets a JSON without blocking a thread while waiting for the response if the transport is asynchronous
+     * (see {@link #isAsync()}), otherwise on the calling thread. Cancelling the future drops the request if it
+     * was not sent yet.
+     *
+     * @param url The url of the JSON
+     * @param token The bearer token authorizing the request
+     * @param responseClass The model of the JSON
+     * @param stage The stage of the authentication the request is part of (optional)
+     * @return A future resolved by the JSON, or completed exceptionally with a {@link MicrosoftAuthenticationException}
+     */
+    public <T> CompletableFuture<T> getJsonAsync(String url, String token, Class<T> responseClass, String stage)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        if (!isAsync()) {
+            try {
+                result.complete(getJson(url, token, responseClass, stage));
+            } catch (MicrosoftAuthenticationException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+
+            return result;
+        }
+
+        AuthEvent event = AuthEvents.begin(stage, url);
+        result.whenComplete((value, failure) -> event.commit());
+
+        Map<String, String> headers = createHeaders();
+        headers.put("Authorization", "Bearer " + token);
+        headers.put("Accept", MIME_TYPE_JSON);
 
-        return readJson(connection, responseClass);
+        getJsonAsync(url, headers, responseClass, event, result, 0);
+
+        return result;
+    }
+
+    /**
+     * @return If the JSON requests are sent by an asynchronous transport, {@link #getJsonAsync} then
+     *         holding no thread while waiting for the response
+     */
+    public boolean isAsync()
+    {
+        return transport != null && transport.isAsync();
     }
 
     public HttpURLConnection postForm(String url, Map<String, String> params) throws MicrosoftAuthenticationException
@@ -68,8 +185,31 @@ public class HttpClient
 
     public <T> T postJson(String url, Object request, Class<T> responseClass) throws MicrosoftAuthenticationException
     {
-        HttpURLConnection connection = post(url, MIME_TYPE_JSON, MIME_TYPE_JSON, gson.toJson(request));
-        return readJson(connection, responseClass);
+        return postJson(url, request, responseClass, null);
+    }
+
+    public <T> T postJson(String url, Object request, Class<T> responseClass, String stage) throws MicrosoftAuthenticationException
+    {
+        AuthEvent event = AuthEvents.begin(stage, url);
+        if (transport != null) {
+            Map<String, String> headers = createHeaders();
+            headers.put("Content-Type", MIME_TYPE_JSON);
+            headers.put("Accept", MIME_TYPE_JSON);
+
+            return sendJson("POST", url, headers, codec.encodeBytes(request), responseClass, event);
+        }
+
+        HttpURLConnection connection = null;
+
+        try {
+            byte[] data = codec.encodeBytes(request);
+            connection = post(url, MIME_TYPE_JSON, MIME_TYPE_JSON, data);
+            event.addBytesOut(data.length);
+
+            return readJson(connection, responseClass, event);
+        } finally {
+            commit(event, connection);
+        }
     }
 
     public <T> T postFormGetJson(String url, Map<String, String> params, Class<T> responseClass) throws MicrosoftAuthenticationException
@@ -77,8 +217,90 @@ public class HttpClient
         return readJson(postForm(url, params), responseClass);
     }
 
+    /**
+     * Sets the recorder of the sizes of the response bodies, compressed and decompressed, a no-op one by default.
+     * They are recorded by host and path of the url they were received from.
+     *
+     * @param metrics The new recorder, or null to disable the metrics
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics)
+    {
+        this.metrics = metrics != null ? metrics : MetricsRecorder.NOOP;
+    }
+
+    /**
+     * @return The recorder of the sizes of the response bodies, {@link MetricsRecorder#NOOP} if disabled
+     */
+    public MetricsRecorder getMetricsRecorder()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * Opens a connection to the host of an url requested with {@link #getJson} or {@link #postJson} ahead of time,
+     * kept by the transport for the next request. Without transport, see {@link #prewarmHandshake(String)}.
+     *
+     * @param url An url of the host
+     * @throws MicrosoftAuthenticationException If the connection couldn't be opened
+     */
+    public void prewarm(String url) throws MicrosoftAuthenticationException
+    {
+        if (transport == null) {
+            prewarmHandshake(url);
+            return;
+        }
+
+        try {
+            transport.prewarm(new URL(url), proxy);
+        } catch (IOException e) {
+            throw new MicrosoftAuthenticationException(e);
+        }
+    }
+
+    /**
+     * Resolves the host of an url requested through a {@link HttpURLConnection} ahead of time, and negotiates
+     * a TLS session with it, resumed by the first connection instead of a full handshake. Does nothing through
+     * a proxy, which resolves and connects to the host itself.
+     *
+     * @param url An url of the host
+     * @throws MicrosoftAuthenticationException If the host couldn't be resolved or the handshake failed
+     */
+    public void prewarmHandshake(String url) throws MicrosoftAuthenticationException
+    {
+        try {
+            URL target = new URL(url);
+            if (!"https".equals(target.getProtocol()) || proxy.type() != Proxy.Type.DIRECT) {
+                return;
+            }
+
+            String host = target.getHost();
+            int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+
+            try (Socket socket = new Socket()) {
+                // Also caches the address in the JVM cache used by HttpURLConnection
+                socket.connect(new InetSocketAddress(DnsCache.getDefault().resolve(host)[0], port), 30 * 1000); // 30s
+                socket.setSoTimeout(60 * 1000); // 60s
+
+                // Same factory and endpoint identification as HttpsURLConnection, otherwise it wouldn't resume the session
+                try (SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory().createSocket(socket, host, port, true)) {
+                    SSLParameters parameters = sslSocket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    sslSocket.setSSLParameters(parameters);
+                    sslSocket.startHandshake();
+                }
+            }
+        } catch (IOException e) {
+            throw new MicrosoftAuthenticationException(e);
+        }
+    }
+
 
     protected HttpURLConnection post(String url, String contentType, String accept, String data) throws MicrosoftAuthenticationException
+    {
+        return post(url, contentType, accept, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected HttpURLConnection post(String url, String contentType, String accept, byte[] data) throws MicrosoftAuthenticationException
     {
         HttpURLConnection connection = createConnection(url);
         connection.setDoOutput(true);
@@ -87,7 +309,7 @@ public class HttpClient
 
         try {
             connection.setRequestMethod("POST");
-            connection.getOutputStream().write(data.getBytes(StandardCharsets.UTF_8));
+            connection.getOutputStream().write(data);
         } catch (IOException e) {
             throw new MicrosoftAuthenticationException(e);
         }
@@ -97,7 +319,162 @@ public class HttpClient
 
     protected <T> T readJson(HttpURLConnection connection, Class<T> responseType) throws MicrosoftAuthenticationException
     {
-        return gson.fromJson(readResponse(connection), responseType);
+        return decode(readResponse(connection), responseType);
+    }
+
+    protected <T> T readJson(HttpURLConnection connection, Class<T> responseType, AuthEvent event) throws MicrosoftAuthenticationException
+    {
+        String response = readResponse(connection);
+        if (event != AuthEvent.NOOP) {
+            long length = connection.getContentLengthLong();
+            event.addBytesIn(length >= 0 ? length : response.getBytes(StandardCharsets.UTF_8).length);
+        }
+
+        return decode(response, responseType);
+    }
+
+    private <T> T sendJson(String method, String url, Map<String, String> headers, byte[] data, Class<T> responseType, AuthEvent event) throws MicrosoftAuthenticationException
+    {
+        MetricsRecorder metrics = this.metrics;
+
+        if (data != null) {
+            event.addBytesOut(data.length);
+        }
+
+        try {
+            for (int redirects = 0; ; redirects++) {
+                try (HttpResponse response = transport.execute(new HttpRequest(method, new URL(url), headers, data, proxy))) {
+                    event.setStatus(response.getStatusCode());
+
+                    // Followed like the connections do, without the request headers
+                    String redirection = getRedirection(response, redirects);
+                    if (redirection != null) {
+                        method = "GET";
+                        url = redirection;
+                        headers = createHeaders();
+                        data = null;
+
+                        continue;
+                    }
+
+                    return readJson(response, url, responseType, event, metrics);
+                }
+            }
+        } catch (IOException e) {
+            throw new MicrosoftAuthenticationException(e);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private <T> void getJsonAsync(String url, Map<String, String> headers, Class<T> responseType, AuthEvent event, CompletableFuture<T> result, int redirects)
+    {
+        CompletableFuture<HttpResponse> request;
+        try {
+            request = transport.executeAsync(new HttpRequest("GET", new URL(url), headers, null, proxy));
+        } catch (MalformedURLException e) {
+            result.completeExceptionally(new MicrosoftAuthenticationException(e));
+            return;
+        }
+
+        // Drops the request if still waiting for a connection, without any thread to interrupt
+        result.whenComplete((value, failure) -> request.cancel(false));
+
+        request.whenComplete((response, failure) -> {
+            if (failure != null) {
+                if (failure instanceof CompletionException && failure.getCause() != null) {
+                    failure = failure.getCause();
+                }
+
+                result.completeExceptionally(failure instanceof MicrosoftAuthenticationException ? failure : new MicrosoftAuthenticationException(failure));
+                return;
+            }
+
+            try (HttpResponse received = response) {
+                event.setStatus(received.getStatusCode());
+
+                String redirection = getRedirection(received, redirects);
+                if (redirection != null) {
+                    getJsonAsync(redirection, createHeaders(), responseType, event, result, redirects + 1);
+                    return;
+                }
+
+                result.complete(readJson(received, url, responseType, event, metrics));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(new MicrosoftAuthenticationException(e));
+            }
+        });
+    }
+
+    private <T> T readJson(HttpResponse response, String url, Class<T> responseType, AuthEvent event, MetricsRecorder metrics) throws IOException
+    {
+        int status = response.getStatusCode();
+        if (status >= 400) {
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+        }
+
+        InputStream in = response.getBody();
+        CountingInputStream counter = null;
+
+        if (event != AuthEvent.NOOP || metrics != MetricsRecorder.NOOP) {
+            in = counter = new CountingInputStream(in);
+        }
+
+        try {
+            return codec.decode(new InputStreamReader(in, StandardCharsets.UTF_8), responseType);
+        } finally {
+            if (counter != null) {
+                // Read decompressed, if the transport negotiated it
+                long decoded = counter.getCount();
+                long received = response.getBytesReceived();
+                if (received == -1) {
+                    received = decoded;
+                }
+
+                event.addBytesIn(received);
+                metrics.onResponseBody(metricsKey(new URL(url)), received, decoded);
+            }
+        }
+    }
+
+    private static String getRedirection(HttpResponse response, int redirects) throws IOException
+    {
+        String redirection = response.getHeader("Location");
+        if (redirection == null || response.getStatusCode() / 100 != 3) {
+            return null;
+        }
+
+        if (redirects >= MAX_REDIRECTS) {
+            throw new ProtocolException("Server redirected too many times (" + MAX_REDIRECTS + ")");
+        }
+
+        return redirection;
+    }
+
+    private <T> T decode(String response, Class<T> responseType) throws MicrosoftAuthenticationException
+    {
+        try {
+            return codec.decode(response, responseType);
+        } catch (IOException e) {
+            throw new MicrosoftAuthenticationException(e);
+        }
+    }
+
+    private void commit(AuthEvent event, HttpURLConnection connection)
+    {
+        if (event == AuthEvent.NOOP) {
+            return;
+        }
+
+        if (connection != null) {
+            try {
+                event.setStatus(connection.getResponseCode());
+            } catch (IOException ignored) {
+                // No response
+            }
+        }
+
+        event.commit();
     }
 
     protected String readResponse(HttpURLConnection connection) throws MicrosoftAuthenticationException
@@ -111,7 +488,10 @@ public class HttpClient
 
         try
         {
-            InputStream inputStream = connection.getInputStream();
+            // Decompressed as it is read, as the connections ask for a compressed body
+            CountingInputStream received = new CountingInputStream(connection.getInputStream());
+            CountingInputStream decoded = new CountingInputStream(ContentEncoding.decode(connection.getContentEncoding(), received));
+            InputStream inputStream = decoded;
 
             // check if the url corresponds to a related authentication url
             if(this.checkUrl(connection.getURL()))
@@ -125,11 +505,7 @@ public class HttpClient
                     buffer.write(data, 0, n);
                 }
 
-                byte[] patched = buffer
-                        .toString("UTF-8")
-                        .replaceAll("integrity ?=", "integrity.disabled=")
-                        .replaceAll("setAttribute\\(\"integrity\"", "setAttribute(\"integrity.disabled\"")
-                        .getBytes(StandardCharsets.UTF_8);
+                byte[] patched = patchIntegrity(buffer.toString("UTF-8")).getBytes(StandardCharsets.UTF_8);
 
                 inputStream = new ByteArrayInputStream(patched);
             }
@@ -142,14 +518,34 @@ public class HttpClient
             } catch (IOException e) {
                 throw new MicrosoftAuthenticationException(e);
             }
+
+            metrics.onResponseBody(metricsKey(connection.getURL()), received.getCount(), decoded.getCount());
         } catch (IOException e)
         {
-            throw new RuntimeException(e);
+            // Like the transports, an error status included
+            throw new MicrosoftAuthenticationException(e);
         }
 
         return response.toString();
     }
 
+    /**
+     * Disables the integrity checks of the scripts of a login page, as the webview can't verify them
+     *
+     * @param page The login page
+     * @return The patched page
+     */
+    protected static String patchIntegrity(String page)
+    {
+        String patched = INTEGRITY_PATTERN.matcher(page).replaceAll("integrity.disabled=");
+        return INTEGRITY_ATTRIBUTE_PATTERN.matcher(patched).replaceAll("setAttribute(\"integrity.disabled\"");
+    }
+
+    private static String metricsKey(URL url)
+    {
+        return url.getHost() + url.getPath();
+    }
+
     private boolean checkUrl(URL url)
     {
         return (("login.microsoftonline.com".equals(url.getHost()) && url.getPath().endsWith("/oauth2/authorize"))
@@ -199,17 +595,21 @@ public class HttpClient
             throw new MicrosoftAuthenticationException(e);
         }
 
-        String userAgent = "Mozilla/5.0 (XboxReplay; XboxLiveAuth/3.0) " +
-                "AppleWebKit/537.36 (KHTML, like Gecko) " +
-                "Chrome/71.0.3578.98 " +
-                "Safari/537.36";
-
         connection.setConnectTimeout(30 * 1000); // 30s
         connection.setReadTimeout(60 * 1000); // 60s
-        connection.setRequestProperty("Accept-Language", "en-US");
-        connection.setRequestProperty("Accept-Charset", "UTF-8");
-        connection.setRequestProperty("User-Agent", userAgent);
+        createHeaders().forEach(connection::setRequestProperty);
+        connection.setRequestProperty("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
 
         return connection;
     }
+
+    private Map<String, String> createHeaders()
+    {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept-Language", "en-US");
+        headers.put("Accept-Charset", "UTF-8");
+        headers.put("User-Agent", USER_AGENT);
+
+        return headers;
+    }
 }
@@ -25,21 +25,31 @@ package fr.litarvan.openauth.microsoft;
  * https://github.com/XboxReplay/xboxlive-auth
  */
 
+import fr.litarvan.openauth.json.JsonCodec;
+import fr.litarvan.openauth.metrics.MetricsRecorder;
 import fr.litarvan.openauth.microsoft.model.request.MinecraftLoginRequest;
 import fr.litarvan.openauth.microsoft.model.request.XSTSAuthorizationProperties;
 import fr.litarvan.openauth.microsoft.model.request.XboxLiveLoginProperties;
 import fr.litarvan.openauth.microsoft.model.request.XboxLoginRequest;
 import fr.litarvan.openauth.microsoft.model.response.*;
+import fr.litarvan.openauth.transport.HttpTransport;
 
 import java.io.UnsupportedEncodingException;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -76,6 +86,12 @@ public class MicrosoftAuthenticator {
 
     public static final String MINECRAFT_STORE_IDENTIFIER = "game_minecraft";
 
+    // Compiled once, the login flow matches them on every call
+    private static final Pattern IDENTITY_CONFIRM_PATTERN = Pattern.compile("(identity/confirm)");
+    private static final Pattern PPFT_PATTERN = Pattern.compile("sFTTag:'.*value=\"([^\"]*)\"");
+    private static final Pattern URL_POST_PATTERN = Pattern.compile("urlPost: ?'(.+?(?='))");
+    private static final Map<String, Pattern> VALUE_PATTERNS = new ConcurrentHashMap<>();
+
 
     private final HttpClient http;
 
@@ -83,6 +99,84 @@ public class MicrosoftAuthenticator {
         this.http = new HttpClient();
     }
 
+    /**
+     * @param codec The codec converting the requests and responses to and from JSON
+     */
+    public MicrosoftAuthenticator(JsonCodec codec) {
+        this.http = new HttpClient(Proxy.NO_PROXY, codec);
+    }
+
+    /**
+     * @param codec The codec converting the requests and responses to and from JSON
+     * @param transport The transport sending the requests of the Microsoft, Xbox Live and Minecraft services
+     *                  (the cookie-based login page requests always use {@link HttpURLConnection})
+     */
+    public MicrosoftAuthenticator(JsonCodec codec, HttpTransport transport) {
+        this.http = new HttpClient(Proxy.NO_PROXY, codec, transport);
+    }
+
+    /**
+     * Sets the recorder of the sizes of the response bodies, compressed and decompressed, by host and path
+     *
+     * @param metrics The new recorder (for example an {@link fr.litarvan.openauth.metrics.InMemoryMetrics}), or null to disable the metrics
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics) {
+        http.setMetricsRecorder(metrics);
+    }
+
+    /**
+     * @return The recorder of the sizes of the response bodies, {@link MetricsRecorder#NOOP} if disabled
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return http.getMetricsRecorder();
+    }
+
+    /**
+     * Resolves and connects to the hosts of the Microsoft, Xbox Live and Minecraft services in parallel, ahead of
+     * time (for example when the launcher starts), so that the next login only pays for its requests
+     *
+     * @return A future completed once every host is ready, or completed exceptionally with the first
+     *         {@link MicrosoftAuthenticationException} (the login then opens the missing connections itself)
+     */
+    public CompletableFuture<Void> prewarm() {
+        // The login pages are read through HttpURLConnections, the JSON endpoints through the transport
+        String[] pages = {MICROSOFT_AUTHORIZATION_ENDPOINT, MICROSOFT_TOKEN_ENDPOINT};
+        String[] endpoints = {XBOX_LIVE_AUTHORIZATION_ENDPOINT, XSTS_AUTHORIZATION_ENDPOINT, MINECRAFT_AUTH_ENDPOINT};
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(pages.length + endpoints.length, task -> {
+            Thread thread = new Thread(task, "OpenAuth-Prewarm-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String page : pages) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    http.prewarmHandshake(page);
+                } catch (MicrosoftAuthenticationException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        for (String endpoint : endpoints) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    http.prewarm(endpoint);
+                } catch (MicrosoftAuthenticationException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        // Its threads end once their host is ready
+        executor.shutdown();
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
     /**
      * Logs in a player using its Microsoft account credentials, and retrieve its Minecraft profile
      *
@@ -114,7 +208,7 @@ public class MicrosoftAuthenticator {
         try {
             return loginWithTokens(extractTokens(result.getURL().toString()),true);
         } catch (MicrosoftAuthenticationException e) {
-            if (match("(identity/confirm)", http.readResponse(result)) != null) {
+            if (match(IDENTITY_CONFIRM_PATTERN, http.readResponse(result)) != null) {
                 throw new MicrosoftAuthenticationException(
                         "User has enabled double-authentication or must allow sign-in on https://account.live.com/activity"
                 );
@@ -197,7 +291,8 @@ public class MicrosoftAuthenticator {
     }
 
     /**
-     * Logs in a player using a Microsoft account tokens retrieved earlier.
+     * Logs in a player using a Microsoft account tokens retrieved earlier. With an asynchronous transport, the
+     * profile is fetched while the ownership of the game is checked, and cancelled if the player doesn't own it.
      * <b>If the token was retrieved using Azure AAD/MSAL, it should be prefixed with d=</b>
      *
      * @param tokens Player Microsoft account tokens pair
@@ -211,22 +306,47 @@ public class MicrosoftAuthenticator {
 
         String userHash = xstsResponse.getDisplayClaims().getUsers()[0].getUserHash();
         MinecraftLoginResponse minecraftResponse = minecraftLogin(userHash, xstsResponse.getToken());
-        MinecraftStoreResponse storeResponse = http.getJson(
-                MINECRAFT_STORE_ENDPOINT,
-                minecraftResponse.getAccessToken(),
-                MinecraftStoreResponse.class
-        );
 
-        if (Arrays.stream(storeResponse.getItems()).noneMatch(item -> item.getName().equals(MINECRAFT_STORE_IDENTIFIER))) {
-            throw new MicrosoftAuthenticationException("Player didn't buy Minecraft Java Edition or did not migrate its account");
+        // Both only need the Minecraft access token, the profile is fetched during the store check if that
+        // holds no thread, otherwise after it
+        CompletableFuture<MinecraftProfile> profileFetch = null;
+        if (retrieveProfile && http.isAsync()) {
+            profileFetch = http.getJsonAsync(
+                    MINECRAFT_PROFILE_ENDPOINT,
+                    minecraftResponse.getAccessToken(),
+                    MinecraftProfile.class,
+                    "Profile fetch"
+            );
         }
+
         MinecraftProfile profile = null;
-        if (retrieveProfile) {
-            profile = http.getJson(
-                    MINECRAFT_PROFILE_ENDPOINT,
+        try {
+            MinecraftStoreResponse storeResponse = http.getJson(
+                    MINECRAFT_STORE_ENDPOINT,
                     minecraftResponse.getAccessToken(),
-                    MinecraftProfile.class
+                    MinecraftStoreResponse.class,
+                    "Store check"
             );
+
+            if (Arrays.stream(storeResponse.getItems()).noneMatch(item -> item.getName().equals(MINECRAFT_STORE_IDENTIFIER))) {
+                throw new MicrosoftAuthenticationException("Player didn't buy Minecraft Java Edition or did not migrate its account");
+            }
+
+            if (profileFetch != null) {
+                profile = await(profileFetch);
+            } else if (retrieveProfile) {
+                profile = http.getJson(
+                        MINECRAFT_PROFILE_ENDPOINT,
+                        minecraftResponse.getAccessToken(),
+                        MinecraftProfile.class,
+                        "Profile fetch"
+                );
+            }
+        } finally {
+            // Drops the request if not sent yet, a sent one ends by itself without holding a thread
+            if (profileFetch != null) {
+                profileFetch.cancel(false);
+            }
         }
 
         return new MicrosoftAuthResult(
@@ -239,15 +359,45 @@ public class MicrosoftAuthenticator {
     }
 
 
+    private static <T> T await(Future<T> future) throws MicrosoftAuthenticationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MicrosoftAuthenticationException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MicrosoftAuthenticationException) {
+                throw (MicrosoftAuthenticationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new MicrosoftAuthenticationException(cause);
+        }
+    }
+
     protected PreAuthData preAuthRequest() throws MicrosoftAuthenticationException {
         Map<String, String> params = getLoginParams();
         params.put("display", "touch");
         params.put("locale", "en");
 
-        String result = http.getText(MICROSOFT_AUTHORIZATION_ENDPOINT, params);
+        return parsePreAuthData(http.getText(MICROSOFT_AUTHORIZATION_ENDPOINT, params));
+    }
 
-        String ppft = match("sFTTag:'.*value=\"([^\"]*)\"", result);
-        String urlPost = match("urlPost: ?'(.+?(?='))", result);
+    /**
+     * Extracts the data needed to post the credentials from the Microsoft login page
+     *
+     * @param page The login page
+     * @return Its PPFT token and post url, null if not found
+     */
+    protected PreAuthData parsePreAuthData(String page) {
+        String ppft = match(PPFT_PATTERN, page);
+        String urlPost = match(URL_POST_PATTERN, page);
 
         return new PreAuthData(ppft, urlPost);
     }
@@ -258,7 +408,7 @@ public class MicrosoftAuthenticator {
                 properties, XBOX_LIVE_AUTH_RELAY, "JWT"
         );
 
-        return http.postJson(XBOX_LIVE_AUTHORIZATION_ENDPOINT, request, XboxLoginResponse.class);
+        return http.postJson(XBOX_LIVE_AUTHORIZATION_ENDPOINT, request, XboxLoginResponse.class, "Xbox Live login");
     }
 
     protected XboxLoginResponse xstsLogin(String xboxLiveToken) throws MicrosoftAuthenticationException {
@@ -267,12 +417,12 @@ public class MicrosoftAuthenticator {
                 properties, MINECRAFT_AUTH_RELAY, "JWT"
         );
 
-        return http.postJson(XSTS_AUTHORIZATION_ENDPOINT, request, XboxLoginResponse.class);
+        return http.postJson(XSTS_AUTHORIZATION_ENDPOINT, request, XboxLoginResponse.class, "XSTS");
     }
 
     protected MinecraftLoginResponse minecraftLogin(String userHash, String xstsToken) throws MicrosoftAuthenticationException {
         MinecraftLoginRequest request = new MinecraftLoginRequest(String.format("XBL3.0 x=%s;%s", userHash, xstsToken));
-        return http.postJson(MINECRAFT_AUTH_ENDPOINT, request, MinecraftLoginResponse.class);
+        return http.postJson(MINECRAFT_AUTH_ENDPOINT, request, MinecraftLoginResponse.class, "Minecraft login");
     }
 
 
@@ -291,7 +441,7 @@ public class MicrosoftAuthenticator {
     }
 
     protected String extractValue(String url, String key) throws MicrosoftAuthenticationException {
-        String matched = match(key + "=([^&]*)", url);
+        String matched = match(VALUE_PATTERNS.computeIfAbsent(key, k -> Pattern.compile(k + "=([^&]*)")), url);
         if (matched == null) {
             throw new MicrosoftAuthenticationException("Invalid credentials or tokens");
         }
@@ -304,7 +454,11 @@ public class MicrosoftAuthenticator {
     }
 
     protected String match(String regex, String content) {
-        Matcher matcher = Pattern.compile(regex).matcher(content);
+        return match(Pattern.compile(regex), content);
+    }
+
+    protected String match(Pattern pattern, String content) {
+        Matcher matcher = pattern.matcher(content);
         if (!matcher.find()) {
             return null;
         }
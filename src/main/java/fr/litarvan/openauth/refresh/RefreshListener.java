@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.refresh;
+
+import fr.litarvan.openauth.model.response.RefreshResponse;
+
+/**
+ * Refresh Listener
+ *
+ * <p>
+ *     Receives the tokens rotated by a {@link RefreshScheduler}. Its methods are called from the
+ *     threads of the authenticator executor, and must be thread-safe.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public interface RefreshListener {
+
+    /**
+     * Called when a session was refreshed, {@link ScheduledSession#getAccessToken()} already returns
+     * the new access token and the next refresh is scheduled after this call.
+     *
+     * @param session
+     *            The refreshed session
+     * @param previousAccessToken
+     *            The access token before the refresh, now invalid
+     * @param response
+     *            The response of the server
+     */
+    void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response);
+
+    /**
+     * Called when the refresh of a session failed but will be retried, as the server didn't reject it
+     * and its access token is still valid
+     *
+     * @param session
+     *            The session that could not be refreshed yet
+     * @param failure
+     *            The exception thrown by the refresh, usually an {@link fr.litarvan.openauth.AuthenticationException}
+     * @param delay
+     *            The delay before the next attempt, in milliseconds
+     */
+    default void onRetry(ScheduledSession session, Throwable failure, long delay) {
+    }
+
+    /**
+     * Called when the refresh of a session failed for good, rejected by the server or retried until its
+     * access token expired. The session is not scheduled anymore (it can be scheduled again using
+     * {@link RefreshScheduler#schedule(String, String, long)}).
+     * <p>
+     * Also called with the exception thrown by {@link #onRefreshed}, the session being then refreshed and
+     * still scheduled ({@link ScheduledSession#isCancelled()} returns false).
+     * </p>
+     *
+     * @param session
+     *            The session that could not be refreshed
+     * @param failure
+     *            The exception thrown by the refresh, usually an {@link fr.litarvan.openauth.AuthenticationException}
+     */
+    default void onFailure(ScheduledSession session, Throwable failure) {
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.refresh;
+
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh Scheduler
+ *
+ * <p>
+ *     Keeps sessions alive by refreshing their access token shortly before it expires, through
+ *     {@link Authenticator#refreshAsync(String, String)}, instead of waiting for a request to fail.
+ *     Rotated tokens are published to a {@link RefreshListener}.
+ * </p>
+ *
+ * <p>
+ *     Expiries are tracked in a hashed timing wheel with a precision of one second, so scheduling
+ *     and cancelling a session are O(1) even with hundreds of thousands of them. Each refresh happens
+ *     between {@code refreshAhead} and {@code refreshAhead + jitter} before the expiry, so that sessions
+ *     created together don't all refresh at the same time.
+ * </p>
+ *
+ * <p>
+ *     A failed refresh is retried with an exponential backoff while the access token is valid, the
+ *     session is only cancelled when the server rejects the refresh (a 4xx error other than 429) or
+ *     once the token expired.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class RefreshScheduler implements Closeable {
+
+    /**
+     * The duration of a tick of the timing wheel, in milliseconds
+     */
+    private static final long TICK_DURATION = 1000;
+
+    /**
+     * The number of buckets of the timing wheel
+     */
+    private static final int TICKS_PER_WHEEL = 512;
+
+    /**
+     * The delay before retrying a failed refresh in milliseconds, doubled on each consecutive failure
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The maximum delay before retrying a failed refresh, in milliseconds
+     */
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    private final Authenticator authenticator;
+    private final long tokenLifetime;
+    private final long refreshAhead;
+    private final long jitter;
+    private final RefreshListener listener;
+
+    private final TimingWheel wheel;
+    private final Set<ScheduledSession> sessions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Create a refresh scheduler, and start its timer thread
+     *
+     * @param authenticator
+     *            The authenticator used to refresh the sessions
+     * @param tokenLifetime
+     *            The lifetime of the access tokens given by the server
+     * @param refreshAhead
+     *            How long before the expiry of a token it is refreshed
+     * @param jitter
+     *            The maximum random time added to refreshAhead
+     * @param unit
+     *            The unit of the durations
+     * @param listener
+     *            The listener receiving the rotated tokens
+     */
+    public RefreshScheduler(Authenticator authenticator, long tokenLifetime, long refreshAhead, long jitter, TimeUnit unit, RefreshListener listener) {
+        this.authenticator = authenticator;
+        this.tokenLifetime = unit.toMillis(tokenLifetime);
+        this.refreshAhead = unit.toMillis(refreshAhead);
+        this.jitter = unit.toMillis(jitter);
+        this.listener = listener;
+
+        this.wheel = new TimingWheel(TICK_DURATION, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL, runnable -> {
+            Thread thread = new Thread(runnable, "OpenAuth-RefreshScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules the refresh of a session just authenticated
+     *
+     * @param response
+     *            The response of the authentication
+     *
+     * @return The scheduled session
+     */
+    public ScheduledSession schedule(AuthResponse response) {
+        return schedule(response.getAccessToken(), response.getClientToken(), System.currentTimeMillis() + tokenLifetime);
+    }
+
+    /**
+     * Schedules the refresh of a session just refreshed
+     *
+     * @param response
+     *            The response of the refresh
+     *
+     * @return The scheduled session
+     */
+    public ScheduledSession schedule(RefreshResponse response) {
+        return schedule(response.getAccessToken(), response.getClientToken(), System.currentTimeMillis() + tokenLifetime);
+    }
+
+    /**
+     * Schedules the refresh of a session
+     *
+     * @param accessToken
+     *            The access token of the session
+     * @param clientToken
+     *            The client token of the session
+     * @param expiresAt
+     *            The time the access token expires at, in milliseconds since the epoch
+     *
+     * @return The scheduled session
+     */
+    public ScheduledSession schedule(String accessToken, String clientToken, long expiresAt) {
+        if (closed) {
+            throw new IllegalStateException("Refresh scheduler is closed");
+        }
+
+        ScheduledSession session = new ScheduledSession(this, accessToken, clientToken, expiresAt);
+        sessions.add(session);
+        scheduleNext(session);
+
+        return session;
+    }
+
+    /**
+     * Returns the number of scheduled sessions
+     *
+     * @return The session count
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops refreshing every session, and stops the timer thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        wheel.stop();
+
+        for (ScheduledSession session : sessions) {
+            session.cancel();
+        }
+    }
+
+    void remove(ScheduledSession session) {
+        sessions.remove(session);
+    }
+
+    private void scheduleNext(ScheduledSession session) {
+        long delay = session.getExpiresAt() - System.currentTimeMillis() - refreshAhead;
+        if (jitter > 0) {
+            delay -= ThreadLocalRandom.current().nextLong(jitter + 1);
+        }
+
+        schedule(session, delay);
+    }
+
+    private void schedule(ScheduledSession session, long delay) {
+        TimingWheel.Timeout timeout = wheel.schedule(() -> refresh(session), delay, TimeUnit.MILLISECONDS);
+        if (!session.setTimeout(timeout)) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Starts the refresh of a session, called by the wheel thread
+     */
+    private void refresh(ScheduledSession session) {
+        if (session.isCancelled()) {
+            return;
+        }
+
+        String previousAccessToken = session.getAccessToken();
+        authenticator.refreshAsync(previousAccessToken, session.getClientToken()).whenComplete((response, failure) -> {
+            if (failure != null) {
+                onFailure(session, failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                return;
+            }
+
+            session.rotate(response.getAccessToken(), response.getClientToken(), System.currentTimeMillis() + tokenLifetime);
+
+            try {
+                listener.onRefreshed(session, previousAccessToken, response);
+            } catch (RuntimeException e) {
+                // Otherwise lost in the future, the session stays scheduled as it was refreshed
+                try {
+                    listener.onFailure(session, e);
+                } catch (RuntimeException ignored) {
+                    // Nothing more to report it to
+                }
+            } finally {
+                if (!closed && !session.isCancelled()) {
+                    scheduleNext(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Retries a failed refresh later, or cancels the session if the refresh was rejected or its token expired
+     */
+    private void onFailure(ScheduledSession session, Throwable failure) {
+        int failures = session.onFailure();
+        long remaining = session.getExpiresAt() - System.currentTimeMillis();
+
+        if (!closed && !session.isCancelled() && !isRejection(failure) && remaining > RETRY_DELAY) {
+            // Leaves time for more attempts before the expiry
+            long delay = Math.min(Math.min(RETRY_DELAY << Math.min(failures - 1, 16), MAX_RETRY_DELAY), remaining / 2);
+
+            try {
+                listener.onRetry(session, failure, delay);
+            } finally {
+                schedule(session, delay);
+            }
+
+            return;
+        }
+
+        session.cancel();
+        listener.onFailure(session, failure);
+    }
+
+    /**
+     * Returns whether the server definitively rejected a refresh: an error about the request itself, that
+     * would happen again
+     */
+    private static boolean isRejection(Throwable failure) {
+        if (!(failure instanceof AuthenticationException)) {
+            return false;
+        }
+
+        int status = ((AuthenticationException) failure).getStatusCode();
+        return status >= 400 && status < 500 && status != 429;
+    }
+
+}
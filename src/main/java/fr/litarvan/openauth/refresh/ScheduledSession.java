@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.refresh;
+
+/**
+ * Scheduled Session
+ *
+ * <p>
+ *     A session kept alive by a {@link RefreshScheduler}. Its tokens are updated on each refresh.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ScheduledSession {
+
+    private final RefreshScheduler scheduler;
+
+    private volatile String accessToken;
+    private volatile String clientToken;
+    private volatile long expiresAt;
+    private volatile boolean cancelled;
+    private volatile int failures;
+
+    /**
+     * The next refresh, guarded by this
+     */
+    private TimingWheel.Timeout timeout;
+
+    ScheduledSession(RefreshScheduler scheduler, String accessToken, String clientToken, long expiresAt) {
+        this.scheduler = scheduler;
+        this.accessToken = accessToken;
+        this.clientToken = clientToken;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Returns the current access token of the session
+     *
+     * @return The access token
+     */
+    public String getAccessToken() {
+        return this.accessToken;
+    }
+
+    /**
+     * Returns the client token of the session
+     *
+     * @return The client token
+     */
+    public String getClientToken() {
+        return this.clientToken;
+    }
+
+    /**
+     * Returns the time the current access token expires at
+     *
+     * @return The expiry time, in milliseconds since the epoch
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * Returns the number of consecutive failed refreshes of the session
+     *
+     * @return The failure count, reset by a successful refresh
+     */
+    public int getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * Returns whether the session was cancelled
+     *
+     * @return If the session is not refreshed anymore
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Stops refreshing the session. A refresh already in flight completes, but the session is not
+     * scheduled again.
+     */
+    public void cancel() {
+        TimingWheel.Timeout timeout;
+
+        synchronized (this) {
+            cancelled = true;
+            timeout = this.timeout;
+            this.timeout = null;
+        }
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        scheduler.remove(this);
+    }
+
+    void rotate(String accessToken, String clientToken, long expiresAt) {
+        this.accessToken = accessToken;
+        if (clientToken != null) {
+            this.clientToken = clientToken;
+        }
+        this.expiresAt = expiresAt;
+        this.failures = 0;
+    }
+
+    /**
+     * Records a failed refresh, only called by the completion of the refresh in flight
+     */
+    int onFailure() {
+        return ++failures;
+    }
+
+    /**
+     * Sets the next refresh, returns false if the session was cancelled meanwhile
+     */
+    synchronized boolean setTimeout(TimingWheel.Timeout timeout) {
+        if (cancelled) {
+            return false;
+        }
+
+        this.timeout = timeout;
+        return true;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+/**
+ * Circuit Breaker
+ *
+ * <p>
+ *     Tracks the health of one endpoint of an auth server. After {@link ResiliencePolicy#getFailureThreshold()}
+ *     consecutive failures the breaker opens, and requests fail fast without being sent. Once the open
+ *     duration is over, a single trial request is let through: the breaker closes if it succeeds, and
+ *     opens again otherwise.
+ * </p>
+ *
+ * <p>
+ *     Callers can check {@link #getState()} to shed load while an endpoint is unhealthy.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of a circuit breaker
+     */
+    public enum State {
+        /**
+         * Requests are sent normally
+         */
+        CLOSED,
+
+        /**
+         * Requests fail fast
+         */
+        OPEN,
+
+        /**
+         * A trial request is allowed to check if the endpoint recovered
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The endpoint watched by this breaker
+     */
+    private final String endpoint;
+
+    /**
+     * The policy giving the threshold and open duration
+     */
+    private final ResiliencePolicy policy;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * Circuit Breaker constructor
+     *
+     * @param endpoint
+     *            The endpoint watched by this breaker
+     * @param policy
+     *            The policy giving the threshold and open duration
+     */
+    public CircuitBreaker(String endpoint, ResiliencePolicy policy) {
+        this.endpoint = endpoint;
+        this.policy = policy;
+    }
+
+    /**
+     * Returns whether a request may be sent now. When it returns true, the request result must be given
+     * to {@link #onSuccess()} or {@link #onFailure()}, or {@link #release()} called if it isn't sent.
+     *
+     * @return If the request can be sent
+     */
+    public synchronized boolean tryAcquire() {
+        switch (currentState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gives back the permission of {@link #tryAcquire()} for a request that was finally not sent
+     */
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Records a request that reached a healthy endpoint, closing the breaker
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Records a failed request, opening the breaker if the threshold is reached or if it was a trial
+     */
+    public synchronized void onFailure() {
+        failures++;
+
+        if (state == State.HALF_OPEN || failures >= policy.getFailureThreshold()) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+
+        trialInFlight = false;
+    }
+
+    /**
+     * Returns the current state of the breaker
+     *
+     * @return The state
+     */
+    public synchronized State getState() {
+        return currentState();
+    }
+
+    /**
+     * Returns the number of consecutive failures of the endpoint
+     *
+     * @return The failure count
+     */
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the endpoint watched by this breaker
+     *
+     * @return The endpoint (the auth point)
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= policy.getOpenDuration() * 1000000L) {
+            state = State.HALF_OPEN;
+        }
+
+        return state;
+    }
+
+}
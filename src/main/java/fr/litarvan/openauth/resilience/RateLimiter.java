@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Rate Limiter
+ *
+ * <p>
+ *     Paces the requests of an {@link fr.litarvan.openauth.Authenticator} with a {@link TokenBucket} per
+ *     endpoint, so that bulk jobs run at the rate the server sustains instead of being locked out.
+ *     Synchronous calls wait for their permit on their own thread, async calls reserve theirs and are only
+ *     handed to the executor once it is due. The buckets slow down on 429 and 503 responses, and on their Retry-After headers.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long maxWait;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Create a rate limiter, applying the same limit to each endpoint
+     *
+     * @param permitsPerSecond
+     *            The maximum rate of each endpoint
+     * @param burst
+     *            The maximum number of requests sent at once to an endpoint
+     * @param maxWait
+     *            The maximum time a request waits for its permit, it fails beyond that
+     * @param unit
+     *            The unit of maxWait
+     */
+    public RateLimiter(double permitsPerSecond, int burst, long maxWait, TimeUnit unit) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxWait = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Sets the limit of an endpoint, instead of the default one
+     *
+     * @param authPoint
+     *            The endpoint (auth point)
+     * @param permitsPerSecond
+     *            The maximum rate of the endpoint
+     * @param burst
+     *            The maximum number of requests sent at once to the endpoint
+     */
+    public void setLimit(String authPoint, double permitsPerSecond, int burst) {
+        buckets.put(authPoint, new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Waits for a permit to send a request to an endpoint
+     *
+     * @param authPoint
+     *            The endpoint (auth point)
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting
+     *
+     * @return False if the permit would take longer than maxWait to be available, true once the request can be sent
+     */
+    public boolean acquire(String authPoint) throws InterruptedException {
+        long wait = getBucket(authPoint).reserve(maxWait);
+        if (wait < 0) {
+            return false;
+        }
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reserves a permit to send a request to an endpoint, without blocking. The permit is taken from the
+     * bucket right away, the request must then be sent without calling {@link #acquire(String)}.
+     *
+     * @param authPoint
+     *            The endpoint (auth point)
+     *
+     * @return A future completed with true once the reserved permit can be used, or with false right away if
+     *         it would take longer than maxWait to be available (no permit is reserved then)
+     */
+    public CompletableFuture<Boolean> acquireAsync(String authPoint) {
+        long wait = getBucket(authPoint).reserve(maxWait);
+        if (wait <= 0) {
+            return CompletableFuture.completedFuture(wait == 0);
+        }
+
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Timer.INSTANCE.schedule(() -> future.complete(true), wait, TimeUnit.NANOSECONDS);
+
+        return future;
+    }
+
+    /**
+     * Records a response of an endpoint
+     *
+     * @param authPoint
+     *            The endpoint (auth point)
+     * @param statusCode
+     *            The status code of the response
+     * @param retryAfter
+     *            The delay asked by its Retry-After header in milliseconds, or -1 if none
+     */
+    public void onResponse(String authPoint, int statusCode, long retryAfter) {
+        TokenBucket bucket = getBucket(authPoint);
+
+        // An overloaded server may answer 503 instead of 429
+        boolean limited = statusCode == 429 || statusCode == 503;
+
+        if (limited || retryAfter >= 0) {
+            bucket.throttle(retryAfter >= 0 ? TimeUnit.MILLISECONDS.toNanos(retryAfter) : -1, limited);
+        } else if (statusCode < 400) {
+            bucket.onSuccess();
+        }
+    }
+
+    /**
+     * Returns the bucket of an endpoint
+     *
+     * @param authPoint
+     *            The endpoint (auth point)
+     *
+     * @return The token bucket
+     */
+    public TokenBucket getBucket(String authPoint) {
+        return buckets.computeIfAbsent(authPoint, point -> new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * The timer of the async waits, a single daemon thread created on first use
+     */
+    private static final class Timer {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OpenAuth-RateLimiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import fr.litarvan.openauth.AuthenticationException;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resilience Policy
+ *
+ * <p>
+ *     Configures how an {@link fr.litarvan.openauth.Authenticator} handles an unhealthy auth server:
+ *     retriable failures (connection errors, 5xx and 429 responses) are retried with an exponential
+ *     backoff and full jitter, and a {@link CircuitBreaker} per endpoint fails fast once an endpoint
+ *     failed too many times in a row.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ResiliencePolicy {
+
+    /**
+     * The default policy: 3 attempts, 100ms to 2s of backoff, breaker opened for 30s after 5 failures
+     */
+    public static final ResiliencePolicy DEFAULT = new ResiliencePolicy(3, 100, 2000, 5, 30000, TimeUnit.MILLISECONDS);
+
+    /**
+     * The maximum number of attempts of a request, including the first one
+     */
+    private final int maxAttempts;
+
+    /**
+     * The backoff before the first retry, in milliseconds
+     */
+    private final long baseDelay;
+
+    /**
+     * The maximum backoff between two attempts, in milliseconds
+     */
+    private final long maxDelay;
+
+    /**
+     * The number of consecutive failures opening the circuit breaker of an endpoint
+     */
+    private final int failureThreshold;
+
+    /**
+     * The time an open circuit breaker fails fast before letting a trial request through, in milliseconds
+     */
+    private final long openDuration;
+
+    /**
+     * Resilience Policy constructor
+     *
+     * @param maxAttempts
+     *            The maximum number of attempts of a request, including the first one (1 to disable retries)
+     * @param baseDelay
+     *            The backoff before the first retry, doubled on each retry
+     * @param maxDelay
+     *            The maximum backoff between two attempts
+     * @param failureThreshold
+     *            The number of consecutive failures opening the circuit breaker of an endpoint
+     * @param openDuration
+     *            The time an open circuit breaker fails fast before letting a trial request through
+     * @param unit
+     *            The unit of the durations
+     */
+    public ResiliencePolicy(int maxAttempts, long baseDelay, long maxDelay, int failureThreshold, long openDuration, TimeUnit unit) {
+        if (maxAttempts < 1 || failureThreshold < 1) {
+            throw new IllegalArgumentException("maxAttempts and failureThreshold must be at least 1");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = unit.toMillis(baseDelay);
+        this.maxDelay = unit.toMillis(maxDelay);
+        this.failureThreshold = failureThreshold;
+        this.openDuration = unit.toMillis(openDuration);
+    }
+
+    /**
+     * Returns whether a failed request can be retried: the server could not be reached, failed
+     * (5xx) or asked to slow down (429)
+     *
+     * @param e
+     *            The exception thrown by the request
+     *
+     * @return If the request should be retried
+     */
+    public boolean isRetriable(AuthenticationException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+            return true;
+        }
+
+        int status = e.getStatusCode();
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * Returns whether a failed request means that its endpoint is unhealthy, and counts as a failure
+     * for its circuit breaker: the retriable failures, and any I/O error
+     *
+     * @param e
+     *            The exception thrown by the request
+     *
+     * @return If the failure counts for the circuit breaker
+     */
+    public boolean isFailure(AuthenticationException e) {
+        return e.getStatusCode() == -1 || isRetriable(e);
+    }
+
+    /**
+     * Returns a random backoff before a retry, between 0 and min(maxDelay, baseDelay * 2^(attempt - 1))
+     *
+     * @param attempt
+     *            The number of the attempt that failed, starting at 1
+     *
+     * @return The backoff, in milliseconds
+     */
+    public long backoff(int attempt) {
+        long delay = baseDelay << Math.min(attempt - 1, 30);
+        if (delay <= 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    /**
+     * Returns the maximum number of attempts of a request
+     *
+     * @return The max attempts
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Returns the backoff before the first retry
+     *
+     * @return The base delay, in milliseconds
+     */
+    public long getBaseDelay() {
+        return this.baseDelay;
+    }
+
+    /**
+     * Returns the maximum backoff between two attempts
+     *
+     * @return The max delay, in milliseconds
+     */
+    public long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Returns the number of consecutive failures opening a circuit breaker
+     *
+     * @return The failure threshold
+     */
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    /**
+     * Returns the time an open circuit breaker fails fast
+     *
+     * @return The open duration, in milliseconds
+     */
+    public long getOpenDuration() {
+        return this.openDuration;
+    }
+
+}
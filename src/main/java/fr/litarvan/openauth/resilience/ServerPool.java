@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server Pool
+ *
+ * <p>
+ *     A set of mirrored auth servers sharing the same auth points. Each request goes to the healthy
+ *     server with the lowest expected latency, an exponentially weighted moving average (EWMA) of its
+ *     response times weighted by its requests in flight. A server failing too many times in a row is
+ *     ejected for a while, and a failed request is sent again to the next best server as long as its
+ *     deadline isn't reached.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ServerPool {
+
+    /**
+     * The default number of consecutive failures ejecting a server
+     */
+    public static final int DEFAULT_MAX_FAILURES = 3;
+
+    /**
+     * The default ejection time of a server, in milliseconds
+     */
+    public static final long DEFAULT_EJECTION_TIME = 30000;
+
+    /**
+     * The default deadline of a request across all its attempts, in milliseconds
+     */
+    public static final long DEFAULT_DEADLINE = 10000;
+
+    /**
+     * The weight of a new latency sample in the moving average
+     */
+    private static final double EWMA_WEIGHT = 0.3;
+
+    /**
+     * The servers of the pool
+     */
+    private final List<Server> servers;
+
+    /**
+     * The number of consecutive failures ejecting a server
+     */
+    private final int maxFailures;
+
+    /**
+     * The ejection time of a server, in nanoseconds
+     */
+    private final long ejectionTime;
+
+    /**
+     * The deadline of a request across all its attempts, in nanoseconds
+     */
+    private final long deadline;
+
+    /**
+     * Server Pool constructor, with the default ejection and deadline settings
+     *
+     * @param urls
+     *            The base URLs of the servers (like the authURL of an Authenticator)
+     */
+    public ServerPool(Collection<String> urls) {
+        this(urls, DEFAULT_MAX_FAILURES, DEFAULT_EJECTION_TIME, DEFAULT_DEADLINE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Server Pool constructor
+     *
+     * @param urls
+     *            The base URLs of the servers (like the authURL of an Authenticator)
+     * @param maxFailures
+     *            The number of consecutive failures ejecting a server
+     * @param ejectionTime
+     *            The time an ejected server doesn't receive any request
+     * @param deadline
+     *            The time after which a failed request isn't sent to another server anymore
+     * @param unit
+     *            The unit of the durations
+     */
+    public ServerPool(Collection<String> urls, int maxFailures, long ejectionTime, long deadline, TimeUnit unit) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required");
+        }
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("maxFailures must be at least 1");
+        }
+
+        List<Server> servers = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            servers.add(new Server(url));
+        }
+
+        this.servers = Collections.unmodifiableList(servers);
+        this.maxFailures = maxFailures;
+        this.ejectionTime = unit.toNanos(ejectionTime);
+        this.deadline = unit.toNanos(deadline);
+    }
+
+    /**
+     * Selects the server a request should be sent to: the healthy server with the lowest load-weighted
+     * latency among the ones not tried yet. If all of them are ejected, the one whose ejection ends first
+     * is chosen, so that requests keep probing the pool instead of failing locally.
+     *
+     * @param tried
+     *            The servers already tried by the request
+     *
+     * @return The server to use, or null if all of them were tried
+     */
+    public Server select(Collection<Server> tried) {
+        long now = System.nanoTime();
+
+        Server best = null;
+        double bestScore = Double.MAX_VALUE;
+        Server fallback = null;
+
+        for (Server server : servers) {
+            if (tried.contains(server)) {
+                continue;
+            }
+
+            if (server.isEjected(now)) {
+                if (fallback == null || server.ejectedUntil - fallback.ejectedUntil < 0) {
+                    fallback = server;
+                }
+                continue;
+            }
+
+            double score = server.getScore();
+            if (score < bestScore) {
+                best = server;
+                bestScore = score;
+            }
+        }
+
+        return best != null ? best : fallback;
+    }
+
+    /**
+     * Records the start of a request on a server
+     *
+     * @param server
+     *            The server the request is sent to
+     *
+     * @return The start time of the request, to give to {@link #onSuccess} or {@link #onFailure}
+     */
+    public long onStart(Server server) {
+        server.inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a request the server answered (even with an error about the request itself)
+     *
+     * @param server
+     *            The server
+     * @param start
+     *            The start time returned by {@link #onStart}
+     */
+    public void onSuccess(Server server, long start) {
+        server.inFlight.decrementAndGet();
+        server.record(System.nanoTime() - start);
+
+        synchronized (server) {
+            server.failures = 0;
+        }
+    }
+
+    /**
+     * Records a request the server failed (unreachable, 5xx or 429), ejecting the server after too
+     * many consecutive failures
+     *
+     * @param server
+     *            The server
+     * @param start
+     *            The start time returned by {@link #onStart}
+     */
+    public void onFailure(Server server, long start) {
+        server.inFlight.decrementAndGet();
+
+        synchronized (server) {
+            if (++server.failures >= maxFailures) {
+                server.ejectedUntil = System.nanoTime() + ejectionTime;
+                server.ejected = true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a request started at the given time can still be sent to another server
+     *
+     * @param start
+     *            The start time of the request, from {@link System#nanoTime()}
+     *
+     * @return If the deadline of the request isn't reached
+     */
+    public boolean isWithinDeadline(long start) {
+        return System.nanoTime() - start < deadline;
+    }
+
+    /**
+     * Returns the time left before the deadline of a request, which bounds the timeout of its next attempt
+     *
+     * @param start
+     *            The start time of the request, from {@link System#nanoTime()}
+     *
+     * @return The time left in milliseconds, 0 or less once the deadline is reached
+     */
+    public long getRemainingTime(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - start));
+    }
+
+    /**
+     * @return The servers of the pool
+     */
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    /**
+     * @return The number of consecutive failures ejecting a server
+     */
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    /**
+     * @return The ejection time of a server, in milliseconds
+     */
+    public long getEjectionTime() {
+        return TimeUnit.NANOSECONDS.toMillis(ejectionTime);
+    }
+
+    /**
+     * @return The deadline of a request across all its attempts, in milliseconds
+     */
+    public long getDeadline() {
+        return TimeUnit.NANOSECONDS.toMillis(deadline);
+    }
+
+    /**
+     * A server of the pool, with its health and latency statistics
+     */
+    public static class Server {
+
+        /**
+         * The base URL of the server
+         */
+        private final String url;
+
+        /**
+         * The requests sent to the server and not answered yet
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * The moving average of the response times, in nanoseconds (0 until the first answer)
+         */
+        private volatile double latency;
+
+        /**
+         * The consecutive failures, guarded by this server
+         */
+        private int failures;
+
+        /**
+         * If the server was ejected, until {@link #ejectedUntil}
+         */
+        private volatile boolean ejected;
+
+        /**
+         * The end of the ejection, from {@link System#nanoTime()}
+         */
+        private volatile long ejectedUntil;
+
+        private Server(String url) {
+            this.url = url;
+        }
+
+        private synchronized void record(long sample) {
+            latency = latency == 0 ? sample : latency + EWMA_WEIGHT * (sample - latency);
+        }
+
+        private boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        private double getScore() {
+            // Unmeasured servers score 0 and are tried first
+            return latency * (inFlight.get() + 1);
+        }
+
+        /**
+         * @return The base URL of the server
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The moving average of the response times, in milliseconds
+         */
+        public double getLatency() {
+            return latency / 1000000D;
+        }
+
+        /**
+         * @return The requests sent to the server and not answered yet
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return If the server is currently ejected
+         */
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
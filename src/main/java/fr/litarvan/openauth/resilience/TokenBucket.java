@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+/**
+ * Token Bucket
+ *
+ * <p>
+ *     The rate limit of one endpoint of a {@link RateLimiter}. The bucket holds up to {@code burst} permits,
+ *     refilled at the current rate. Reservations may take the bucket below zero, the following callers then
+ *     wait their turn.
+ * </p>
+ *
+ * <p>
+ *     The rate adapts to the server: it is halved on each 429 or 503 response (down to 1/64 of the configured rate),
+ *     and goes back up by 1/20 of the configured rate on each success. A Retry-After delay stops the refill
+ *     until it is over.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double configuredRate;
+    private final int burst;
+
+    // Guarded by this
+    private double rate;
+    private double permits;
+    private long lastRefill;
+
+    /**
+     * Token Bucket constructor, the bucket starts full
+     *
+     * @param permitsPerSecond
+     *            The configured rate
+     * @param burst
+     *            The maximum number of permits available at once
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+        }
+
+        this.configuredRate = permitsPerSecond;
+        this.burst = burst;
+        this.rate = permitsPerSecond;
+        this.permits = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Reserves a permit, if it is available soon enough
+     *
+     * @param maxWait
+     *            The maximum time the caller accepts to wait, in nanoseconds
+     *
+     * @return The time to wait before using the permit in nanoseconds, or -1 if it would be longer than
+     *         maxWait (no permit is reserved then)
+     */
+    public synchronized long reserve(long maxWait) {
+        long wait = delay(System.nanoTime());
+        if (wait > maxWait) {
+            return -1;
+        }
+
+        permits -= 1;
+        return wait;
+    }
+
+    /**
+     * Returns the time before a permit is available, without reserving it
+     *
+     * @return The delay in nanoseconds, 0 if a permit is available now
+     */
+    public synchronized long delay() {
+        return delay(System.nanoTime());
+    }
+
+    /**
+     * Slows down after a 429 or 503 response, or a Retry-After header
+     *
+     * @param retryAfter
+     *            The delay asked by the server in nanoseconds, or -1 if none
+     * @param limited
+     *            If the server rate limited the request or was overloaded (429 or 503), which halves the rate
+     */
+    public synchronized void throttle(long retryAfter, boolean limited) {
+        long now = System.nanoTime();
+        refill(now);
+
+        if (limited) {
+            rate = Math.max(rate / 2, configuredRate / 64);
+
+            if (retryAfter < 0) {
+                retryAfter = (long) (NANOS_PER_SECOND / rate);
+            }
+        }
+
+        if (retryAfter > 0) {
+            // Nothing is refilled before the end of the delay
+            permits = Math.min(permits, 0);
+            lastRefill = Math.max(lastRefill, now + retryAfter);
+        }
+    }
+
+    /**
+     * Records a successful request, bringing the rate back up towards the configured one
+     */
+    public synchronized void onSuccess() {
+        if (rate < configuredRate) {
+            rate = Math.min(configuredRate, rate + configuredRate / 20);
+        }
+    }
+
+    /**
+     * Returns the current rate
+     *
+     * @return The rate, in permits per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Returns the configured rate
+     *
+     * @return The configured rate, in permits per second
+     */
+    public double getConfiguredRate() {
+        return configuredRate;
+    }
+
+    /**
+     * Returns the maximum number of permits available at once
+     *
+     * @return The burst
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    private long delay(long now) {
+        refill(now);
+
+        // lastRefill is in the future while a Retry-After delay runs
+        long wait = Math.max(lastRefill - now, 0);
+        if (permits < 1) {
+            wait += (long) ((1 - permits) / rate * NANOS_PER_SECOND);
+        }
+
+        return wait;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            permits = Math.min(burst, permits + (now - lastRefill) * rate / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+    }
+
+}
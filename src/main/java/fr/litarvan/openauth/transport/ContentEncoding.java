@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content Encoding
+ *
+ * <p>
+ *     The compression of the response bodies negotiated by the transports. The requests that don't set an
+ *     {@code Accept-Encoding} header are sent with {@link #ACCEPT_ENCODING}, and the gzip or deflate bodies
+ *     of their responses are decompressed as they are read. A request setting its own {@code Accept-Encoding}
+ *     (for example {@code identity}) receives the body as sent by the server.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class ContentEncoding {
+
+    /**
+     * The encodings accepted by the transports
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Checks if the transport negotiates the encoding of a request, the request not setting it itself
+     *
+     * @param request
+     *            The request
+     *
+     * @return If the request has no {@code Accept-Encoding} header
+     */
+    public static boolean isNegotiated(HttpRequest request) {
+        for (String name : request.getHeaders().keySet()) {
+            if ("Accept-Encoding".equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decompresses the body of the response of a request whose encoding was negotiated by the transport. The
+     * {@code Content-Encoding} and {@code Content-Length} headers are removed, the compressed size being
+     * given by {@link HttpResponse#getBytesReceived()}.
+     *
+     * @param request
+     *            The request
+     * @param response
+     *            The response, as received
+     *
+     * @return The response with a decompressed body, or the given one if it isn't compressed
+     */
+    public static HttpResponse decode(HttpRequest request, HttpResponse response) {
+        String encoding = response.getHeader("Content-Encoding");
+        if (encoding == null || !isSupported(encoding) || !isNegotiated(request)) {
+            return response;
+        }
+
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(response.getHeaders());
+        headers.remove("Content-Encoding");
+        headers.remove("Content-Length");
+
+        CountingInputStream received = new CountingInputStream(response.getBody());
+        return new HttpResponse(response.getStatusCode(), headers, decode(encoding, received), received);
+    }
+
+    /**
+     * Wraps a body in a stream decompressing it as it is read. Nothing is read before the first read
+     * of the returned stream.
+     *
+     * @param encoding
+     *            The {@code Content-Encoding} of the body (optional)
+     * @param body
+     *            The body, as received
+     *
+     * @return The decompressed body, or the given one if its encoding isn't gzip or deflate
+     */
+    public static InputStream decode(String encoding, InputStream body) {
+        if (encoding == null || !isSupported(encoding)) {
+            return body;
+        }
+
+        return new DecodingInputStream(body, !"deflate".equals(normalize(encoding)));
+    }
+
+    private static boolean isSupported(String encoding) {
+        String normalized = normalize(encoding);
+        return "gzip".equals(normalized) || "x-gzip".equals(normalized) || "deflate".equals(normalized);
+    }
+
+    private static String normalize(String encoding) {
+        return encoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A stream creating its decompressor on its first read, to not block on the body before it is read
+     */
+    private static class DecodingInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private final boolean gzip;
+
+        private InputStream decoder;
+
+        private Inflater inflater;
+
+        private DecodingInputStream(InputStream in, boolean gzip) {
+            this.in = in;
+            this.gzip = gzip;
+        }
+
+        private InputStream decoder() throws IOException {
+            if (decoder != null) {
+                return decoder;
+            }
+
+            PushbackInputStream body = new PushbackInputStream(in, 2);
+            int first = body.read();
+            if (first == -1) {
+                // Sent without any body, like the 204 and the HEAD responses
+                return decoder = body;
+            }
+
+            if (gzip) {
+                body.unread(first);
+                return decoder = new GZIPInputStream(body, 8192);
+            }
+
+            // Deflate is supposed to be zlib-wrapped, but some servers send raw deflate data
+            int second = body.read();
+            boolean zlib = second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+
+            if (second != -1) {
+                body.unread(second);
+            }
+            body.unread(first);
+
+            inflater = new Inflater(!zlib);
+            return decoder = new InflaterInputStream(body, inflater, 8192);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoder().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return decoder().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoder != null ? decoder.available() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (decoder != null) {
+                    decoder.close();
+                } else {
+                    in.close();
+                }
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DNS Cache
+ *
+ * <p>
+ *     Keeps the addresses of the hosts the transports connect to. An address older than the time to live is
+ *     still returned, while the host is resolved again in the background, so that a lookup is only waited for
+ *     the first time (or after the maximum staleness). If that new lookup fails, the previous addresses are
+ *     kept until they reach the maximum staleness.
+ * </p>
+ *
+ * <p>
+ *     The {@link #getDefault() default cache} is shared by the transports, so that
+ *     {@link fr.litarvan.openauth.Authenticator#prewarm()} resolves the hosts for all of them.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class DnsCache {
+
+    /**
+     * Default time (in milliseconds) after which an address is resolved again
+     */
+    public static final long DEFAULT_TTL = 60 * 1000; // 1min
+
+    /**
+     * Default time (in milliseconds) after which an address that couldn't be resolved again isn't used anymore
+     */
+    public static final long DEFAULT_MAX_STALE = 10 * 60 * 1000; // 10min
+
+    private static final DnsCache DEFAULT = new DnsCache();
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ExecutorService RESOLVER = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "OpenAuth-DNS-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Create a DNS cache with the default times
+     */
+    public DnsCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_STALE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a DNS cache
+     *
+     * @param ttl
+     *            The time after which an address is resolved again
+     * @param maxStale
+     *            The time after which an address that couldn't be resolved again isn't used anymore
+     * @param unit
+     *            The unit of the times
+     */
+    public DnsCache(long ttl, long maxStale, TimeUnit unit) {
+        if (ttl < 0 || maxStale < ttl) {
+            throw new IllegalArgumentException("ttl must be positive, and maxStale at least ttl");
+        }
+
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxStaleNanos = unit.toNanos(maxStale);
+    }
+
+    /**
+     * @return The cache shared by the transports, unless they were given another one
+     */
+    public static DnsCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the addresses of a host, resolving it only if it isn't cached or is too stale
+     *
+     * @param host
+     *            The host name, or a literal address
+     *
+     * @throws UnknownHostException If the host couldn't be resolved
+     *
+     * @return Its addresses, in the order of the resolver
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase();
+        Entry entry = entries.get(key);
+        long now = System.nanoTime();
+
+        if (entry != null && now - entry.resolvedAt < maxStaleNanos) {
+            if (now - entry.resolvedAt >= ttlNanos) {
+                refresh(key, entry);
+            }
+
+            return entry.addresses.clone();
+        }
+
+        return lookup(key).addresses.clone();
+    }
+
+    /**
+     * Resolves a host in the background, for a later {@link #resolve}
+     *
+     * @param host
+     *            The host name, or a literal address
+     *
+     * @return A future resolved by its addresses, or completed exceptionally with an {@link UnknownHostException}
+     */
+    public CompletableFuture<InetAddress[]> prefetch(String host) {
+        String key = host.toLowerCase();
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return lookup(key).addresses.clone();
+            } catch (UnknownHostException e) {
+                throw new CompletionException(e);
+            }
+        }, RESOLVER);
+    }
+
+    /**
+     * Removes the addresses of a host, for example after a connection to them failed
+     *
+     * @param host
+     *            The host name
+     */
+    public void invalidate(String host) {
+        entries.remove(host.toLowerCase());
+    }
+
+    /**
+     * Removes all the cached addresses
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private Entry lookup(String key) throws UnknownHostException {
+        Entry entry = new Entry(InetAddress.getAllByName(key), System.nanoTime());
+        entries.put(key, entry);
+
+        return entry;
+    }
+
+    private void refresh(String key, Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        RESOLVER.execute(() -> {
+            try {
+                lookup(key);
+            } catch (UnknownHostException | RuntimeException e) {
+                // Kept until its maximum staleness, tried again on the next resolve
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * The addresses of a host and when they were resolved
+     */
+    private static final class Entry {
+        private final InetAddress[] addresses;
+        private final long resolvedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(InetAddress[] addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP Request
+ *
+ * <p>
+ *     A request sent through an {@link HttpTransport}
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class HttpRequest {
+
+    /**
+     * The request method (GET, POST, ...)
+     */
+    private final String method;
+
+    /**
+     * The request URL
+     */
+    private final URL url;
+
+    /**
+     * The request headers
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The request body (optional)
+     */
+    private final byte[] body;
+
+    /**
+     * The proxy to use
+     */
+    private final Proxy proxy;
+
+    /**
+     * The timeout of the request in milliseconds, or 0 to use the ones of the transport
+     */
+    private final int timeout;
+
+    /**
+     * HTTP Request constructor
+     *
+     * @param method
+     *            The request method (GET, POST, ...)
+     * @param url
+     *            The request URL
+     * @param headers
+     *            The request headers
+     * @param body
+     *            The request body (optional)
+     * @param proxy
+     *            The proxy to use (optional)
+     */
+    public HttpRequest(String method, URL url, Map<String, String> headers, byte[] body, Proxy proxy) {
+        this(method, url, headers, body, proxy, 0);
+    }
+
+    /**
+     * HTTP Request constructor
+     *
+     * @param method
+     *            The request method (GET, POST, ...)
+     * @param url
+     *            The request URL
+     * @param headers
+     *            The request headers
+     * @param body
+     *            The request body (optional)
+     * @param proxy
+     *            The proxy to use (optional)
+     * @param timeout
+     *            The timeout of the request in milliseconds, bounding the connect and read timeouts of the
+     *            transport, or 0 to only use these
+     */
+    public HttpRequest(String method, URL url, Map<String, String> headers, byte[] body, Proxy proxy, int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout can't be negative");
+        }
+
+        this.method = method;
+        this.url = url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        this.body = body;
+        this.proxy = proxy != null ? proxy : Proxy.NO_PROXY;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the request method
+     *
+     * @return The method
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Returns the request URL
+     *
+     * @return The URL
+     */
+    public URL getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Returns the request headers
+     *
+     * @return The headers
+     */
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Returns the request body
+     *
+     * @return The body, or null if there is none
+     */
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * Returns the proxy to use
+     *
+     * @return The proxy
+     */
+    public Proxy getProxy() {
+        return this.proxy;
+    }
+
+    /**
+     * Returns the timeout of the request
+     *
+     * @return The timeout in milliseconds, or 0 if the transport timeouts apply
+     */
+    public int getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Bounds a timeout of a transport by the one of this request
+     *
+     * @param timeout
+     *            The timeout of the transport in milliseconds, 0 meaning infinite
+     *
+     * @return The timeout to apply to this request, in milliseconds
+     */
+    int bound(int timeout) {
+        if (this.timeout == 0) {
+            return timeout;
+        }
+
+        return timeout == 0 ? this.timeout : Math.min(timeout, this.timeout);
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP Response
+ *
+ * <p>
+ *     A response received from an {@link HttpTransport}. It must be closed once read, so that
+ *     the connection it was read from can go back to its pool.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class HttpResponse implements Closeable {
+
+    /**
+     * The response status code
+     */
+    private final int statusCode;
+
+    /**
+     * The response headers (case insensitive)
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The response body
+     */
+    private final InputStream body;
+
+    /**
+     * The body as received, before its decompression (null if it wasn't compressed)
+     */
+    private final CountingInputStream received;
+
+    /**
+     * HTTP Response constructor
+     *
+     * @param statusCode
+     *            The response status code
+     * @param headers
+     *            The response headers
+     * @param body
+     *            The response body (empty if there is none)
+     */
+    public HttpResponse(int statusCode, Map<String, String> headers, InputStream body) {
+        this(statusCode, headers, body, null);
+    }
+
+    /**
+     * HTTP Response constructor, for a body decompressed by {@link ContentEncoding}
+     *
+     * @param statusCode
+     *            The response status code
+     * @param headers
+     *            The response headers
+     * @param body
+     *            The decompressed response body
+     * @param received
+     *            The compressed body it reads from
+     */
+    HttpResponse(int statusCode, Map<String, String> headers, InputStream body, CountingInputStream received) {
+        TreeMap<String, String> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(copy);
+        this.body = body;
+        this.received = received;
+    }
+
+    /**
+     * Returns the response status code
+     *
+     * @return The status code
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns the response headers, their names are case insensitive
+     *
+     * @return The headers
+     */
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Returns a response header value
+     *
+     * @param name
+     *            The header name (case insensitive)
+     *
+     * @return The header value, or null if it is missing
+     */
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+
+    /**
+     * Returns the delay asked by the Retry-After header, given either in seconds or as a HTTP date
+     *
+     * @return The delay in milliseconds, or -1 if the header is missing or invalid
+     */
+    public long getRetryAfter() {
+        String value = getHeader("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+
+        value = value.trim();
+
+        try {
+            return Math.max(Long.parseLong(value) * 1000, 0);
+        } catch (NumberFormatException ignored) {
+            // Not in seconds, try as a date
+        }
+
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(date - System.currentTimeMillis(), 0);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the response body
+     *
+     * @return The body stream
+     */
+    public InputStream getBody() {
+        return this.body;
+    }
+
+    /**
+     * Returns the number of bytes of the body received so far, before its decompression
+     *
+     * @return The number of compressed bytes read, or -1 if the body wasn't compressed (the number of bytes
+     *         received then being the number of bytes read from {@link #getBody()})
+     */
+    public long getBytesReceived() {
+        return this.received != null ? this.received.getCount() : -1;
+    }
+
+    /**
+     * Closes the response body, releasing its connection
+     *
+     * @throws IOException If the body could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.body.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP Transport
+ *
+ * <p>
+ *     Sends the HTTP requests of an {@link fr.litarvan.openauth.Authenticator}, or the JSON requests of
+ *     a Microsoft {@code HttpClient}. Implementations must be thread-safe, as a single transport is shared
+ *     by every call of its authenticator.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * Sends a request and returns its response. The response body must be closed by the caller,
+     * this is what allows the transport to reuse the underlying connection.
+     *
+     * @param request
+     *            The request to send
+     *
+     * @throws IOException If the request could not be sent or the response could not be read
+     *
+     * @return The response of the server
+     */
+    HttpResponse execute(HttpRequest request) throws IOException;
+
+    /**
+     * Sends a request without waiting for its response. By default the request is sent on the calling
+     * thread, transports with a non-blocking client override this to complete the future from their own
+     * threads.
+     *
+     * @param request
+     *            The request to send
+     *
+     * @return The future response of the server, completed exceptionally with an {@link IOException}
+     *         if the request failed
+     */
+    default CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(execute(request));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * @return If {@link #executeAsync} sends the requests without blocking the calling thread, nor any other
+     *         thread while waiting for their response
+     */
+    default boolean isAsync() {
+        return false;
+    }
+
+    /**
+     * Opens a connection to the host of an url ahead of time, resolving it, connecting and completing the TLS
+     * handshake, then keeps it for the next request to that host. Does nothing if there already is an idle
+     * connection to it, or by default.
+     *
+     * @param url
+     *            An url of the host
+     * @param proxy
+     *            The proxy the requests will go through
+     *
+     * @throws IOException If the connection couldn't be opened
+     */
+    default void prewarm(URL url, Proxy proxy) throws IOException {
+    }
+
+    /**
+     * Closes the transport and all of its open connections
+     */
+    @Override
+    void close();
+
+}
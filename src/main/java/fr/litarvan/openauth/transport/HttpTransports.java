@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+/**
+ * HTTP Transports
+ *
+ * <p>
+ *     Picks the transports used when none is given. On Java 8 this is a {@link PooledHttpTransport}
+ *     per authenticator, and the Microsoft {@code HttpClient} keeps its {@code HttpURLConnection}s;
+ *     from Java 11 the multi-release jar replaces this class by a version creating HTTP/2 transports
+ *     based on {@code java.net.http.HttpClient}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class HttpTransports {
+
+    private HttpTransports() {
+    }
+
+    /**
+     * Creates the default transport of an authenticator, to be closed with it
+     *
+     * @return A new {@link PooledHttpTransport}
+     */
+    public static HttpTransport createDefault() {
+        return new PooledHttpTransport();
+    }
+
+    /**
+     * Returns the transport shared by every Microsoft {@code HttpClient} created without one, which
+     * multiplexes the concurrent calls to a host on a single connection. It ignores {@link HttpTransport#close()}.
+     *
+     * @return The shared transport, or null if there is none (the clients then use {@code HttpURLConnection})
+     */
+    public static HttpTransport shared() {
+        return null;
+    }
+
+    /**
+     * @return If the transports created by this class negotiate HTTP/2
+     */
+    public static boolean isHttp2Supported() {
+        return false;
+    }
+}
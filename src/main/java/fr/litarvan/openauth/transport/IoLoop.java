@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * I/O Loop
+ *
+ * <p>
+ *     A selector thread of a {@link NioHttpTransport}, running the connections assigned to it. Every
+ *     state change of a connection happens on its loop; other threads hand their work with {@link #execute}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class IoLoop implements Runnable {
+
+    /**
+     * Interval between two checks of the timeouts, in milliseconds
+     */
+    private static final long SWEEP_INTERVAL = 100;
+
+    private final NioHttpTransport transport;
+    private final Selector selector;
+    private final Thread thread;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Set<NioConnection> connections = new HashSet<>();
+
+    private final boolean sweepsPools;
+    private volatile boolean closed;
+
+    /**
+     * @param transport
+     *            The transport of the loop
+     * @param name
+     *            The name of its thread
+     * @param sweepsPools
+     *            If this loop also expires the requests waiting for a connection in the pools of the transport
+     *
+     * @throws IOException If the selector could not be opened
+     */
+    IoLoop(NioHttpTransport transport, String name, boolean sweepsPools) throws IOException {
+        this.transport = transport;
+        this.selector = Selector.open();
+        this.sweepsPools = sweepsPools;
+
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task on this loop
+     *
+     * @param task
+     *            The task, that must not block
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+
+        if (closed) {
+            // The loop may have already run its last tasks, the task then runs here to fail its request
+            if (tasks.remove(task)) {
+                task.run();
+            }
+        } else if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL);
+
+        while (!closed) {
+            try {
+                if (tasks.isEmpty()) {
+                    selector.select(SWEEP_INTERVAL);
+                } else {
+                    selector.selectNow();
+                }
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        connection.onReady(key.readyOps());
+                    } catch (CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A failure of the selector itself, the connections have their own handling
+            }
+        }
+
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            connection.fail(new IOException("Transport is closed"));
+        }
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Nothing more to do
+        }
+    }
+
+    private void sweep(long now) {
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            connection.checkTimeouts(now);
+        }
+
+        if (sweepsPools) {
+            transport.expireWaiting(now);
+        }
+    }
+
+    /**
+     * Closes the connections of this loop idle for longer than the idle timeout
+     */
+    void closeIdle(long now) {
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            connection.closeIfIdle(now);
+        }
+    }
+
+    /**
+     * Stops the loop, failing the requests of its connections
+     */
+    void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    void add(NioConnection connection) {
+        connections.add(connection);
+    }
+
+    void remove(NioConnection connection) {
+        connections.remove(connection);
+    }
+}
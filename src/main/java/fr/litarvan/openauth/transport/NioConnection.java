@@ -0,0 +1,726 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NIO Connection
+ *
+ * <p>
+ *     A non-blocking connection of a {@link NioHttpTransport}, driven by its {@link IoLoop}: it connects,
+ *     tunnels through the HTTP proxy and handshakes TLS if needed, then sends one request at a time and
+ *     parses its response as the bytes arrive. It only holds its buffers during an exchange.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class NioConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final int CONNECTING = 0;
+    private static final int HANDSHAKING = 1;
+    private static final int WRITING = 2;
+    private static final int READING = 3;
+    private static final int IDLE = 4;
+    private static final int CLOSED = 5;
+
+    private final NioHttpTransport transport;
+    private final NioHttpTransport.RoutePool pool;
+    private final PooledHttpTransport.Route route;
+    private final IoLoop loop;
+    private final InetSocketAddress address;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine engine;
+
+    /**
+     * The received bytes not processed yet, in write mode
+     */
+    private ByteBuffer netIn;
+
+    /**
+     * The bytes to send, in read mode
+     */
+    private ByteBuffer netOut;
+
+    /**
+     * The decrypted bytes, in write mode
+     */
+    private ByteBuffer appIn;
+
+    private int state = CONNECTING;
+    private boolean tunneling;
+    private boolean reused;
+    private boolean reusable = true;
+
+    private NioHttpTransport.Exchange exchange;
+    private ResponseParser parser;
+    private ByteBuffer outgoing;
+
+    private long deadline;
+    private long idleSince;
+
+    NioConnection(NioHttpTransport transport, NioHttpTransport.RoutePool pool, IoLoop loop, InetSocketAddress address) {
+        this.transport = transport;
+        this.pool = pool;
+        this.route = pool.route;
+        this.loop = loop;
+        this.address = address;
+    }
+
+    /**
+     * Opens the connection to send the given request. Called on the loop.
+     */
+    void connect(NioHttpTransport.Exchange exchange) {
+        this.exchange = exchange;
+
+        if (loop.isClosed()) {
+            fail(new IOException("Transport is closed"));
+            return;
+        }
+
+        loop.add(this);
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(loop.getSelector(), 0, this);
+
+            acquireBuffers();
+            deadline = deadline(transport.connectTimeout);
+
+            if (channel.connect(address)) {
+                onConnected();
+            } else {
+                interest(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Sends a request on this idle connection. Called on the loop.
+     */
+    void start(NioHttpTransport.Exchange exchange) {
+        if (state == CLOSED) {
+            // Closed by the server while idle, before it was leased
+            pool.dispatch(exchange, true);
+            return;
+        }
+
+        this.exchange = exchange;
+        this.reused = true;
+
+        try {
+            acquireBuffers();
+            beginExchange();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Continues the work of the connection once its channel is ready. Called on the loop.
+     */
+    void onReady(int readyOps) {
+        try {
+            if (state == CONNECTING) {
+                if ((readyOps & SelectionKey.OP_CONNECT) != 0 && channel.finishConnect()) {
+                    onConnected();
+                }
+            } else if (state == IDLE) {
+                onIdleReadable();
+            } else if (state != CLOSED) {
+                progress();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Returns the deadline of the next step of the exchange, bounded by the timeout of its request
+     *
+     * @param timeout
+     *            The timeout of the step, in milliseconds
+     */
+    private long deadline(int timeout) {
+        long next = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        NioHttpTransport.Exchange current = exchange;
+        if (current != null && current.expiry != 0 && current.expiry - next < 0) {
+            return current.expiry;
+        }
+
+        return next;
+    }
+
+    /**
+     * Fails the exchange that timed out, or closes the connection if it has been idle for too long. Called on the loop.
+     */
+    void checkTimeouts(long now) {
+        if (state == IDLE) {
+            closeIfIdle(now);
+        } else if (state != CLOSED && deadline != 0 && now - deadline >= 0) {
+            if (state == CONNECTING) {
+                // Reported as a connect failure, so that it can't be mistaken for a read timeout
+                fail(new ConnectException("Connect timed out : " + address));
+            } else {
+                fail(new SocketTimeoutException("Read timed out"));
+            }
+        }
+    }
+
+    /**
+     * Closes the connection if it has been idle for longer than the idle timeout. Called on the loop.
+     */
+    void closeIfIdle(long now) {
+        if (state == IDLE && now - idleSince >= transport.idleTimeoutNanos && pool.takeIdle(this)) {
+            close();
+        }
+    }
+
+    private void onConnected() throws IOException {
+        deadline = deadline(transport.readTimeout);
+
+        if (route.secure && route.proxy.type() == Proxy.Type.HTTP) {
+            String authority = route.host + ':' + route.port;
+
+            tunneling = true;
+            outgoing = ByteBuffer.wrap(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            parser = new ResponseParser(false, true);
+            state = WRITING;
+
+            progress();
+        } else if (route.secure) {
+            startTls();
+        } else {
+            beginExchange();
+        }
+    }
+
+    private void startTls() throws IOException {
+        engine = transport.sslContext.createSSLEngine(route.host, route.port);
+        engine.setUseClientMode(true);
+
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+
+        engine.beginHandshake();
+        state = HANDSHAKING;
+
+        progress();
+    }
+
+    private void beginExchange() throws IOException {
+        if (exchange.request == null) {
+            // Opened ahead of time, kept for the next request
+            NioHttpTransport.Exchange done = exchange;
+            exchange = null;
+            deadline = 0;
+
+            park();
+            done.future.complete(null);
+            return;
+        }
+
+        outgoing = exchange.payload();
+        parser = new ResponseParser("HEAD".equals(exchange.request.getMethod()), false);
+        deadline = deadline(transport.readTimeout);
+        state = WRITING;
+
+        progress();
+    }
+
+    private void progress() throws IOException {
+        if (state == HANDSHAKING) {
+            if (handshake()) {
+                beginExchange();
+            }
+            return;
+        }
+
+        if (state == WRITING) {
+            if (!write()) {
+                return;
+            }
+            state = READING;
+        }
+
+        if (state == READING && read()) {
+            onResponse();
+        }
+    }
+
+    /**
+     * Drives the TLS handshake
+     *
+     * @return If it is finished, false if waiting for the channel
+     */
+    private boolean handshake() throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case NEED_WRAP:
+                    if (!flush()) {
+                        return false;
+                    }
+
+                    netOut.clear();
+                    SSLEngineResult wrapped = engine.wrap(EMPTY, netOut);
+                    netOut.flip();
+
+                    if (wrapped.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed during the TLS handshake");
+                    }
+                    if (wrapped.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        netOut.flip();
+                    }
+                    break;
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    return flush();
+                default:
+                    // NEED_UNWRAP: the peer must first receive what is pending
+                    if (!flush()) {
+                        return false;
+                    }
+
+                    netIn.flip();
+                    SSLEngineResult unwrapped = engine.unwrap(netIn, appIn);
+                    netIn.compact();
+
+                    switch (unwrapped.getStatus()) {
+                        case BUFFER_UNDERFLOW:
+                            int read = fill();
+                            if (read < 0) {
+                                throw new EOFException("Connection closed by the server during the TLS handshake");
+                            }
+                            if (read == 0) {
+                                return false;
+                            }
+                            break;
+                        case BUFFER_OVERFLOW:
+                            appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                            break;
+                        case CLOSED:
+                            throw new EOFException("Connection closed by the server during the TLS handshake");
+                        default:
+                            break;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Writes the outgoing bytes, encrypted if needed
+     *
+     * @return If they were all written, false if waiting for the channel
+     */
+    private boolean write() throws IOException {
+        while (true) {
+            if (!flush()) {
+                return false;
+            }
+            if (!outgoing.hasRemaining()) {
+                break;
+            }
+
+            netOut.clear();
+            if (engine != null) {
+                SSLEngineResult result = engine.wrap(outgoing, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new SSLException("TLS connection closed");
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                }
+            } else {
+                int count = Math.min(outgoing.remaining(), netOut.remaining());
+                ByteBuffer chunk = outgoing.duplicate();
+                chunk.limit(chunk.position() + count);
+
+                netOut.put(chunk);
+                outgoing.position(outgoing.position() + count);
+            }
+            netOut.flip();
+        }
+
+        interest(SelectionKey.OP_READ);
+        return true;
+    }
+
+    /**
+     * Reads the response, decrypted if needed
+     *
+     * @return If it was fully read, false if waiting for the channel
+     */
+    private boolean read() throws IOException {
+        if (engine == null) {
+            while (true) {
+                int read = fill();
+                if (read < 0) {
+                    return endOfStream();
+                }
+                if (read == 0) {
+                    return false;
+                }
+
+                netIn.flip();
+                parser.feed(netIn);
+
+                boolean leftover = netIn.hasRemaining();
+                netIn.clear();
+
+                if (parser.isDone()) {
+                    reusable &= !leftover;
+                    return true;
+                }
+            }
+        }
+
+        while (true) {
+            if (isHandshaking() && !handshake()) {
+                return false;
+            }
+
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+
+            if (appIn.position() > 0) {
+                appIn.flip();
+                parser.feed(appIn);
+
+                boolean leftover = appIn.hasRemaining();
+                appIn.clear();
+
+                if (parser.isDone()) {
+                    reusable &= !leftover && netIn.position() == 0;
+                    return true;
+                }
+            }
+
+            SSLEngineResult.Status status = result.getStatus();
+            if (status == SSLEngineResult.Status.OK && result.bytesConsumed() == 0 && result.bytesProduced() == 0 && !isHandshaking()) {
+                status = SSLEngineResult.Status.BUFFER_UNDERFLOW;
+            }
+
+            switch (status) {
+                case BUFFER_UNDERFLOW:
+                    int read = fill();
+                    if (read < 0) {
+                        return endOfStream();
+                    }
+                    if (read == 0) {
+                        return false;
+                    }
+                    break;
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case CLOSED:
+                    return endOfStream();
+                default:
+                    break;
+            }
+        }
+    }
+
+    private boolean endOfStream() throws IOException {
+        reusable = false;
+        parser.onEndOfStream();
+
+        if (parser.isDone()) {
+            return true;
+        }
+
+        throw new EOFException(parser.isStarted()
+                ? "Connection closed by the server before the end of the response"
+                : "Connection closed by the server before sending a response");
+    }
+
+    private void onResponse() throws IOException {
+        ResponseParser response = parser;
+        parser = null;
+
+        if (tunneling) {
+            tunneling = false;
+            if (response.getStatus() != 200) {
+                throw new IOException("Proxy refused to tunnel to " + route.host + ':' + route.port + " : HTTP " + response.getStatus());
+            }
+
+            startTls();
+            return;
+        }
+
+        NioHttpTransport.Exchange done = exchange;
+        exchange = null;
+        deadline = 0;
+
+        HttpResponse httpResponse = new HttpResponse(response.getStatus(), response.getHeaders(),
+                new ByteArrayInputStream(response.getBody(), 0, response.getLength()));
+
+        if (reusable && response.isKeepAlive()) {
+            park();
+        } else {
+            close();
+        }
+
+        done.future.complete(ContentEncoding.decode(done.request, httpResponse));
+    }
+
+    /**
+     * Keeps the connection idle in its pool, or gives it to the next waiting request
+     */
+    private void park() {
+        state = IDLE;
+        idleSince = System.nanoTime();
+        releaseBuffers();
+        interest(SelectionKey.OP_READ);
+
+        pool.recycle(this);
+    }
+
+    /**
+     * Handles what an idle connection received: its closing by the server, or the TLS messages it can send
+     * anytime. Anything else makes the connection unusable.
+     */
+    private void onIdleReadable() throws IOException {
+        acquireBuffers();
+
+        while (true) {
+            int read = channel.read(netIn);
+            if (read < 0 || (read > 0 && engine == null)) {
+                close();
+                return;
+            }
+            if (engine == null) {
+                break;
+            }
+
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED || appIn.position() > 0
+                    || engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                    || (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && !netIn.hasRemaining())) {
+                close();
+                return;
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && read == 0) {
+                break;
+            }
+        }
+
+        if (netIn.position() == 0) {
+            releaseBuffers();
+        }
+    }
+
+    /**
+     * Writes the pending encrypted bytes
+     *
+     * @return If they were all written, false if waiting for the channel
+     */
+    private boolean flush() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                interest(SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads what is available from the channel
+     *
+     * @return The number of bytes read, -1 at the end of the stream
+     */
+    private int fill() throws IOException {
+        if (!netIn.hasRemaining()) {
+            netIn = enlarge(netIn, engine != null ? engine.getSession().getPacketBufferSize() : 0);
+        }
+
+        int read = channel.read(netIn);
+        if (read == 0) {
+            interest(SelectionKey.OP_READ);
+        } else if (read > 0) {
+            deadline = deadline(transport.readTimeout);
+        }
+
+        return read;
+    }
+
+    private boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private void interest(int ops) {
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Replaces a buffer in write mode by a larger one with the same content
+     */
+    private ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+
+        transport.buffers.release(buffer);
+        return larger;
+    }
+
+    private void acquireBuffers() {
+        if (netIn == null) {
+            netIn = transport.buffers.acquire();
+        }
+        if (netOut == null) {
+            netOut = transport.buffers.acquire();
+            netOut.flip();
+        }
+        if (appIn == null && route.secure) {
+            appIn = transport.buffers.acquire();
+        }
+    }
+
+    private void releaseBuffers() {
+        if (netIn != null) {
+            transport.buffers.release(netIn);
+            netIn = null;
+        }
+        if (netOut != null) {
+            transport.buffers.release(netOut);
+            netOut = null;
+        }
+        if (appIn != null) {
+            transport.buffers.release(appIn);
+            appIn = null;
+        }
+    }
+
+    /**
+     * Fails the current exchange and closes the connection. The request is sent again on a new connection
+     * if this one was reused and closed by the server before it answered, as it may have been idle for too long,
+     * or if its address of the host refused it while another address is left.
+     */
+    void fail(Throwable failure) {
+        NioHttpTransport.Exchange failed = exchange;
+        exchange = null;
+
+        boolean retry = failed != null && reused && !failed.retried && !tunneling
+                && (parser == null || !parser.isStarted()) && !(failure instanceof SocketTimeoutException);
+
+        if (retry) {
+            failed.retried = true;
+        } else if (failed != null && state == CONNECTING && !loop.isClosed() && !isExpired(failed)) {
+            // Refused by this address of the host, sent to the next one if any
+            retry = pool.onConnectFailed(address, failed);
+        }
+
+        close(retry ? failed : null);
+
+        if (failed != null && !retry) {
+            failed.future.completeExceptionally(failure);
+        }
+    }
+
+    private static boolean isExpired(NioHttpTransport.Exchange exchange) {
+        return exchange.expiry != 0 && System.nanoTime() - exchange.expiry >= 0;
+    }
+
+    /**
+     * Closes the connection, freeing its slot in the pool
+     */
+    void close() {
+        close(null);
+    }
+
+    private void close(NioHttpTransport.Exchange retry) {
+        if (state == CLOSED) {
+            return;
+        }
+        state = CLOSED;
+
+        loop.remove(this);
+
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+        if (engine != null) {
+            engine.closeOutbound();
+        }
+
+        releaseBuffers();
+        pool.onClosed(this, retry);
+    }
+
+    IoLoop getLoop() {
+        return loop;
+    }
+}
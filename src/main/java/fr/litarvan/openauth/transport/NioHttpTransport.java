@@ -0,0 +1,676 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NIO HTTP Transport
+ * <p>
+ *     A non-blocking {@link HttpTransport}: a HTTP/1.1 client running all of its connections on a couple
+ *     of selector threads, with TLS through an {@link javax.net.ssl.SSLEngine} and pooled direct buffers.
+ *     A request doesn't hold any thread while waiting for its response, so thousands of them can be in
+ *     flight at once with {@link #executeAsync}.
+ * </p>
+ * <p>
+ *     At most {@code maxConnectionsPerRoute} keep-alive connections are open to a route (scheme, host, port
+ *     and proxy), the requests beyond wait in a queue for a free one, failing after the connect timeout.
+ *     The responses are read entirely before their future completes, on an I/O thread: the dependent
+ *     stages of these futures must not block.
+ * </p>
+ * <p>
+ *     Requests through a SOCKS proxy are sent by a {@link PooledHttpTransport}, on threads of their own.
+ * </p>
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class NioHttpTransport implements HttpTransport {
+
+    /**
+     * Default number of I/O threads
+     */
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    /**
+     * Default maximum number of connections per route
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 64;
+
+    /**
+     * Maximum number of direct buffers kept for the next exchanges
+     */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    final int maxConnectionsPerRoute;
+    final long idleTimeoutNanos;
+    final int connectTimeout;
+    final int readTimeout;
+    final SSLContext sslContext;
+    final BufferPool buffers;
+
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private final Map<PooledHttpTransport.Route, RoutePool> pools = new ConcurrentHashMap<>();
+    private volatile PooledHttpTransport socksTransport;
+    private volatile ExecutorService socksExecutor;
+    private volatile DnsCache dnsCache = DnsCache.getDefault();
+    private volatile boolean closed;
+
+    /**
+     * Create a NIO transport with the default settings
+     */
+    public NioHttpTransport() {
+        this(DEFAULT_IO_THREADS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * Create a NIO transport
+     *
+     * @param ioThreads
+     *            The number of I/O threads
+     * @param maxConnectionsPerRoute
+     *            The maximum number of open connections per route
+     */
+    public NioHttpTransport(int ioThreads, int maxConnectionsPerRoute) {
+        this(ioThreads, maxConnectionsPerRoute, PooledHttpTransport.DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+                PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT, PooledHttpTransport.DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Create a NIO transport
+     *
+     * @param ioThreads
+     *            The number of I/O threads
+     * @param maxConnectionsPerRoute
+     *            The maximum number of open connections per route
+     * @param idleTimeout
+     *            The time after which an idle connection is closed
+     * @param unit
+     *            The unit of the idle timeout
+     * @param connectTimeout
+     *            The connect timeout, in milliseconds, also bounding the wait for a free connection
+     * @param readTimeout
+     *            The read timeout, in milliseconds
+     */
+    public NioHttpTransport(int ioThreads, int maxConnectionsPerRoute, long idleTimeout, TimeUnit unit, int connectTimeout, int readTimeout) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("ioThreads must be at least 1");
+        }
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        try {
+            this.sslContext = SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No default TLS context", e);
+        }
+
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        this.buffers = new BufferPool(Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize()), MAX_POOLED_BUFFERS);
+
+        this.loops = new IoLoop[ioThreads];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                loops[i] = new IoLoop(this, "OpenAuth-NIO-" + THREAD_COUNT.incrementAndGet(), i == 0);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Could not open a selector", e);
+        }
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (request.getProxy().type() == Proxy.Type.SOCKS) {
+            return socksTransport().execute(request);
+        }
+
+        return await(executeAsync(request), request.getUrl());
+    }
+
+    @Override
+    public void prewarm(URL url, Proxy proxy) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        if (proxy.type() == Proxy.Type.SOCKS) {
+            socksTransport().prewarm(url, proxy);
+            return;
+        }
+
+        PooledHttpTransport.Route route = new PooledHttpTransport.Route(url, proxy);
+        Exchange exchange = new Exchange(null, null, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout), 0);
+
+        pools.computeIfAbsent(route, RoutePool::new).prewarm(exchange);
+        await(exchange.future, url);
+    }
+
+    private static <T> T await(CompletableFuture<T> future, URL url) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+        if (closed) {
+            return failed(new IOException("Transport is closed"));
+        }
+
+        if (request.getProxy().type() == Proxy.Type.SOCKS) {
+            return executeSocks(request);
+        }
+
+        PooledHttpTransport.Route route;
+        try {
+            route = new PooledHttpTransport.Route(request.getUrl(), request.getProxy());
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        byte[] head = PooledHttpTransport.encodeHead(request, route.proxy.type() == Proxy.Type.HTTP && !route.secure);
+        byte[] body = request.getBody();
+
+        byte[] payload = head;
+        if (body != null) {
+            payload = new byte[head.length + body.length];
+            System.arraycopy(head, 0, payload, 0, head.length);
+            System.arraycopy(body, 0, payload, head.length, body.length);
+        }
+
+        long now = System.nanoTime();
+        long expiry = request.getTimeout() > 0 ? now + TimeUnit.MILLISECONDS.toNanos(request.getTimeout()) : 0;
+
+        Exchange exchange = new Exchange(request, payload, now + TimeUnit.MILLISECONDS.toNanos(request.bound(connectTimeout)), expiry);
+        pools.computeIfAbsent(route, RoutePool::new).dispatch(exchange, false);
+
+        return exchange.future;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    /**
+     * Sets the cache of the addresses of the hosts, {@link DnsCache#getDefault()} by default
+     *
+     * @param dnsCache
+     *            The cache, or null to resolve the hosts on each new connection
+     */
+    public void setDnsCache(DnsCache dnsCache) {
+        this.dnsCache = dnsCache;
+    }
+
+    /**
+     * @return The cache of the addresses of the hosts, if any
+     */
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+
+    /**
+     * Closes the idle connections of every route that have not been used for longer than the idle timeout.
+     * The I/O threads also do it regularly.
+     */
+    public void closeIdleConnections() {
+        long now = System.nanoTime();
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.execute(() -> loop.closeIdle(now));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        for (RoutePool pool : pools.values()) {
+            pool.close();
+        }
+
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+
+        synchronized (this) {
+            if (socksTransport != null) {
+                socksTransport.close();
+                socksExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Fails the requests that have been waiting for a connection for longer than the connect timeout
+     */
+    void expireWaiting(long now) {
+        for (RoutePool pool : pools.values()) {
+            pool.expire(now);
+        }
+    }
+
+    private IoLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    private CompletableFuture<HttpResponse> executeSocks(HttpRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+
+        try {
+            PooledHttpTransport transport = socksTransport();
+            socksExecutor.execute(() -> {
+                try {
+                    future.complete(transport.execute(request));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private synchronized PooledHttpTransport socksTransport() {
+        if (socksTransport == null) {
+            AtomicInteger threads = new AtomicInteger();
+            socksExecutor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "OpenAuth-NIO-SOCKS-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            socksTransport = new PooledHttpTransport(maxConnectionsPerRoute, idleTimeoutNanos, TimeUnit.NANOSECONDS, connectTimeout, readTimeout);
+        }
+
+        return socksTransport;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+
+        return future;
+    }
+
+    /**
+     * A request to send, and the future of its response. Without request, the future of a connection opened
+     * ahead of time, completed with null once it is ready.
+     */
+    static final class Exchange {
+        final HttpRequest request;
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        private final byte[] payload;
+        private final long waitDeadline;
+
+        /**
+         * The time the request times out at whatever its progress, from {@link System#nanoTime()}, or 0 if it has no timeout
+         */
+        final long expiry;
+        boolean retried;
+
+        /**
+         * The addresses of the host that refused a connection for this exchange
+         */
+        int connectFailures;
+
+        Exchange(HttpRequest request, byte[] payload, long waitDeadline, long expiry) {
+            this.request = request;
+            this.payload = payload;
+            this.waitDeadline = waitDeadline;
+            this.expiry = expiry;
+        }
+
+        /**
+         * @return The head and body of the request, to write from the start
+         */
+        ByteBuffer payload() {
+            return ByteBuffer.wrap(payload);
+        }
+    }
+
+    /**
+     * The connections of a route: a count of the open ones, the idle ones most recently used first, and the
+     * requests waiting for one of them
+     */
+    final class RoutePool {
+        final PooledHttpTransport.Route route;
+
+        private final ArrayDeque<NioConnection> idle = new ArrayDeque<>();
+        private final ArrayDeque<Exchange> waiting = new ArrayDeque<>();
+        private int open;
+
+        /**
+         * The addresses of the host, or of its proxy, the connections are opened to the current one
+         */
+        private volatile InetSocketAddress[] addresses;
+        private volatile int current;
+
+        RoutePool(PooledHttpTransport.Route route) {
+            this.route = route;
+        }
+
+        /**
+         * Sends a request on an idle connection, a new one if there are less than the maximum, or queues it
+         *
+         * @param exchange
+         *            The request
+         * @param fromLoop
+         *            If called from an I/O thread, which must not resolve the host
+         */
+        void dispatch(Exchange exchange, boolean fromLoop) {
+            NioConnection connection;
+
+            synchronized (this) {
+                if (closed) {
+                    connection = null;
+                } else {
+                    connection = idle.pollFirst();
+                    if (connection == null) {
+                        if (open >= maxConnectionsPerRoute) {
+                            waiting.addLast(exchange);
+                            return;
+                        }
+
+                        open++;
+                    }
+                }
+            }
+
+            if (closed) {
+                exchange.future.completeExceptionally(new IOException("Transport is closed"));
+            } else if (connection != null) {
+                NioConnection leased = connection;
+                leased.getLoop().execute(() -> leased.start(exchange));
+            } else {
+                connect(exchange, fromLoop);
+            }
+        }
+
+        /**
+         * Opens a connection ahead of time, unless there already is an idle one or the route is full
+         *
+         * @param exchange
+         *            The exchange without request completed once the connection is ready
+         */
+        void prewarm(Exchange exchange) {
+            synchronized (this) {
+                if (closed || !idle.isEmpty() || open >= maxConnectionsPerRoute) {
+                    exchange.future.complete(null);
+                    return;
+                }
+
+                open++;
+            }
+
+            connect(exchange, false);
+        }
+
+        /**
+         * Opens a new connection for a request, its slot being already counted
+         */
+        private void connect(Exchange exchange, boolean fromLoop) {
+            InetSocketAddress target;
+            try {
+                target = resolve(fromLoop);
+            } catch (IOException e) {
+                exchange.future.completeExceptionally(e);
+                onClosed(null, null);
+
+                return;
+            }
+
+            IoLoop loop = nextLoop();
+            NioConnection connection = new NioConnection(NioHttpTransport.this, this, loop, target);
+            loop.execute(() -> connection.connect(exchange));
+        }
+
+        private InetSocketAddress resolve(boolean fromLoop) throws IOException {
+            InetSocketAddress[] resolved = addresses;
+            if (fromLoop && resolved != null) {
+                return resolved[current % resolved.length];
+            }
+
+            if (route.proxy.type() == Proxy.Type.HTTP) {
+                InetSocketAddress proxyAddress = (InetSocketAddress) route.proxy.address();
+
+                InetSocketAddress address = new InetSocketAddress(proxyAddress.getHostString(), proxyAddress.getPort());
+                if (address.isUnresolved()) {
+                    throw new UnknownHostException(proxyAddress.getHostString());
+                }
+
+                resolved = new InetSocketAddress[] {address};
+            } else {
+                DnsCache cache = dnsCache;
+                InetAddress[] hostAddresses = cache != null ? cache.resolve(route.host) : InetAddress.getAllByName(route.host);
+
+                resolved = new InetSocketAddress[hostAddresses.length];
+                for (int i = 0; i < hostAddresses.length; i++) {
+                    resolved[i] = new InetSocketAddress(hostAddresses[i], route.port);
+                }
+            }
+
+            addresses = resolved;
+            return resolved[current % resolved.length];
+        }
+
+        /**
+         * Moves the next connections to the next address of the host, after a connection to the given one failed.
+         * Once every address failed for an exchange, they are removed from the DNS cache as they may have changed.
+         * Called on the I/O thread of the connection.
+         *
+         * @param address
+         *            The address that refused the connection
+         * @param exchange
+         *            The exchange of the connection
+         *
+         * @return If the exchange can be sent again to another address
+         */
+        boolean onConnectFailed(InetSocketAddress address, Exchange exchange) {
+            InetSocketAddress[] resolved = addresses;
+            if (route.proxy.type() != Proxy.Type.DIRECT || resolved == null) {
+                return false;
+            }
+
+            synchronized (this) {
+                if (address.equals(resolved[current % resolved.length])) {
+                    current = (current + 1) % resolved.length;
+                }
+            }
+
+            if (++exchange.connectFailures < resolved.length) {
+                return true;
+            }
+
+            DnsCache cache = dnsCache;
+            if (cache != null) {
+                cache.invalidate(route.host);
+            }
+            addresses = null;
+
+            return false;
+        }
+
+        /**
+         * Gives a connection that finished its exchange to the next waiting request, or keeps it idle.
+         * Called on the I/O thread of the connection.
+         */
+        void recycle(NioConnection connection) {
+            Exchange next = null;
+
+            synchronized (this) {
+                if (!closed) {
+                    next = pollWaiting();
+                    if (next == null) {
+                        idle.addFirst(connection);
+                        return;
+                    }
+                }
+            }
+
+            if (next != null) {
+                connection.start(next);
+            } else {
+                connection.close();
+            }
+        }
+
+        /**
+         * Frees the slot of a closed connection, for the retried request if any, or the next waiting one.
+         * Called on the I/O thread of the connection.
+         */
+        void onClosed(NioConnection connection, Exchange retry) {
+            Exchange next;
+
+            synchronized (this) {
+                if (connection != null) {
+                    idle.remove(connection);
+                }
+
+                open--;
+
+                next = retry != null ? retry : closed ? null : pollWaiting();
+                if (next != null) {
+                    open++;
+                }
+            }
+
+            if (next != null) {
+                // From another task, so that a series of failing connections doesn't recurse
+                Exchange exchange = next;
+                nextLoop().execute(() -> connect(exchange, true));
+            }
+        }
+
+        /**
+         * Takes an idle connection out of the pool, to close it
+         *
+         * @return If the connection was idle, false if it was leased in the meantime
+         */
+        synchronized boolean takeIdle(NioConnection connection) {
+            return idle.remove(connection);
+        }
+
+        private Exchange pollWaiting() {
+            Exchange exchange;
+            while ((exchange = waiting.pollFirst()) != null) {
+                if (!exchange.future.isDone()) {
+                    return exchange;
+                }
+            }
+
+            return null;
+        }
+
+        void expire(long now) {
+            List<Exchange> expired = null;
+
+            synchronized (this) {
+                Iterator<Exchange> iterator = waiting.iterator();
+                while (iterator.hasNext()) {
+                    Exchange exchange = iterator.next();
+                    if (exchange.future.isDone() || now - exchange.waitDeadline >= 0) {
+                        iterator.remove();
+
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(exchange);
+                    }
+                }
+            }
+
+            if (expired != null) {
+                for (Exchange exchange : expired) {
+                    exchange.future.completeExceptionally(new SocketTimeoutException("Timed out waiting for a pooled connection"));
+                }
+            }
+        }
+
+        void close() {
+            List<Exchange> pending;
+
+            synchronized (this) {
+                pending = new ArrayList<>(waiting);
+                waiting.clear();
+            }
+
+            for (Exchange exchange : pending) {
+                exchange.future.completeExceptionally(new IOException("Transport is closed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,977 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled HTTP Transport
+ *
+ * <p>
+ *     The default {@link HttpTransport}: a HTTP/1.1 client keeping a bounded pool of persistent
+ *     connections per route (scheme, host, port and proxy), so that successive requests to the same
+ *     auth server don't pay the TCP and TLS handshakes again.
+ * </p>
+ *
+ * <p>
+ *     At most {@code maxConnectionsPerRoute} connections are open to a route at once, callers wait for
+ *     a free one beyond that. Connections idle for longer than the idle timeout are closed the next time
+ *     their route is used, when {@link #closeIdleConnections()} is called, or by a background thread
+ *     checking every open transport every few seconds, so that a transport that is never closed doesn't
+ *     keep its connections.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    /**
+     * Default maximum number of connections per route
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+
+    /**
+     * Default time (in milliseconds) after which an idle connection is closed
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000; // 30s
+
+    /**
+     * Default connect timeout (in milliseconds)
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000; // 30s
+
+    /**
+     * Default read timeout (in milliseconds)
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 60 * 1000; // 60s
+
+    /**
+     * Maximum number of bytes drained from a response body closed before its end to keep its connection
+     */
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    /**
+     * Interval (in milliseconds) at which the idle connections of the open transports are closed in the background
+     */
+    private static final long REAP_INTERVAL = 5 * 1000; // 5s
+
+    /**
+     * The open transports, weakly referenced so that the ones that are never closed can still be collected
+     */
+    private static final Queue<WeakReference<PooledHttpTransport>> TRANSPORTS = new ConcurrentLinkedQueue<>();
+
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "OpenAuth-Pool-Reaper");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    static {
+        REAPER.scheduleWithFixedDelay(PooledHttpTransport::reap, REAP_INTERVAL, REAP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private final int maxConnectionsPerRoute;
+    private final long idleTimeoutNanos;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private volatile DnsCache dnsCache = DnsCache.getDefault();
+
+    private final Map<Route, RoutePool> pools = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Create a pooled transport with the default settings
+     */
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a pooled transport
+     *
+     * @param maxConnectionsPerRoute
+     *            The maximum number of open connections per route
+     * @param idleTimeout
+     *            The time after which an idle connection is closed
+     * @param unit
+     *            The unit of the idle timeout
+     */
+    public PooledHttpTransport(int maxConnectionsPerRoute, long idleTimeout, TimeUnit unit) {
+        this(maxConnectionsPerRoute, idleTimeout, unit, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Create a pooled transport
+     *
+     * @param maxConnectionsPerRoute
+     *            The maximum number of open connections per route
+     * @param idleTimeout
+     *            The time after which an idle connection is closed
+     * @param unit
+     *            The unit of the idle timeout
+     * @param connectTimeout
+     *            The connect timeout, in milliseconds
+     * @param readTimeout
+     *            The read timeout, in milliseconds
+     */
+    public PooledHttpTransport(int maxConnectionsPerRoute, long idleTimeout, TimeUnit unit, int connectTimeout, int readTimeout) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        TRANSPORTS.add(new WeakReference<>(this));
+    }
+
+    /**
+     * Closes the expired idle connections of the open transports, and forgets the closed or collected ones
+     */
+    private static void reap() {
+        Iterator<WeakReference<PooledHttpTransport>> iterator = TRANSPORTS.iterator();
+        while (iterator.hasNext()) {
+            PooledHttpTransport transport = iterator.next().get();
+            if (transport == null || transport.closed) {
+                iterator.remove();
+                continue;
+            }
+
+            try {
+                transport.closeIdleConnections();
+            } catch (RuntimeException ignored) {
+                // Tried again on the next run, which an exception would cancel
+            }
+        }
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        URL url = request.getUrl();
+        Route route = new Route(url, request.getProxy());
+        RoutePool pool = pools.computeIfAbsent(route, r -> new RoutePool());
+
+        pool.acquire();
+
+        Connection connection = null;
+        try {
+            connection = pool.pollIdle();
+
+            if (connection != null) {
+                try {
+                    return exchange(pool, connection, request, true);
+                } catch (StaleConnectionException e) {
+                    // The server closed the idle connection in the meantime, without reading the request: try once on a new one
+                    connection.close();
+                    connection = null;
+                }
+            }
+
+            connection = open(route, request.bound(connectTimeout), request.bound(readTimeout));
+            return exchange(pool, connection, request, false);
+        } catch (IOException | RuntimeException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            pool.release();
+
+            throw e;
+        }
+    }
+
+    @Override
+    public void prewarm(URL url, Proxy proxy) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        Route route = new Route(url, proxy);
+        RoutePool pool = pools.computeIfAbsent(route, r -> new RoutePool());
+        if (!pool.idle.isEmpty()) {
+            return;
+        }
+
+        pool.acquire();
+
+        Connection connection;
+        try {
+            connection = open(route, connectTimeout, readTimeout);
+        } catch (IOException | RuntimeException e) {
+            pool.release();
+            throw e;
+        }
+
+        pool.recycle(connection);
+    }
+
+    /**
+     * Closes the idle connections of every route that have not been used for longer than the idle timeout
+     */
+    public void closeIdleConnections() {
+        for (RoutePool pool : pools.values()) {
+            pool.evictExpired();
+        }
+    }
+
+    /**
+     * Sets the cache of the addresses of the hosts, {@link DnsCache#getDefault()} by default
+     *
+     * @param dnsCache
+     *            The cache, or null to resolve the hosts on each new connection
+     */
+    public void setDnsCache(DnsCache dnsCache) {
+        this.dnsCache = dnsCache;
+    }
+
+    /**
+     * @return The cache of the addresses of the hosts, if any
+     */
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        for (RoutePool pool : pools.values()) {
+            Connection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the request on the given connection and reads the response head. The permit of the pool is
+     * released when the response body is fully read or closed.
+     *
+     * @throws StaleConnectionException If the connection was reused, and failed before anything of the
+     *                                  response was received (except by a timeout)
+     */
+    private HttpResponse exchange(RoutePool pool, Connection connection, HttpRequest request, boolean reused) throws IOException {
+        byte[] body = request.getBody();
+        InputStream in = connection.in;
+
+        try {
+            // Set again on each request, the previous one may have had a shorter timeout
+            connection.socket.setSoTimeout(request.bound(readTimeout));
+
+            OutputStream out = connection.out;
+            out.write(encodeHead(request, connection.route.proxy.type() == Proxy.Type.HTTP && !connection.route.secure));
+            if (body != null) {
+                out.write(body);
+            }
+            out.flush();
+
+            in.mark(1);
+            if (in.read() == -1) {
+                throw new EOFException("Connection closed by the server before sending a response");
+            }
+            in.reset();
+        } catch (SocketTimeoutException e) {
+            // The server may be processing the request
+            throw e;
+        } catch (IOException e) {
+            if (reused) {
+                throw new StaleConnectionException(e);
+            }
+
+            throw e;
+        }
+
+        int status;
+        Map<String, String> headers;
+
+        do {
+            String statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed by the server before sending a response");
+            }
+
+            status = parseStatus(statusLine);
+            headers = readHeaders(in);
+        } while (status >= 100 && status < 200);
+
+        boolean keepAlive = !"close".equalsIgnoreCase(headers.get("Connection"));
+        InputStream content;
+
+        String length = headers.get("Content-Length");
+        if ("HEAD".equals(request.getMethod()) || status == 204 || status == 304) {
+            content = new FixedLengthInputStream(in, 0);
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            content = new ChunkedInputStream(in);
+        } else if (length != null) {
+            try {
+                content = new FixedLengthInputStream(in, Long.parseLong(length.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length : " + length);
+            }
+        } else {
+            // Body delimited by the end of the connection
+            content = in;
+            keepAlive = false;
+        }
+
+        return ContentEncoding.decode(request, new HttpResponse(status, headers, new ResponseBody(content, pool, connection, keepAlive)));
+    }
+
+    /**
+     * Opens a new connection to the given route, going through its proxy and establishing TLS if needed
+     */
+    private Connection open(Route route, int connectTimeout, int readTimeout) throws IOException {
+        Socket socket;
+
+        switch (route.proxy.type()) {
+            case SOCKS:
+                socket = connect(new Socket(route.proxy), InetSocketAddress.createUnresolved(route.host, route.port), connectTimeout);
+                break;
+            case HTTP:
+                socket = connect(new Socket(), route.proxy.address(), connectTimeout);
+                break;
+            default:
+                socket = connect(route, connectTimeout);
+        }
+
+        try {
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+
+            if (route.secure) {
+                if (route.proxy.type() == Proxy.Type.HTTP) {
+                    tunnel(socket, route);
+                }
+
+                // Created by the JDK on the first secure connection only (loading the trust store takes hundreds of milliseconds), then cached
+                SSLSocketFactory sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, route.host, route.port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.startHandshake();
+
+                socket = sslSocket;
+            }
+
+            return new Connection(route, socket);
+        } catch (IOException | RuntimeException e) {
+            close(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Connects directly to the host of a route, trying its addresses in order until one accepts the connection.
+     * If none does, they are removed from the DNS cache, as they may have changed.
+     */
+    private Socket connect(Route route, int connectTimeout) throws IOException {
+        DnsCache cache = this.dnsCache;
+        InetAddress[] addresses = cache != null ? cache.resolve(route.host) : InetAddress.getAllByName(route.host);
+
+        // The addresses share the connect timeout, so that trying them all can't take longer
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+        IOException failure = null;
+
+        for (InetAddress address : addresses) {
+            int timeout = connectTimeout;
+            if (connectTimeout != 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+
+                timeout = (int) remaining;
+            }
+
+            try {
+                return connect(new Socket(), new InetSocketAddress(address, route.port), timeout);
+            } catch (IOException e) {
+                if (failure != null) {
+                    e.addSuppressed(failure);
+                }
+
+                failure = e;
+            }
+        }
+
+        if (cache != null) {
+            cache.invalidate(route.host);
+        }
+
+        throw failure != null ? failure : new ConnectException("Connect timed out : " + route.host + ':' + route.port);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+
+    /**
+     * Connects a socket, closing it if it fails
+     */
+    private static Socket connect(Socket socket, SocketAddress address, int connectTimeout) throws IOException {
+        try {
+            socket.connect(address, connectTimeout);
+            return socket;
+        } catch (SocketTimeoutException e) {
+            // Reported as a connect failure, so that it can't be mistaken for a read timeout
+            ConnectException exception = new ConnectException("Connect timed out : " + address);
+            exception.initCause(e);
+
+            close(socket);
+            throw exception;
+        } catch (IOException | RuntimeException e) {
+            close(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a tunnel to the route through its HTTP proxy
+     */
+    private void tunnel(Socket socket, Route route) throws IOException {
+        String authority = route.host + ':' + route.port;
+        OutputStream out = socket.getOutputStream();
+        out.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        String statusLine = readLine(in);
+        if (statusLine == null) {
+            throw new EOFException("Proxy closed the connection");
+        }
+
+        int status = parseStatus(statusLine);
+        readHeaders(in);
+
+        if (status != 200) {
+            throw new IOException("Proxy refused to tunnel to " + authority + " : " + statusLine);
+        }
+    }
+
+    /**
+     * Encodes the head of a HTTP/1.1 request, asking to keep the connection alive and for a compressed body
+     *
+     * @param request
+     *            The request
+     * @param absoluteUri
+     *            If the request target is the whole URL, as sent to HTTP proxies, instead of its path
+     *
+     * @return The head, up to the blank line before the body
+     */
+    static byte[] encodeHead(HttpRequest request, boolean absoluteUri) {
+        URL url = request.getUrl();
+        byte[] body = request.getBody();
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ');
+
+        if (absoluteUri) {
+            head.append(url.toExternalForm());
+        } else {
+            String file = url.getFile();
+            head.append(file.isEmpty() ? "/" : file);
+        }
+
+        head.append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1) {
+            head.append(':').append(url.getPort());
+        }
+        head.append("\r\n");
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+
+        if (ContentEncoding.isNegotiated(request)) {
+            head.append("Accept-Encoding: ").append(ContentEncoding.ACCEPT_ENCODING).append("\r\n");
+        }
+
+        if (body != null) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("Connection: keep-alive\r\n\r\n");
+
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static int parseStatus(String statusLine) throws IOException {
+        int start = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || start == -1 || statusLine.length() < start + 4) {
+            throw new IOException("Invalid status line : " + statusLine);
+        }
+
+        try {
+            return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status line : " + statusLine);
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            parseHeader(line, headers);
+        }
+
+        if (line == null) {
+            throw new EOFException("Connection closed by the server in the middle of the headers");
+        }
+
+        return headers;
+    }
+
+    /**
+     * Adds a header line to the headers, the values of repeated headers being joined by commas
+     */
+    static void parseHeader(String line, Map<String, String> headers) {
+        int separator = line.indexOf(':');
+        if (separator > 0) {
+            String name = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+
+            headers.merge(name, value, (previous, next) -> previous + ", " + next);
+        }
+    }
+
+    /**
+     * Reads a CRLF terminated line, returns null if the stream ended before any byte
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+
+                return line.toString();
+            }
+
+            line.append((char) b);
+        }
+
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * A pool key: connections can only be reused for the same scheme, host, port and proxy
+     */
+    static final class Route {
+        final boolean secure;
+        final String host;
+        final int port;
+        final Proxy proxy;
+
+        Route(URL url, Proxy proxy) throws IOException {
+            String protocol = url.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) {
+                throw new MalformedURLException("Unsupported protocol : " + protocol);
+            }
+
+            this.secure = "https".equals(protocol);
+            this.host = url.getHost();
+            this.port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            this.proxy = proxy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Route)) {
+                return false;
+            }
+
+            Route route = (Route) o;
+            return secure == route.secure && port == route.port && host.equalsIgnoreCase(route.host) && proxy.equals(route.proxy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(secure, host.toLowerCase(), port, proxy);
+        }
+    }
+
+    /**
+     * The connections of a route: a permit is held for each leased connection, idle ones are kept
+     * most recently used first
+     */
+    private final class RoutePool {
+        private final Semaphore permits = new Semaphore(maxConnectionsPerRoute, true);
+        private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+        void acquire() throws IOException {
+            try {
+                if (!permits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("Timed out waiting for a pooled connection");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a pooled connection");
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        Connection pollIdle() {
+            evictExpired();
+
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (!connection.socket.isClosed() && !connection.socket.isInputShutdown()) {
+                    return connection;
+                }
+
+                connection.close();
+            }
+
+            return null;
+        }
+
+        void recycle(Connection connection) {
+            if (closed || idle.size() >= maxConnectionsPerRoute) {
+                connection.close();
+            } else {
+                connection.lastUsed = System.nanoTime();
+                idle.offerFirst(connection);
+            }
+
+            release();
+        }
+
+        void evictExpired() {
+            long now = System.nanoTime();
+
+            Iterator<Connection> iterator = idle.descendingIterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next();
+                if (now - connection.lastUsed < idleTimeoutNanos) {
+                    break;
+                }
+
+                if (idle.removeLastOccurrence(connection)) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The failure of a reused connection, that the server closed before reading the request
+     */
+    private static final class StaleConnectionException extends IOException {
+        StaleConnectionException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * An open connection to a route
+     */
+    private static final class Connection {
+        private final Route route;
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private volatile long lastUsed;
+
+        Connection(Route route, Socket socket) throws IOException {
+            this.route = route;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            this.lastUsed = System.nanoTime();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /**
+     * The body of a response, giving its connection back to the pool once fully read or closed
+     */
+    private static final class ResponseBody extends FilterInputStream {
+        private final RoutePool pool;
+        private final Connection connection;
+        private final boolean keepAlive;
+        private boolean released;
+
+        ResponseBody(InputStream content, RoutePool pool, Connection connection, boolean keepAlive) {
+            super(content);
+            this.pool = pool;
+            this.connection = connection;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = fail(() -> in.read());
+            if (b == -1) {
+                release(true);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = fail(() -> in.read(b, off, len));
+            if (read == -1) {
+                release(true);
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return fail(() -> in.skip(n));
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+
+            boolean complete = false;
+            if (keepAlive) {
+                try {
+                    byte[] buffer = new byte[4096];
+                    int drained = 0;
+                    int read;
+
+                    while (drained < MAX_DRAIN && (read = in.read(buffer)) != -1) {
+                        drained += read;
+                    }
+
+                    complete = drained < MAX_DRAIN;
+                } catch (IOException ignored) {
+                    // Can't reuse the connection
+                }
+            }
+
+            release(complete);
+        }
+
+        private void release(boolean complete) {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            if (complete && keepAlive) {
+                pool.recycle(connection);
+            } else {
+                connection.close();
+                pool.release();
+            }
+        }
+
+        private <T> T fail(IOSupplier<T> action) throws IOException {
+            try {
+                return action.get();
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @FunctionalInterface
+        private interface IOSupplier<T> {
+            T get() throws IOException;
+        }
+    }
+
+    /**
+     * A body delimited by a Content-Length header
+     */
+    private static final class FixedLengthInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Response body ended before its Content-Length");
+            }
+
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Response body ended before its Content-Length");
+            }
+
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    /**
+     * A body using the chunked transfer encoding
+     */
+    private static final class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Response body ended in the middle of a chunk");
+            }
+
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Response body ended in the middle of a chunk");
+            }
+
+            remaining -= read;
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (remaining > 0) {
+                return true;
+            }
+
+            String line = readLine(in);
+            if (line != null && line.isEmpty()) {
+                // CRLF ending the previous chunk
+                line = readLine(in);
+            }
+            if (line == null) {
+                throw new EOFException("Response body ended before its last chunk");
+            }
+
+            int extension = line.indexOf(';');
+            try {
+                remaining = Long.parseLong((extension != -1 ? line.substring(0, extension) : line).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size : " + line);
+            }
+
+            if (remaining == 0) {
+                // Trailers
+                readHeaders(in);
+                eof = true;
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Response Parser
+ *
+ * <p>
+ *     Parses a HTTP/1.1 response as its bytes arrive, for the non-blocking connections of a
+ *     {@link NioHttpTransport}. The body is buffered entirely, dechunked if needed.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class ResponseParser {
+
+    /**
+     * Maximum length of the status line and of each header line
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Maximum size of a body, the login pages of Microsoft being the largest ones
+     */
+    private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private static final int STATUS_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILERS = 6;
+    private static final int UNTIL_EOF = 7;
+    private static final int DONE = 8;
+
+    private final boolean noBody;
+    private final boolean tunnel;
+
+    private final StringBuilder line = new StringBuilder(64);
+    private boolean lineComplete;
+    private int state = STATUS_LINE;
+    private boolean started;
+
+    private int status;
+    private boolean http10;
+    private Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private boolean keepAlive;
+
+    private byte[] body = new byte[0];
+    private int length;
+    private long remaining;
+
+    /**
+     * @param noBody
+     *            If the response has no body whatever its headers, like the ones of HEAD requests
+     * @param tunnel
+     *            If the response is the one of a CONNECT request to a proxy, that has no body when successful
+     */
+    ResponseParser(boolean noBody, boolean tunnel) {
+        this.noBody = noBody;
+        this.tunnel = tunnel;
+    }
+
+    /**
+     * Parses the given bytes, up to the end of the response
+     *
+     * @param in
+     *            The received bytes, left after the end of the response if there are more
+     *
+     * @throws IOException If the response is invalid or too large
+     */
+    void feed(ByteBuffer in) throws IOException {
+        if (in.hasRemaining()) {
+            started = true;
+        }
+
+        while (in.hasRemaining() && state != DONE) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(in) && line.length() > 0) {
+                        String statusLine = line.toString();
+                        status = PooledHttpTransport.parseStatus(statusLine);
+                        http10 = statusLine.startsWith("HTTP/1.0");
+                        state = HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(in)) {
+                        if (line.length() == 0) {
+                            endHeaders();
+                        } else {
+                            PooledHttpTransport.parseHeader(line.toString(), headers);
+                        }
+                    }
+                    break;
+                case BODY:
+                case CHUNK:
+                    int count = (int) Math.min(remaining, in.remaining());
+                    in.get(body, length, count);
+                    length += count;
+                    remaining -= count;
+
+                    if (remaining == 0) {
+                        state = state == BODY ? DONE : CHUNK_END;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(in)) {
+                        startChunk(line.toString());
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(in)) {
+                        state = CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (readLine(in) && line.length() == 0) {
+                        state = DONE;
+                    }
+                    break;
+                case UNTIL_EOF:
+                    int available = in.remaining();
+                    ensureCapacity((long) length + available);
+                    in.get(body, length, available);
+                    length += available;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state " + state);
+            }
+        }
+    }
+
+    /**
+     * Notifies the end of the connection, which ends the bodies delimited by it
+     */
+    void onEndOfStream() {
+        if (state == UNTIL_EOF) {
+            state = DONE;
+        }
+    }
+
+    private void endHeaders() throws IOException {
+        if (status >= 100 && status < 200) {
+            // Interim response, the final one follows
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            state = STATUS_LINE;
+            return;
+        }
+
+        String connection = headers.get("Connection");
+        keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connection) : !"close".equalsIgnoreCase(connection);
+
+        String contentLength = headers.get("Content-Length");
+        if (noBody || status == 204 || status == 304 || (tunnel && status / 100 == 2)) {
+            state = DONE;
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            state = CHUNK_SIZE;
+        } else if (contentLength != null) {
+            long size;
+            try {
+                size = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length : " + contentLength);
+            }
+
+            if (size < 0) {
+                throw new IOException("Invalid Content-Length : " + contentLength);
+            }
+
+            ensureCapacity(size);
+            remaining = size;
+            state = size == 0 ? DONE : BODY;
+        } else {
+            // Body delimited by the end of the connection
+            keepAlive = false;
+            state = UNTIL_EOF;
+        }
+    }
+
+    private void startChunk(String sizeLine) throws IOException {
+        int extension = sizeLine.indexOf(';');
+        String hex = (extension != -1 ? sizeLine.substring(0, extension) : sizeLine).trim();
+
+        long size;
+        try {
+            size = Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size : " + sizeLine);
+        }
+
+        if (size < 0) {
+            throw new IOException("Invalid chunk size : " + sizeLine);
+        }
+
+        if (size == 0) {
+            state = TRAILERS;
+        } else {
+            ensureCapacity(length + size);
+            remaining = size;
+            state = CHUNK;
+        }
+    }
+
+    /**
+     * Reads up to the end of the current line, returns true if it was reached
+     */
+    private boolean readLine(ByteBuffer in) throws IOException {
+        if (lineComplete) {
+            line.setLength(0);
+            lineComplete = false;
+        }
+
+        while (in.hasRemaining()) {
+            char c = (char) (in.get() & 0xFF);
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    end--;
+                }
+
+                line.setLength(end);
+                lineComplete = true;
+
+                return true;
+            }
+
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Response line too long");
+            }
+
+            line.append(c);
+        }
+
+        return false;
+    }
+
+    private void ensureCapacity(long capacity) throws IOException {
+        if (capacity > MAX_BODY_SIZE) {
+            throw new IOException("Response body too large (over " + MAX_BODY_SIZE + " bytes)");
+        }
+
+        if (capacity > body.length) {
+            body = Arrays.copyOf(body, (int) Math.min(MAX_BODY_SIZE, Math.max(capacity, body.length * 2L)));
+        }
+    }
+
+    /**
+     * @return If some bytes of the response were received
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return If the whole response was received
+     */
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    /**
+     * @return If the connection can be reused for another request
+     */
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+/**
+ * Bulk Validation Listener
+ *
+ * <p>
+ *     Receives the results of a {@link BulkValidator} as soon as they are available. Its methods are
+ *     called from the threads running the requests, but never concurrently for a same validation.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public interface BulkValidationListener {
+
+    /**
+     * Called when a token validation is done
+     *
+     * @param result
+     *            The result of the validation
+     */
+    void onResult(TokenValidation result);
+
+    /**
+     * Called after each result
+     *
+     * @param completed
+     *            The number of validated tokens so far
+     * @param total
+     *            The total number of tokens to validate, or -1 if unknown
+     */
+    default void onProgress(long completed, long total) {
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+/**
+ * Bulk Validation Summary
+ *
+ * <p>
+ *     The counts of a finished {@link BulkValidator} validation
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class BulkValidationSummary {
+
+    /**
+     * The number of valid tokens
+     */
+    private final long valid;
+
+    /**
+     * The number of invalid tokens
+     */
+    private final long invalid;
+
+    /**
+     * The number of tokens whose validation failed
+     */
+    private final long errors;
+
+    /**
+     * Bulk Validation Summary constructor
+     *
+     * @param valid
+     *            The number of valid tokens
+     * @param invalid
+     *            The number of invalid tokens
+     * @param errors
+     *            The number of tokens whose validation failed
+     */
+    public BulkValidationSummary(long valid, long invalid, long errors) {
+        this.valid = valid;
+        this.invalid = invalid;
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the number of valid tokens
+     *
+     * @return The valid count
+     */
+    public long getValid() {
+        return this.valid;
+    }
+
+    /**
+     * Returns the number of invalid tokens
+     *
+     * @return The invalid count
+     */
+    public long getInvalid() {
+        return this.invalid;
+    }
+
+    /**
+     * Returns the number of tokens whose validation failed
+     *
+     * @return The error count
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Returns the total number of validated tokens
+     *
+     * @return The total count
+     */
+    public long getTotal() {
+        return this.valid + this.invalid + this.errors;
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+import fr.litarvan.openauth.Authenticator;
+
+import java.net.Proxy;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Bulk Validator
+ *
+ * <p>
+ *     Validates large batches of access tokens through {@link Authenticator#validateAsync(String, Proxy)},
+ *     keeping at most a fixed number of requests in flight. Tokens are pulled lazily from their source,
+ *     and each result is given to a {@link BulkValidationListener} as soon as it is known.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class BulkValidator {
+
+    /**
+     * The authenticator sending the validate requests
+     */
+    private final Authenticator authenticator;
+
+    /**
+     * The maximum number of requests in flight
+     */
+    private final int concurrency;
+
+    /**
+     * The proxy to use
+     */
+    private final Proxy proxy;
+
+    /**
+     * Create a bulk validator
+     *
+     * @param authenticator
+     *            The authenticator sending the validate requests
+     * @param concurrency
+     *            The maximum number of requests in flight
+     */
+    public BulkValidator(Authenticator authenticator, int concurrency) {
+        this(authenticator, concurrency, Proxy.NO_PROXY);
+    }
+
+    /**
+     * Create a bulk validator
+     *
+     * @param authenticator
+     *            The authenticator sending the validate requests
+     * @param concurrency
+     *            The maximum number of requests in flight
+     * @param proxy
+     *            The proxy to use (optional)
+     */
+    public BulkValidator(Authenticator authenticator, int concurrency, Proxy proxy) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+
+        this.authenticator = authenticator;
+        this.concurrency = concurrency;
+        this.proxy = proxy;
+    }
+
+    /**
+     * Validates a collection of access tokens
+     *
+     * @param accessTokens
+     *            The tokens to validate
+     * @param listener
+     *            The listener receiving the results as they complete
+     *
+     * @return A future resolved by the counts of the validation once every token is validated
+     */
+    public CompletableFuture<BulkValidationSummary> validate(Collection<String> accessTokens, BulkValidationListener listener) {
+        return validate(accessTokens.iterator(), accessTokens.size(), listener);
+    }
+
+    /**
+     * Validates a stream of access tokens, consumed lazily
+     *
+     * @param accessTokens
+     *            The tokens to validate
+     * @param listener
+     *            The listener receiving the results as they complete
+     *
+     * @return A future resolved by the counts of the validation once every token is validated
+     */
+    public CompletableFuture<BulkValidationSummary> validate(Stream<String> accessTokens, BulkValidationListener listener) {
+        return validate(accessTokens.iterator(), -1, listener);
+    }
+
+    /**
+     * Validates access tokens, pulled lazily from an iterator. Cancelling the returned future stops
+     * sending new requests, and a null token fails it with a {@link NullPointerException}.
+     *
+     * @param accessTokens
+     *            The tokens to validate, the iterator is only used by one thread at a time
+     * @param total
+     *            The number of tokens, or -1 if unknown (only given to the listener)
+     * @param listener
+     *            The listener receiving the results as they complete
+     *
+     * @return A future resolved by the counts of the validation once every token is validated
+     */
+    public CompletableFuture<BulkValidationSummary> validate(Iterator<String> accessTokens, long total, BulkValidationListener listener) {
+        Job job = new Job(accessTokens, total, listener);
+        job.pump();
+
+        return job.future;
+    }
+
+    /**
+     * A running bulk validation
+     */
+    private final class Job {
+        private final Iterator<String> tokens;
+        private final long total;
+        private final BulkValidationListener listener;
+        private final CompletableFuture<BulkValidationSummary> future = new CompletableFuture<>();
+
+        /**
+         * Requests to pump, used to launch requests in a loop instead of recursively when they complete
+         * on the launching thread
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Deliveries to run, the listener being called by one thread at a time outside of the lock of the job
+         */
+        private final AtomicInteger delivering = new AtomicInteger();
+
+        // Guarded by this
+        private int running;
+        private boolean exhausted;
+        private long valid;
+        private long invalid;
+        private long errors;
+        private final ArrayDeque<Delivery> deliveries = new ArrayDeque<>();
+        private int undelivered;
+
+        Job(Iterator<String> tokens, long total, BulkValidationListener listener) {
+            this.tokens = tokens;
+            this.total = total;
+            this.listener = listener;
+        }
+
+        void pump() {
+            if (pending.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                String token;
+                while ((token = next()) != null) {
+                    String accessToken = token;
+                    authenticator.validateAsync(accessToken, proxy).whenComplete((result, failure) -> {
+                        if (failure instanceof CompletionException && failure.getCause() != null) {
+                            failure = failure.getCause();
+                        }
+
+                        done(failure == null
+                                ? new TokenValidation(accessToken, TokenValidation.Status.VALID, null, null)
+                                : TokenValidation.failed(accessToken, failure));
+                    });
+                }
+            } while (pending.decrementAndGet() != 0);
+        }
+
+        /**
+         * Takes the next token to validate if a request slot is free
+         */
+        private synchronized String next() {
+            if (exhausted || running >= concurrency) {
+                return null;
+            }
+
+            if (future.isDone()) {
+                exhausted = true;
+                return null;
+            }
+
+            try {
+                if (!tokens.hasNext()) {
+                    exhausted = true;
+                    completeIfDone();
+
+                    return null;
+                }
+
+                String token = tokens.next();
+                if (token == null) {
+                    throw new NullPointerException("The access tokens contain a null token");
+                }
+
+                running++;
+                return token;
+            } catch (RuntimeException e) {
+                exhausted = true;
+                future.completeExceptionally(e);
+
+                return null;
+            }
+        }
+
+        private void done(TokenValidation result) {
+            synchronized (this) {
+                running--;
+
+                switch (result.getStatus()) {
+                    case VALID:
+                        valid++;
+                        break;
+                    case INVALID:
+                        invalid++;
+                        break;
+                    default:
+                        errors++;
+                }
+
+                // Queued in order, so that the progress given to the listener never goes backwards
+                deliveries.add(new Delivery(result, valid + invalid + errors));
+                undelivered++;
+            }
+
+            deliver();
+            pump();
+        }
+
+        /**
+         * Gives the queued results to the listener, unless another thread is already doing it
+         */
+        private void deliver() {
+            if (delivering.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                Delivery delivery;
+                while ((delivery = poll()) != null) {
+                    if (!future.isDone()) {
+                        try {
+                            listener.onResult(delivery.result);
+                            listener.onProgress(delivery.completed, total);
+                        } catch (RuntimeException e) {
+                            synchronized (this) {
+                                exhausted = true;
+                            }
+
+                            future.completeExceptionally(e);
+                        }
+                    }
+
+                    synchronized (this) {
+                        undelivered--;
+                        completeIfDone();
+                    }
+                }
+            } while (delivering.decrementAndGet() != 0);
+        }
+
+        private synchronized Delivery poll() {
+            return deliveries.poll();
+        }
+
+        private void completeIfDone() {
+            if (exhausted && running == 0 && undelivered == 0) {
+                future.complete(new BulkValidationSummary(valid, invalid, errors));
+            }
+        }
+    }
+
+    /**
+     * A result waiting to be given to the listener
+     */
+    private static final class Delivery {
+        private final TokenValidation result;
+        private final long completed;
+
+        Delivery(TokenValidation result, long completed) {
+            this.result = result;
+            this.completed = completed;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.model.AuthError;
+
+/**
+ * Token Validation
+ *
+ * <p>
+ *     The result of the validation of one access token by a {@link BulkValidator}
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class TokenValidation {
+
+    /**
+     * The outcome of a validation
+     */
+    public enum Status {
+        /**
+         * The server accepted the token
+         */
+        VALID,
+
+        /**
+         * The server rejected the token
+         */
+        INVALID,
+
+        /**
+         * The server could not be reached, or did not answer with a proper error
+         */
+        ERROR
+    }
+
+    /**
+     * The validated access token
+     */
+    private final String accessToken;
+
+    /**
+     * The outcome of the validation
+     */
+    private final Status status;
+
+    /**
+     * The error returned by the server or describing the failure (null if valid)
+     */
+    private final AuthError error;
+
+    /**
+     * The exception that made the request fail (null if the server answered)
+     */
+    private final Throwable failure;
+
+    /**
+     * Token Validation constructor
+     *
+     * @param accessToken
+     *            The validated access token
+     * @param status
+     *            The outcome of the validation
+     * @param error
+     *            The error returned by the server or describing the failure (null if valid)
+     * @param failure
+     *            The exception that made the request fail (null if the server answered)
+     */
+    public TokenValidation(String accessToken, Status status, AuthError error, Throwable failure) {
+        this.accessToken = accessToken;
+        this.status = status;
+        this.error = error;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates the result of a failed validation: the token is invalid if the server rejected it with a
+     * JSON error, otherwise (no answer, server failure or rate limiting) it is an error.
+     *
+     * @param accessToken
+     *            The validated access token
+     * @param failure
+     *            The exception thrown by the validation
+     *
+     * @return The validation result
+     */
+    public static TokenValidation failed(String accessToken, Throwable failure) {
+        if (failure instanceof AuthenticationException) {
+            AuthenticationException exception = (AuthenticationException) failure;
+            AuthError error = exception.getErrorModel();
+
+            int status = exception.getStatusCode();
+            if (status >= 400 && status < 500 && status != 429 && !"Remote".equals(error.getCause())) {
+                return new TokenValidation(accessToken, Status.INVALID, error, null);
+            }
+
+            return new TokenValidation(accessToken, Status.ERROR, error, exception.getCause() != null ? exception.getCause() : exception);
+        }
+
+        return new TokenValidation(accessToken, Status.ERROR, new AuthError(failure.getClass().getName(), failure.getMessage(), "Unknown"), failure);
+    }
+
+    /**
+     * Returns the validated access token
+     *
+     * @return The access token
+     */
+    public String getAccessToken() {
+        return this.accessToken;
+    }
+
+    /**
+     * Returns the outcome of the validation
+     *
+     * @return The status
+     */
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns whether the token is valid
+     *
+     * @return If the status is {@link Status#VALID}
+     */
+    public boolean isValid() {
+        return this.status == Status.VALID;
+    }
+
+    /**
+     * Returns the error returned by the server, or describing the failure
+     *
+     * @return The error, or null if the token is valid
+     */
+    public AuthError getError() {
+        return this.error;
+    }
+
+    /**
+     * Returns the exception that made the request fail
+     *
+     * @return The failure, or null if the server answered
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation Cache
+ *
+ * <p>
+ *     Remembers the access tokens an {@link fr.litarvan.openauth.Authenticator} successfully validated,
+ *     for a fixed time, so that validating them again doesn't need a request. Tokens are stored as their
+ *     SHA-256 hash, never in the clear.
+ * </p>
+ *
+ * <p>
+ *     Give it to {@link fr.litarvan.openauth.Authenticator#setValidationCache(ValidationCache)}, the
+ *     authenticator then evicts the tokens it refreshes or invalidates. A signout clears the whole cache,
+ *     since the tokens of an account are not known.
+ * </p>
+ *
+ * <p>
+ *     A validation still in flight when its token is evicted must not cache it again: the authenticator takes a
+ *     {@link #stamp()} before sending the request and gives it to {@link #put(String, long)}, which ignores the
+ *     token if it was evicted, or the cache cleared, since then. The evicted tokens are remembered up to
+ *     maxSize of them; past that, the validations older than the forgotten evictions are ignored as well.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ValidationCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    });
+
+    /**
+     * The time a validation is remembered, in nanoseconds
+     */
+    private final long ttl;
+
+    /**
+     * The maximum number of remembered tokens
+     */
+    private final int maxSize;
+
+    /**
+     * Expiry time of each token hash, in insertion order (which is also the expiry order)
+     */
+    private final LinkedHashMap<TokenHash, Long> entries;
+
+    /**
+     * Generation of the last eviction of each evicted token hash, in eviction order
+     */
+    private final LinkedHashMap<TokenHash, Long> evictions;
+
+    // Guarded by this
+    private long generation;
+
+    /**
+     * The validations stamped before this generation are ignored, since the cache was cleared or their
+     * evictions were forgotten
+     */
+    private long minimumStamp;
+
+    /**
+     * Create a validation cache
+     *
+     * @param ttl
+     *            The time a validation is remembered
+     * @param unit
+     *            The unit of the ttl
+     * @param maxSize
+     *            The maximum number of remembered tokens, the oldest are evicted first
+     */
+    public ValidationCache(long ttl, TimeUnit unit, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+
+        this.ttl = unit.toNanos(ttl);
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<TokenHash, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TokenHash, Long> eldest) {
+                return size() > ValidationCache.this.maxSize;
+            }
+        };
+        this.evictions = new LinkedHashMap<TokenHash, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TokenHash, Long> eldest) {
+                if (size() > ValidationCache.this.maxSize) {
+                    minimumStamp = Math.max(minimumStamp, eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns whether an access token was validated less than the ttl ago
+     *
+     * @param accessToken
+     *            The access token
+     *
+     * @return If the token is known to be valid
+     */
+    public boolean isValid(String accessToken) {
+        TokenHash hash = hash(accessToken);
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            Long expiry = entries.get(hash);
+            if (expiry == null) {
+                return false;
+            }
+
+            if (now - expiry >= 0) {
+                entries.remove(hash);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the current stamp of the cache, to take before sending a validation
+     *
+     * @return The stamp to give to {@link #put(String, long)}
+     */
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    /**
+     * Remembers a successfully validated access token
+     *
+     * @param accessToken
+     *            The access token
+     */
+    public void put(String accessToken) {
+        put(accessToken, Long.MAX_VALUE);
+    }
+
+    /**
+     * Remembers a successfully validated access token, unless it was evicted or the cache cleared since
+     * the validation was sent
+     *
+     * @param accessToken
+     *            The access token
+     * @param stamp
+     *            The {@link #stamp()} taken before sending the validation
+     *
+     * @return If the token was remembered
+     */
+    public boolean put(String accessToken, long stamp) {
+        TokenHash hash = hash(accessToken);
+        long expiry = System.nanoTime() + ttl;
+
+        synchronized (this) {
+            Long evicted = evictions.get(hash);
+            if (stamp < minimumStamp || (evicted != null && stamp < evicted)) {
+                return false;
+            }
+
+            evictExpired(expiry - ttl);
+
+            // Re-inserted so that it moves to the end of the expiry order
+            entries.remove(hash);
+            entries.put(hash, expiry);
+        }
+
+        return true;
+    }
+
+    /**
+     * Forgets an access token, including its validations still in flight
+     *
+     * @param accessToken
+     *            The access token
+     */
+    public void evict(String accessToken) {
+        TokenHash hash = hash(accessToken);
+
+        synchronized (this) {
+            entries.remove(hash);
+
+            // Re-inserted so that it moves to the end of the eviction order
+            evictions.remove(hash);
+            evictions.put(hash, ++generation);
+        }
+    }
+
+    /**
+     * Forgets every access token, including the validations still in flight
+     */
+    public synchronized void clear() {
+        entries.clear();
+        evictions.clear();
+        minimumStamp = ++generation;
+    }
+
+    /**
+     * Returns the number of remembered tokens, including the expired ones not evicted yet
+     *
+     * @return The cache size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Long> iterator = entries.values().iterator();
+        while (iterator.hasNext() && now - iterator.next() >= 0) {
+            iterator.remove();
+        }
+    }
+
+    private static TokenHash hash(String accessToken) {
+        MessageDigest digest = SHA_256.get();
+        return new TokenHash(digest.digest(accessToken.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The SHA-256 hash of a token
+     */
+    private static final class TokenHash {
+        private final byte[] hash;
+        private final int hashCode;
+
+        TokenHash(byte[] hash) {
+            this.hash = hash;
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TokenHash && Arrays.equals(hash, ((TokenHash) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.events;
+
+import jdk.jfr.EventType;
+
+/**
+ * Auth Events
+ *
+ * <p>
+ *     Emits an event for each request sent to an auth server, to profile them with a tool like
+ *     Java Flight Recorder. This Java 11 version emits {@code fr.litarvan.openauth.Request} JFR
+ *     events, and only allocates them while a recording enables them. On a runtime without the
+ *     {@code jdk.jfr} module (like a jlinked one), it falls back to {@link AuthEvent#NOOP}.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public final class AuthEvents {
+
+    /**
+     * If the JFR events can be emitted, resolved without ever linking this class to {@code jdk.jfr}
+     */
+    private static final boolean AVAILABLE = isAvailable();
+
+    private AuthEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            return Jfr.TYPE != null;
+        } catch (LinkageError e) {
+            // No jdk.jfr module in this runtime
+            return false;
+        }
+    }
+
+    /**
+     * Starts tracing a request
+     *
+     * @param stage
+     *            The stage of the authentication the request is part of (like the auth point)
+     * @param endpoint
+     *            The URL the request is sent to
+     *
+     * @return The event to complete then commit, {@link AuthEvent#NOOP} if tracing is off
+     */
+    public static AuthEvent begin(String stage, String endpoint) {
+        if (!AVAILABLE || !Jfr.isEnabled()) {
+            return AuthEvent.NOOP;
+        }
+
+        return Jfr.begin(stage, endpoint);
+    }
+
+    /**
+     * @return If the requests are currently traced
+     */
+    public static boolean isEnabled() {
+        return AVAILABLE && Jfr.isEnabled();
+    }
+
+    /**
+     * Holds the references to {@code jdk.jfr}, its loading fails if the module is missing
+     */
+    private static final class Jfr {
+        private static final EventType TYPE = EventType.getEventType(AuthRequestEvent.class);
+
+        static boolean isEnabled() {
+            return TYPE.isEnabled();
+        }
+
+        static AuthEvent begin(String stage, String endpoint) {
+            AuthRequestEvent event = new AuthRequestEvent(stage, endpoint);
+            event.begin();
+
+            return event;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a request sent to an auth server
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+@Name("fr.litarvan.openauth.Request")
+@Label("Auth Request")
+@Category("OpenAuth")
+@Description("A request sent to an auth server")
+@StackTrace(false)
+final class AuthRequestEvent extends Event implements AuthEvent {
+
+    @Label("Stage")
+    @Description("The stage of the authentication the request is part of")
+    private String stage;
+
+    @Label("Endpoint")
+    @Description("The URL the request was sent to")
+    private String endpoint;
+
+    @Label("Status")
+    @Description("The HTTP status code of the response, -1 if there was none")
+    private int status = -1;
+
+    @Label("Bytes In")
+    @DataAmount
+    private long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    private long bytesOut;
+
+    AuthRequestEvent(String stage, String endpoint) {
+        this.stage = stage;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    @Override
+    public void addBytesIn(long bytes) {
+        this.bytesIn += bytes;
+    }
+
+    @Override
+    public void addBytesOut(long bytes) {
+        this.bytesOut += bytes;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/2 Transport
+ *
+ * <p>
+ *     A {@link HttpTransport} based on {@code java.net.http.HttpClient}. HTTPS requests negotiate
+ *     HTTP/2 (with ALPN), so the concurrent requests to a host are multiplexed on a single connection;
+ *     there is one client per HTTP proxy.
+ * </p>
+ * <p>
+ *     The other requests go through a {@link PooledHttpTransport}, cheaper per request than the HTTP/1.1
+ *     of the Java client: plain HTTP requests, that can't negotiate HTTP/2, requests through SOCKS proxies,
+ *     that the Java client doesn't support, and requests to the hosts that answered in HTTP/1.1 before.
+ *     Sent asynchronously, these requests use the HTTP/1.1 of the Java client instead, so that they don't
+ *     block any thread either; except the SOCKS ones, sent by the pooled transport from the threads of
+ *     this transport.
+ * </p>
+ * <p>
+ *     The bodies are read in memory, the whole exchange being bounded by the read timeout, as the client
+ *     only bounds the wait for the headers.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+final class Http2Transport implements HttpTransport {
+
+    /**
+     * The headers set by the client itself, that it refuses from the request
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"
+    ));
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final boolean shared;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "OpenAuth-HTTP2-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final Map<Proxy, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Set<String> http1Hosts = ConcurrentHashMap.newKeySet();
+    private volatile PooledHttpTransport http1Transport;
+    private volatile boolean closed;
+
+    /**
+     * Create an HTTP/2 transport with the default timeouts of the {@link PooledHttpTransport}
+     *
+     * @param shared
+     *            If this transport is shared by several clients, and then ignores {@link #close()}
+     */
+    Http2Transport(boolean shared) {
+        this.connectTimeout = Duration.ofMillis(PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT);
+        this.readTimeout = Duration.ofMillis(PooledHttpTransport.DEFAULT_READ_TIMEOUT);
+        this.shared = shared;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (!isHttp2Capable(request)) {
+            return http1Transport().execute(request);
+        }
+
+        CompletableFuture<HttpResponse> response = send(request, HttpClient.Version.HTTP_2);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(false);
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getUrl());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request) {
+        if (request.getProxy().type() == Proxy.Type.SOCKS) {
+            return executeSocks(request);
+        }
+
+        return send(request, isHttp2Capable(request) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+    }
+
+    /**
+     * Sends a request with the Java client. The whole exchange, body included, is bounded by the read timeout
+     * (or the timeout of the request if shorter): the client itself only bounds the wait for the headers.
+     */
+    private CompletableFuture<HttpResponse> send(HttpRequest request, HttpClient.Version version) {
+        long timeout = request.getTimeout() > 0 && request.getTimeout() < readTimeout.toMillis() ? request.getTimeout() : readTimeout.toMillis();
+
+        CompletableFuture<java.net.http.HttpResponse<byte[]>> response;
+        try {
+            response = client(request.getProxy()).sendAsync(toRequest(request, version, timeout), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException | IllegalArgumentException e) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e instanceof IOException ? e : new IOException("Invalid request to " + request.getUrl(), e));
+
+            return future;
+        }
+
+        return response.orTimeout(timeout, TimeUnit.MILLISECONDS).handle((received, failure) -> {
+            if (failure != null) {
+                throw new CompletionException(translate(request, failure));
+            }
+
+            return toResponse(request, received);
+        });
+    }
+
+    /**
+     * Converts the failures of the Java client to the exceptions of the other transports, so that a connect
+     * timeout is retried like a refused connection, and a read timeout isn't
+     */
+    private static Throwable translate(HttpRequest request, Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+
+        Throwable exception = failure;
+        if (failure instanceof HttpConnectTimeoutException) {
+            exception = new ConnectException("Connect timed out : " + host(request));
+        } else if (failure instanceof HttpTimeoutException || failure instanceof TimeoutException) {
+            exception = new SocketTimeoutException("Read timed out");
+        }
+
+        if (exception != failure) {
+            exception.initCause(failure);
+        }
+
+        return exception;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     The HTTP/2 client can only open a connection for a request: a {@code HEAD} request of the url is sent,
+     *     whatever its status, leaving the connection open for the next requests.
+     * </p>
+     */
+    @Override
+    public void prewarm(URL url, Proxy proxy) throws IOException {
+        HttpRequest request = new HttpRequest("HEAD", url, Collections.emptyMap(), null, proxy);
+
+        if (isHttp2Capable(request)) {
+            execute(request).close();
+        }
+
+        // Also if the host just answered in HTTP/1.1
+        if (!isHttp2Capable(request)) {
+            http1Transport().prewarm(url, proxy);
+        }
+    }
+
+    private boolean isHttp2Capable(HttpRequest request) {
+        return "https".equalsIgnoreCase(request.getUrl().getProtocol())
+                && request.getProxy().type() != Proxy.Type.SOCKS
+                && !http1Hosts.contains(host(request));
+    }
+
+    private static String host(HttpRequest request) {
+        URL url = request.getUrl();
+        return url.getHost().toLowerCase() + ':' + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+    }
+
+    private CompletableFuture<HttpResponse> executeSocks(HttpRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+
+        try {
+            PooledHttpTransport transport = http1Transport();
+            executor.execute(() -> {
+                try {
+                    future.complete(transport.execute(request));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private java.net.http.HttpRequest toRequest(HttpRequest request, HttpClient.Version version, long timeout) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        URI uri;
+        try {
+            uri = request.getUrl().toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL " + request.getUrl(), e);
+        }
+
+        byte[] body = request.getBody();
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(uri)
+                .version(version)
+                .timeout(Duration.ofMillis(timeout))
+                .method(request.getMethod(), body != null
+                        ? java.net.http.HttpRequest.BodyPublishers.ofByteArray(body)
+                        : java.net.http.HttpRequest.BodyPublishers.noBody());
+
+        request.getHeaders().forEach((name, value) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                builder.header(name, value);
+            }
+        });
+
+        if (ContentEncoding.isNegotiated(request)) {
+            builder.header("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        }
+
+        return builder.build();
+    }
+
+    private HttpResponse toResponse(HttpRequest request, java.net.http.HttpResponse<byte[]> response) {
+        if (response.version() == HttpClient.Version.HTTP_1_1) {
+            http1Hosts.add(host(request));
+        }
+
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if (!header.getKey().startsWith(":")) {
+                headers.put(header.getKey(), String.join(", ", header.getValue()));
+            }
+        }
+
+        return ContentEncoding.decode(request, new HttpResponse(response.statusCode(), headers, new ByteArrayInputStream(response.body())));
+    }
+
+    private HttpClient client(Proxy proxy) {
+        return clients.computeIfAbsent(proxy, p -> {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .connectTimeout(connectTimeout)
+                    .executor(executor);
+
+            if (p.type() == Proxy.Type.HTTP) {
+                builder.proxy(ProxySelector.of((InetSocketAddress) p.address()));
+            } else {
+                builder.proxy(HttpClient.Builder.NO_PROXY);
+            }
+
+            return builder.build();
+        });
+    }
+
+    private PooledHttpTransport http1Transport() throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+
+        PooledHttpTransport transport = http1Transport;
+        if (transport == null) {
+            synchronized (this) {
+                transport = http1Transport;
+                if (transport == null) {
+                    http1Transport = transport = new PooledHttpTransport();
+                }
+            }
+        }
+
+        return transport;
+    }
+
+    /**
+     * Closes the transport, unless it is shared. The clients can't be closed before Java 21, their
+     * connections are released once they are no longer referenced.
+     */
+    @Override
+    public void close() {
+        if (shared) {
+            return;
+        }
+
+        closed = true;
+        clients.clear();
+        executor.shutdown();
+
+        synchronized (this) {
+            if (http1Transport != null) {
+                http1Transport.close();
+            }
+        }
+    }
+}
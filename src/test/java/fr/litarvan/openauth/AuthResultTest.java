@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The {@link AuthResult} of the {@code try} methods of the {@link Authenticator}, against a {@link YggdrasilStubServer}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class AuthResultTest {
+
+    private YggdrasilStubServer server;
+
+    private Authenticator authenticator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YggdrasilStubServer().start();
+        authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS);
+    }
+
+    @After
+    public void tearDown() {
+        authenticator.close();
+        server.close();
+    }
+
+    @Test
+    public void successesHoldTheResponse() {
+        AuthResult<AuthResponse> result = authenticator.tryAuthenticate(AuthAgent.MINECRAFT, "Notch", "password", null);
+
+        assertTrue(result.isSuccess());
+        assertEquals(-1, result.getStatusCode());
+        assertTrue(authenticator.tryValidate(result.getValue().getAccessToken()).isSuccess());
+    }
+
+    @Test
+    public void errorsOfTheServerAreReturned() {
+        AuthResult<Void> result = authenticator.tryValidate("invalid");
+
+        assertFalse(result.isSuccess());
+        assertEquals(403, result.getStatusCode());
+        assertEquals("ForbiddenOperationException", result.getError().getError());
+
+        // Never thrown, so its stack trace isn't captured
+        assertEquals(0, result.getFailure().getStackTrace().length);
+    }
+
+    @Test
+    public void throwingMethodsThrowTheFailure() {
+        try {
+            authenticator.validate("invalid");
+            fail("An invalid token was validated");
+        } catch (AuthenticationException e) {
+            assertEquals(403, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void requestFailuresAreReturned() throws IOException {
+        YggdrasilStubServer closed = new YggdrasilStubServer().start();
+        String url = closed.getUrl();
+        closed.close();
+
+        try (Authenticator unreachable = new Authenticator(url, AuthPoints.NORMAL_AUTH_POINTS)) {
+            AuthResult<Void> result = unreachable.tryValidate("token");
+
+            assertFalse(result.isSuccess());
+            assertEquals(-1, result.getStatusCode());
+            assertTrue(result.getFailure().getCause() instanceof IOException);
+        }
+    }
+}
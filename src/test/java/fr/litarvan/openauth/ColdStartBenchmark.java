@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import com.sun.net.httpserver.HttpServer;
+import fr.litarvan.openauth.microsoft.AuthTokens;
+import fr.litarvan.openauth.microsoft.MicrosoftAuthenticator;
+import fr.litarvan.openauth.model.AuthAgent;
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import fr.litarvan.openauth.transport.HttpRequest;
+import fr.litarvan.openauth.transport.HttpResponse;
+import fr.litarvan.openauth.transport.HttpTransport;
+import fr.litarvan.openauth.transport.HttpTransports;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cold Start Benchmark
+ *
+ * <p>
+ *     Measures the time to the first login of fresh JVMs, with and without {@link Warmup} before it. Each run
+ *     starts a new JVM which logs in once, against local stub servers: the {@link YggdrasilStubServer} for a
+ *     Yggdrasil authentication, and canned Xbox Live and Minecraft services endpoints for a Microsoft
+ *     {@code loginWithTokens}. Both the warmup and the login are timed, as well as the time since the JVM started.
+ * </p>
+ *
+ * <p>
+ *     Run it with {@code ./gradlew coldStartBenchmark --args="<runs>"} (10 runs of each case by default).
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ColdStartBenchmark {
+
+    private static final String[] FLOWS = {"yggdrasil", "microsoft"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--login")) {
+            login(args[1], args[2], Boolean.parseBoolean(args[3]));
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        YggdrasilStubServer yggdrasil = new YggdrasilStubServer().start();
+        HttpServer microsoft = startMicrosoftStub();
+        String microsoftUrl = "http://127.0.0.1:" + microsoft.getAddress().getPort();
+
+        Map<String, List<long[]>> results = new LinkedHashMap<>();
+
+        try {
+            for (int run = 0; run < runs; run++) {
+                // Interleaved, so that a change of the machine load affects every case alike
+                for (String flow : FLOWS) {
+                    for (boolean warmup : new boolean[]{false, true}) {
+                        String url = flow.equals("yggdrasil") ? yggdrasil.getUrl() : microsoftUrl;
+                        results.computeIfAbsent(flow + (warmup ? " + warmup" : ""), k -> new ArrayList<>()).add(fork(flow, url, warmup));
+                    }
+                }
+            }
+        } finally {
+            yggdrasil.close();
+            microsoft.stop(0);
+        }
+
+        System.out.printf("%-20s %14s %14s %14s %14s%n", "case (median of " + runs + ")", "warmup ms", "1st login ms", "min login ms", "since start ms");
+        results.forEach((name, samples) -> System.out.printf("%-20s %14d %14d %14d %14d%n", name,
+                median(samples, 0), median(samples, 1), min(samples, 1), median(samples, 2)));
+    }
+
+    /**
+     * Runs a login in a new JVM
+     *
+     * @return The warmup time, the login time, and the time from the JVM start to the end of the login, in milliseconds
+     */
+    private static long[] fork(String flow, String url, boolean warmup) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ColdStartBenchmark.class.getName(),
+                "--login", flow, url, String.valueOf(warmup)).redirectErrorStream(true).start();
+
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("result ")) {
+                    result = line;
+                } else {
+                    System.err.println(line);
+                }
+            }
+        }
+
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("The " + flow + " login failed");
+        }
+
+        String[] values = result.split(" ");
+        return new long[]{Long.parseLong(values[1]), Long.parseLong(values[2]), Long.parseLong(values[3])};
+    }
+
+    /**
+     * Logs in once, in the forked JVM
+     */
+    private static void login(String flow, String url, boolean warmup) throws Exception {
+        long start = System.nanoTime();
+        if (warmup) {
+            Warmup.run();
+        }
+        long loginStart = System.nanoTime();
+
+        if (flow.equals("yggdrasil")) {
+            Authenticator authenticator = new Authenticator(url, AuthPoints.NORMAL_AUTH_POINTS);
+            authenticator.authenticate(AuthAgent.MINECRAFT, "coldstart", "coldstart", null);
+        } else {
+            MicrosoftAuthenticator authenticator = new MicrosoftAuthenticator(ModelCodec.INSTANCE, new StubTransport(url));
+            authenticator.loginWithTokens(new AuthTokens("access", "refresh"));
+        }
+
+        long end = System.nanoTime();
+        long sinceStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        System.out.println("result " + (loginStart - start) / 1000000 + ' ' + (end - loginStart) / 1000000 + ' ' + sinceStart);
+        System.exit(0);
+    }
+
+    /**
+     * Serves the canned responses of the Xbox Live and Minecraft services endpoints
+     */
+    private static HttpServer startMicrosoftStub() throws IOException {
+        Map<String, String> responses = new HashMap<>();
+        responses.put("/user/authenticate", Warmup.XBOX_LOGIN_RESPONSE);
+        responses.put("/xsts/authorize", Warmup.XBOX_LOGIN_RESPONSE);
+        responses.put("/authentication/login_with_xbox", Warmup.MINECRAFT_LOGIN_RESPONSE);
+        responses.put("/entitlements/mcstore", Warmup.MINECRAFT_STORE_RESPONSE);
+        responses.put("/minecraft/profile", Warmup.MINECRAFT_PROFILE);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().close();
+
+            String response = responses.get(exchange.getRequestURI().getPath());
+            if (response == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                byte[] body = response.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+
+            exchange.close();
+        });
+        server.start();
+
+        return server;
+    }
+
+    /**
+     * Sends the requests of the Microsoft services to the local stub instead, through the default transport
+     */
+    private static final class StubTransport implements HttpTransport {
+        private final String url;
+        private final HttpTransport transport = HttpTransports.createDefault();
+
+        private StubTransport(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            URL target = new URL(url + request.getUrl().getFile());
+            return transport.execute(new HttpRequest(request.getMethod(), target, request.getHeaders(), request.getBody(), request.getProxy()));
+        }
+
+        @Override
+        public void close() {
+            transport.close();
+        }
+    }
+
+    private static long median(List<long[]> samples, int index) {
+        List<Long> values = new ArrayList<>();
+        for (long[] sample : samples) {
+            values.add(sample[index]);
+        }
+        Collections.sort(values);
+
+        return values.get(values.size() / 2);
+    }
+
+    private static long min(List<long[]> samples, int index) {
+        long min = Long.MAX_VALUE;
+        for (long[] sample : samples) {
+            min = Math.min(min, sample[index]);
+        }
+
+        return min;
+    }
+}
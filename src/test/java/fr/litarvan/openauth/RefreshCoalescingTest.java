@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth;
+
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The concurrent refreshes of a same token pair, sent once against the {@link YggdrasilStubServer}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class RefreshCoalescingTest {
+
+    private YggdrasilStubServer server;
+
+    private Authenticator authenticator;
+
+    @Before
+    public void setUp() throws IOException {
+        // Slow enough for every caller to join the refresh in flight
+        server = new YggdrasilStubServer().setLatency(300, TimeUnit.MILLISECONDS).start();
+        authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS);
+    }
+
+    @After
+    public void tearDown() {
+        authenticator.close();
+        server.close();
+    }
+
+    @Test
+    public void concurrentRefreshesShareOneRequest() throws Exception {
+        AuthResponse session = server.issue("Notch");
+        long requests = server.getRequestCount();
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RefreshResponse>> refreshes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                refreshes.add(callers.submit(() -> authenticator.refresh(session.getAccessToken(), session.getClientToken())));
+            }
+
+            List<CompletableFuture<RefreshResponse>> asyncRefreshes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                asyncRefreshes.add(authenticator.refreshAsync(session.getAccessToken(), session.getClientToken()));
+            }
+
+            String accessToken = refreshes.get(0).get(10, TimeUnit.SECONDS).getAccessToken();
+            assertNotEquals(session.getAccessToken(), accessToken);
+
+            for (Future<RefreshResponse> refresh : refreshes) {
+                assertEquals(accessToken, refresh.get(10, TimeUnit.SECONDS).getAccessToken());
+            }
+            for (CompletableFuture<RefreshResponse> refresh : asyncRefreshes) {
+                assertEquals(accessToken, refresh.get(10, TimeUnit.SECONDS).getAccessToken());
+            }
+
+            assertEquals(1, server.getRequestCount() - requests);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void refreshAfterTheSharedOneIsSentAgain() throws Exception {
+        AuthResponse session = server.issue("Notch");
+
+        RefreshResponse refreshed = authenticator.refresh(session.getAccessToken(), session.getClientToken());
+        authenticator.validate(refreshed.getAccessToken());
+
+        // The pair was rotated by the first refresh, a new one is rejected instead of sharing its response
+        try {
+            authenticator.refresh(session.getAccessToken(), session.getClientToken());
+            fail("The rotated pair was refreshed");
+        } catch (AuthenticationException e) {
+            assertEquals(403, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void cancellingACallerDoesNotCancelTheSharedRefresh() throws Exception {
+        AuthResponse session = server.issue("Notch");
+
+        CompletableFuture<RefreshResponse> cancelled = authenticator.refreshAsync(session.getAccessToken(), session.getClientToken());
+        CompletableFuture<RefreshResponse> other = authenticator.refreshAsync(session.getAccessToken(), session.getClientToken());
+        cancelled.cancel(true);
+
+        authenticator.validate(other.get(10, TimeUnit.SECONDS).getAccessToken());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.microsoft;
+
+import fr.litarvan.openauth.json.ModelCodec;
+import fr.litarvan.openauth.microsoft.model.response.MinecraftProfile;
+import fr.litarvan.openauth.transport.NioHttpTransport;
+import fr.litarvan.openauth.transport.PooledHttpTransport;
+import fr.litarvan.openauth.transport.ScriptedHttpServer;
+import org.junit.Test;
+
+import java.net.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The asynchronous profile fetches of the {@link HttpClient}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class HttpClientTest {
+
+    private static final String PROFILE = "{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\",\"skins\":[]}";
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + PROFILE.length() + "\r\n\r\n" + PROFILE;
+
+    @Test
+    public void asyncTransportsDoNotBlockTheCaller() throws Exception {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> OK);
+             NioHttpTransport transport = new NioHttpTransport()) {
+            HttpClient http = new HttpClient(Proxy.NO_PROXY, ModelCodec.INSTANCE, transport);
+            assertTrue(http.isAsync());
+
+            MinecraftProfile profile = http.getJsonAsync(server.getUrl("/profile").toString(), "token", MinecraftProfile.class, null).get(5, TimeUnit.SECONDS);
+
+            assertEquals("Notch", profile.getName());
+        }
+    }
+
+    @Test
+    public void blockingTransportsFetchOnTheCaller() throws Exception {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> OK);
+             PooledHttpTransport transport = new PooledHttpTransport()) {
+            HttpClient http = new HttpClient(Proxy.NO_PROXY, ModelCodec.INSTANCE, transport);
+            assertFalse(http.isAsync());
+
+            // Done before returning, no other thread is ever held by the fetch
+            CompletableFuture<MinecraftProfile> fetch = http.getJsonAsync(server.getUrl("/profile").toString(), "token", MinecraftProfile.class, null);
+
+            assertTrue(fetch.isDone());
+            assertEquals("Notch", fetch.get().getName());
+        }
+    }
+}
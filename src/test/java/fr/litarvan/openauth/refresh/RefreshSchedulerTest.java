@@ -0,0 +1,248 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.refresh;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The timing wheel and the refreshes of the {@link RefreshScheduler}, against a {@link YggdrasilStubServer}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class RefreshSchedulerTest {
+
+    private YggdrasilStubServer server;
+
+    private Authenticator authenticator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YggdrasilStubServer().start();
+        authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS);
+    }
+
+    @After
+    public void tearDown() {
+        authenticator.close();
+        server.close();
+    }
+
+    @Test
+    public void wheelRunsTasksInOrderAndSkipsCancelledOnes() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 4, Thread::new);
+        try {
+            Queue<Integer> order = new ConcurrentLinkedQueue<>();
+            CountDownLatch done = new CountDownLatch(1);
+
+            // Longer than the 40ms of a round of the wheel
+            wheel.schedule(() -> {
+                order.add(3);
+                done.countDown();
+            }, 150, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> order.add(2), 60, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> order.add(1), 0, TimeUnit.MILLISECONDS);
+            TimingWheel.Timeout cancelled = wheel.schedule(() -> order.add(-1), 30, TimeUnit.MILLISECONDS);
+
+            assertTrue(cancelled.cancel());
+            assertTrue(cancelled.isCancelled());
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertArrayEquals(new Integer[]{1, 2, 3}, order.toArray(new Integer[0]));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void sessionsAreRefreshedBeforeTheirExpiry() throws Exception {
+        BlockingQueue<RefreshResponse> refreshed = new LinkedBlockingQueue<>();
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, new RefreshListener() {
+            @Override
+            public void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response) {
+                refreshed.add(response);
+            }
+        })) {
+            AuthResponse auth = server.issue("Notch");
+            ScheduledSession session = scheduler.schedule(auth.getAccessToken(), auth.getClientToken(), System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+            RefreshResponse response = refreshed.poll(5, TimeUnit.SECONDS);
+            assertNotNull("The session wasn't refreshed", response);
+            assertEquals(response.getAccessToken(), session.getAccessToken());
+            authenticator.validate(session.getAccessToken());
+
+            session.cancel();
+            assertTrue(session.isCancelled());
+            assertEquals(0, scheduler.size());
+        }
+    }
+
+    @Test
+    public void listenerExceptionsAreReported() throws Exception {
+        BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, new RefreshListener() {
+            @Override
+            public void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response) {
+                throw new IllegalStateException("Not saved");
+            }
+
+            @Override
+            public void onFailure(ScheduledSession session, Throwable failure) {
+                failures.add(failure);
+            }
+        })) {
+            AuthResponse auth = server.issue("Notch");
+            ScheduledSession session = scheduler.schedule(auth.getAccessToken(), auth.getClientToken(), System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+            Throwable failure = failures.poll(5, TimeUnit.SECONDS);
+            assertTrue(String.valueOf(failure), failure instanceof IllegalStateException);
+
+            // Refreshed, and scheduled for the next one
+            assertFalse(session.isCancelled());
+            assertNotEquals(auth.getAccessToken(), session.getAccessToken());
+            assertEquals(1, scheduler.size());
+        }
+    }
+
+    @Test
+    public void failedRefreshesAreRetriedWhileTheTokenIsValid() throws Exception {
+        BlockingQueue<RefreshResponse> refreshed = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> retries = new LinkedBlockingQueue<>();
+
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, new RefreshListener() {
+            @Override
+            public void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response) {
+                refreshed.add(response);
+            }
+
+            @Override
+            public void onRetry(ScheduledSession session, Throwable failure, long delay) {
+                retries.add(delay);
+            }
+
+            @Override
+            public void onFailure(ScheduledSession session, Throwable failure) {
+                fail("The session was cancelled by a transient failure");
+            }
+        })) {
+            AuthResponse auth = server.issue("Notch");
+            server.setErrorRate(1);
+
+            ScheduledSession session = scheduler.schedule(auth.getAccessToken(), auth.getClientToken(), System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+            assertEquals(Long.valueOf(1000), retries.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, session.getFailures());
+            assertFalse(session.isCancelled());
+
+            server.setErrorRate(0);
+
+            assertNotNull("The session wasn't refreshed", refreshed.poll(5, TimeUnit.SECONDS));
+            assertEquals(0, session.getFailures());
+            assertEquals(1, scheduler.size());
+        }
+    }
+
+    @Test
+    public void rejectedRefreshesCancelTheSession() throws Exception {
+        BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, new RefreshListener() {
+            @Override
+            public void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response) {
+                fail("An invalid session was refreshed");
+            }
+
+            @Override
+            public void onRetry(ScheduledSession session, Throwable failure, long delay) {
+                fail("A rejected refresh was retried");
+            }
+
+            @Override
+            public void onFailure(ScheduledSession session, Throwable failure) {
+                failures.add(failure);
+            }
+        })) {
+            ScheduledSession session = scheduler.schedule("invalid", "invalid", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+            Throwable failure = failures.poll(5, TimeUnit.SECONDS);
+            assertTrue(failure instanceof AuthenticationException);
+            assertEquals(403, ((AuthenticationException) failure).getStatusCode());
+            assertTrue(session.isCancelled());
+            assertEquals(0, scheduler.size());
+        }
+    }
+
+    @Test
+    public void failedRefreshesStopOnceTheTokenExpired() throws Exception {
+        BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, new RefreshListener() {
+            @Override
+            public void onRefreshed(ScheduledSession session, String previousAccessToken, RefreshResponse response) {
+                fail("The session was refreshed");
+            }
+
+            @Override
+            public void onFailure(ScheduledSession session, Throwable failure) {
+                failures.add(failure);
+            }
+        })) {
+            AuthResponse auth = server.issue("Notch");
+            server.setErrorRate(1);
+
+            ScheduledSession session = scheduler.schedule(auth.getAccessToken(), auth.getClientToken(), System.currentTimeMillis() + 2500);
+
+            Throwable failure = failures.poll(10, TimeUnit.SECONDS);
+            assertTrue(failure instanceof AuthenticationException);
+            assertEquals(503, ((AuthenticationException) failure).getStatusCode());
+            assertTrue(session.getFailures() >= 1);
+            assertTrue(session.isCancelled());
+        }
+    }
+
+    @Test
+    public void cancelledSessionsAreNotRefreshed() throws Exception {
+        try (RefreshScheduler scheduler = new RefreshScheduler(authenticator, 1, 1, 0, TimeUnit.HOURS, (session, previousAccessToken, response) -> fail("A cancelled session was refreshed"))) {
+            AuthResponse auth = server.issue("Notch");
+            long requests = server.getRequestCount();
+
+            scheduler.schedule(auth.getAccessToken(), auth.getClientToken(), System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)).cancel();
+            Thread.sleep(1500);
+
+            assertEquals(requests, server.getRequestCount());
+        }
+    }
+}
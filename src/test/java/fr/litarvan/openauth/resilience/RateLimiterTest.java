@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The token buckets of a {@link RateLimiter}, and the permits taken by the requests of an {@link Authenticator}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class RateLimiterTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void burstIsAvailableAtOnce() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(0));
+        }
+
+        // 10 permits per second, the next one is ~100ms away
+        assertEquals(-1, bucket.reserve(0));
+        long wait = bucket.reserve(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(wait > 80 * MILLISECOND && wait <= 100 * MILLISECOND);
+
+        // Reserved, the one after waits for another period
+        assertTrue(bucket.delay() > 180 * MILLISECOND);
+    }
+
+    @Test
+    public void rateLimitedResponsesHalveTheRate() {
+        TokenBucket bucket = new TokenBucket(64, 1);
+
+        bucket.throttle(-1, true);
+        assertEquals(32, bucket.getRate(), 0);
+        assertTrue(bucket.delay() > 0);
+
+        for (int i = 0; i < 10; i++) {
+            bucket.onSuccess();
+        }
+        assertEquals(64, bucket.getRate(), 0);
+    }
+
+    @Test
+    public void unavailableResponsesHalveTheRate() {
+        RateLimiter limiter = new RateLimiter(64, 1, 0, TimeUnit.MILLISECONDS);
+
+        limiter.onResponse("validate", 503, -1);
+        assertEquals(32, limiter.getBucket("validate").getRate(), 0);
+
+        // With its Retry-After
+        limiter.onResponse("refresh", 503, 200);
+        assertEquals(32, limiter.getBucket("refresh").getRate(), 0);
+        assertTrue(limiter.getBucket("refresh").delay() > 150 * MILLISECOND);
+
+        // The other server errors don't slow down
+        limiter.onResponse("signout", 500, -1);
+        assertEquals(64, limiter.getBucket("signout").getRate(), 0);
+    }
+
+    @Test
+    public void retryAfterBlocksTheBucket() {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+
+        bucket.throttle(TimeUnit.MILLISECONDS.toNanos(200), false);
+        assertEquals(1000, bucket.getRate(), 0);
+        assertTrue(bucket.delay() > 150 * MILLISECOND);
+    }
+
+    @Test
+    public void acquireWaitsUpToMaxWait() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20, 1, 100, TimeUnit.MILLISECONDS);
+        limiter.setLimit("refresh", 1, 1);
+
+        assertTrue(limiter.acquire("validate"));
+
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire("validate"));
+        assertTrue(System.nanoTime() - start > 30 * MILLISECOND);
+
+        // The refresh endpoint has its own limit, its second permit is a second away
+        assertTrue(limiter.acquire("refresh"));
+        assertFalse(limiter.acquire("refresh"));
+    }
+
+    @Test
+    public void acquireAsyncReservesThePermit() throws Exception {
+        RateLimiter limiter = new RateLimiter(10, 1, 150, TimeUnit.MILLISECONDS);
+
+        assertTrue(limiter.acquireAsync("validate").isDone());
+
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> second = limiter.acquireAsync("validate");
+        assertFalse(second.isDone());
+
+        // The second permit is reserved, the third would be 200ms away
+        assertFalse(limiter.acquireAsync("validate").get());
+
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start > 80 * MILLISECOND);
+    }
+
+    @Test
+    public void asyncRequestsTakeASinglePermit() throws Exception {
+        try (YggdrasilStubServer server = new YggdrasilStubServer().start();
+             Authenticator authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS)) {
+            String accessToken = server.issue("Notch").getAccessToken();
+            authenticator.setRateLimiter(new RateLimiter(5, 1, 10, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> validations = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                validations.add(authenticator.validateAsync(accessToken));
+            }
+            for (CompletableFuture<Void> validation : validations) {
+                validation.get(5, TimeUnit.SECONDS);
+            }
+
+            // 3 periods of 200ms after the first permit, twice that if each request took two permits
+            long elapsed = System.nanoTime() - start;
+            assertTrue("Took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms", elapsed > 500 * MILLISECOND && elapsed < 1000 * MILLISECOND);
+        }
+    }
+
+    @Test
+    public void rateLimitedResponsesThrottleTheEndpoint() {
+        RateLimiter limiter = new RateLimiter(100, 5, 0, TimeUnit.MILLISECONDS);
+
+        limiter.onResponse("validate", 429, 500);
+        assertTrue(limiter.getBucket("validate").delay() > 400 * MILLISECOND);
+        assertEquals(0, limiter.getBucket("refresh").delay());
+    }
+}
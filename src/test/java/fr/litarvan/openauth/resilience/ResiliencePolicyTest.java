@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The retries and circuit breakers of a {@link ResiliencePolicy}, against a {@link YggdrasilStubServer} injecting errors
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ResiliencePolicyTest {
+
+    private YggdrasilStubServer server;
+
+    private Authenticator authenticator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YggdrasilStubServer().start();
+        authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS);
+    }
+
+    @After
+    public void tearDown() {
+        authenticator.close();
+        server.close();
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws IOException {
+        authenticator.setResiliencePolicy(new ResiliencePolicy(3, 1, 5, 100, 30, TimeUnit.SECONDS));
+        server.setErrorRate(1);
+
+        try {
+            authenticator.validate(server.issue("Notch").getAccessToken());
+            fail("The request succeeded");
+        } catch (AuthenticationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(3, authenticator.getCircuitBreaker("validate").getFailures());
+    }
+
+    @Test
+    public void rejectionsAreNotRetried() {
+        authenticator.setResiliencePolicy(new ResiliencePolicy(3, 1, 5, 1, 30, TimeUnit.SECONDS));
+
+        try {
+            authenticator.validate("invalid");
+            fail("An invalid token was validated");
+        } catch (AuthenticationException e) {
+            assertEquals(403, e.getStatusCode());
+        }
+
+        // The endpoint answered properly, it is healthy
+        assertEquals(1, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, authenticator.getCircuitBreaker("validate").getState());
+    }
+
+    @Test
+    public void breakerOpensThenRecovers() throws Exception {
+        authenticator.setResiliencePolicy(new ResiliencePolicy(1, 1, 5, 2, 300, TimeUnit.MILLISECONDS));
+        AuthResponse session = server.issue("Notch");
+        server.setErrorRate(1);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                authenticator.validate(session.getAccessToken());
+                fail("The request succeeded");
+            } catch (AuthenticationException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+        }
+
+        CircuitBreaker breaker = authenticator.getCircuitBreaker("validate");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // Fails fast, without a request
+        try {
+            authenticator.validate(session.getAccessToken());
+            fail("The request went through an open breaker");
+        } catch (AuthenticationException e) {
+            assertEquals("Circuit breaker open", e.getErrorModel().getError());
+        }
+        assertEquals(2, server.getRequestCount());
+
+        server.setErrorRate(0);
+        Thread.sleep(400);
+
+        authenticator.validate(session.getAccessToken());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void retriesStoppedByTheBreakerReturnTheActualFailure() throws IOException {
+        authenticator.setResiliencePolicy(new ResiliencePolicy(3, 1, 5, 1, 30, TimeUnit.SECONDS));
+        server.setErrorRate(1);
+
+        try {
+            authenticator.validate(server.issue("Notch").getAccessToken());
+            fail("The request succeeded");
+        } catch (AuthenticationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void openBreakersDoNotUseThePermits() throws Exception {
+        authenticator.setResiliencePolicy(new ResiliencePolicy(1, 1, 5, 1, 300, TimeUnit.MILLISECONDS));
+        authenticator.setRateLimiter(new RateLimiter(0.01, 1, 0, TimeUnit.MILLISECONDS));
+        AuthResponse session = server.issue("Notch");
+
+        authenticator.getCircuitBreaker("validate").onFailure();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                authenticator.validate(session.getAccessToken());
+                fail("The request went through an open breaker");
+            } catch (AuthenticationException e) {
+                assertEquals("Circuit breaker open", e.getErrorModel().getError());
+            }
+        }
+
+        Thread.sleep(400);
+
+        // The only permit of the bucket is still there
+        authenticator.validate(session.getAccessToken());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void breakerLetsASingleTrialThrough() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("validate", new ResiliencePolicy(1, 1, 5, 1, 100, TimeUnit.MILLISECONDS));
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(150);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.resilience;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.AuthenticationException;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The failover of an {@link Authenticator} across a {@link ServerPool} of {@link YggdrasilStubServer}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ServerPoolTest {
+
+    private String down;
+
+    private YggdrasilStubServer up;
+
+    @Before
+    public void setUp() throws IOException {
+        // Started then closed, its port refuses the connections
+        YggdrasilStubServer closed = new YggdrasilStubServer().start();
+        down = closed.getUrl();
+        closed.close();
+
+        up = new YggdrasilStubServer().start();
+    }
+
+    @After
+    public void tearDown() {
+        up.close();
+    }
+
+    @Test
+    public void failsOverToTheNextServer() throws Exception {
+        ServerPool pool = new ServerPool(Arrays.asList(down, up.getUrl()), 2, 1, 10, TimeUnit.SECONDS);
+        ServerPool.Server first = pool.getServers().get(0);
+
+        try (Authenticator authenticator = new Authenticator(pool, AuthPoints.NORMAL_AUTH_POINTS)) {
+            String accessToken = up.issue("Notch").getAccessToken();
+
+            for (int i = 0; i < 4; i++) {
+                authenticator.validate(accessToken);
+            }
+
+            // Ejected after its second failure, then never selected again
+            assertTrue(first.isEjected());
+            assertEquals(4, up.getRequestCount());
+        }
+    }
+
+    @Test
+    public void requestErrorsAreNotFailedOver() throws Exception {
+        YggdrasilStubServer other = new YggdrasilStubServer().start();
+        try (Authenticator authenticator = new Authenticator(new ServerPool(Arrays.asList(up.getUrl(), other.getUrl())), AuthPoints.NORMAL_AUTH_POINTS)) {
+            try {
+                authenticator.validate("invalid");
+                fail("An invalid token was validated");
+            } catch (AuthenticationException e) {
+                assertEquals(403, e.getStatusCode());
+            }
+
+            assertEquals(1, up.getRequestCount() + other.getRequestCount());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void attemptsAreBoundedByTheDeadline() throws Exception {
+        YggdrasilStubServer slow = new YggdrasilStubServer().setLatency(5, TimeUnit.SECONDS).start();
+        try (Authenticator authenticator = new Authenticator(new ServerPool(Collections.singletonList(slow.getUrl()), 2, 1, 500, TimeUnit.MILLISECONDS), AuthPoints.NORMAL_AUTH_POINTS)) {
+            long start = System.nanoTime();
+
+            try {
+                authenticator.validate("token");
+                fail("The request succeeded");
+            } catch (AuthenticationException e) {
+                assertTrue(e.getCause() instanceof SocketTimeoutException);
+            }
+
+            // Well below the latency of the server, and the default read timeout of the transport
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        } finally {
+            slow.close();
+        }
+    }
+
+    @Test
+    public void failsWhenEveryServerIsDown() throws Exception {
+        try (Authenticator authenticator = new Authenticator(new ServerPool(Collections.singletonList(down)), AuthPoints.NORMAL_AUTH_POINTS)) {
+            authenticator.validate("token");
+            fail("The request succeeded");
+        } catch (AuthenticationException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
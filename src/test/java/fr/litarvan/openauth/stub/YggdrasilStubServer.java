@@ -0,0 +1,465 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.stub;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.json.JsonModels;
+import fr.litarvan.openauth.model.AuthError;
+import fr.litarvan.openauth.model.AuthProfile;
+import fr.litarvan.openauth.model.request.*;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.model.response.RefreshResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Yggdrasil Stub Server
+ *
+ * <p>
+ *     A local auth server implementing the {@link AuthPoints#NORMAL_AUTH_POINTS} endpoints on the
+ *     JDK embedded HTTP server, to run benchmarks and resilience tests offline. It issues real
+ *     token pairs, rotates them on refresh and expires them after the configured token lifetime.
+ *     A latency and a rate of 503 errors can be injected, and the responses can be gzipped.
+ * </p>
+ *
+ * <p>
+ *     Every username is accepted by default, with any password; use {@link #addAccount} to only
+ *     accept known accounts.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class YggdrasilStubServer implements Closeable {
+
+    static {
+        // The JDK server doesn't disable Nagle's algorithm by default, which combined with delayed
+        // ACKs stalls every keep-alive response for ~40ms. Read once, when the server class loads.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private static final String FORBIDDEN = "ForbiddenOperationException";
+
+    private final Gson gson = JsonModels.GSON;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final Map<String, String> accounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private volatile long latency;
+
+    private volatile double errorRate;
+
+    private volatile boolean compression;
+
+    private volatile long tokenLifetime = TimeUnit.DAYS.toMillis(1);
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Runs a stub server until the process is stopped
+     *
+     * @param args
+     *            The port (default 25585), the latency in milliseconds (default 0), and the error rate (default 0)
+     *
+     * @throws IOException If the server couldn't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 25585;
+
+        YggdrasilStubServer server = new YggdrasilStubServer()
+                .setLatency(args.length > 1 ? Long.parseLong(args[1]) : 0, TimeUnit.MILLISECONDS)
+                .setErrorRate(args.length > 2 ? Double.parseDouble(args[2]) : 0)
+                .start(port);
+
+        System.out.println("Yggdrasil stub server listening on " + server.getUrl());
+    }
+
+    /**
+     * Starts the server on a random local port
+     *
+     * @return This server
+     *
+     * @throws IOException If the server couldn't be bound
+     */
+    public YggdrasilStubServer start() throws IOException {
+        return start(0);
+    }
+
+    /**
+     * Starts the server on a local port
+     *
+     * @param port
+     *            The port, 0 for a random one
+     *
+     * @return This server
+     *
+     * @throws IOException If the server couldn't be bound
+     */
+    public synchronized YggdrasilStubServer start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server is already started");
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "YggdrasilStub-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        AuthPoints points = AuthPoints.NORMAL_AUTH_POINTS;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/" + points.getAuthenticatePoint(), exchange -> handle(exchange, this::authenticate));
+        server.createContext("/" + points.getRefreshPoint(), exchange -> handle(exchange, this::refresh));
+        server.createContext("/" + points.getValidatePoint(), exchange -> handle(exchange, this::validate));
+        server.createContext("/" + points.getSignoutPoint(), exchange -> handle(exchange, this::signout));
+        server.createContext("/" + points.getInvalidatePoint(), exchange -> handle(exchange, this::invalidate));
+        server.setExecutor(executor);
+        server.start();
+
+        return this;
+    }
+
+    /**
+     * @return The URL to give to an {@link fr.litarvan.openauth.Authenticator}, like http://127.0.0.1:port/
+     */
+    public String getUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/";
+    }
+
+    /**
+     * Stops the server immediately
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Only accepts the registered accounts from now on (instead of any credentials)
+     *
+     * @param username
+     *            The account username
+     * @param password
+     *            The account password
+     *
+     * @return This server
+     */
+    public YggdrasilStubServer addAccount(String username, String password) {
+        accounts.put(username, password);
+        return this;
+    }
+
+    /**
+     * @param latency
+     *            The time waited before answering each request
+     * @param unit
+     *            The unit of the latency
+     *
+     * @return This server
+     */
+    public YggdrasilStubServer setLatency(long latency, TimeUnit unit) {
+        this.latency = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * @param errorRate
+     *            The probability, from 0 to 1, that a request is answered by a 503 error
+     *
+     * @return This server
+     */
+    public YggdrasilStubServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param compression
+     *            If the responses are gzipped for the requests accepting it
+     *
+     * @return This server
+     */
+    public YggdrasilStubServer setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param tokenLifetime
+     *            The time an access token stays valid after being issued (a day by default)
+     * @param unit
+     *            The unit of the lifetime
+     *
+     * @return This server
+     */
+    public YggdrasilStubServer setTokenLifetime(long tokenLifetime, TimeUnit unit) {
+        this.tokenLifetime = unit.toMillis(tokenLifetime);
+        return this;
+    }
+
+    /**
+     * @return The number of requests received
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of requests answered by an injected 503 error
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @return The number of issued access tokens not invalidated yet (expired or not)
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Issues a token pair directly, without a request
+     *
+     * @param username
+     *            The account username
+     *
+     * @return The issued token pair
+     */
+    public AuthResponse issue(String username) {
+        Session session = newSession(username, UUID.randomUUID().toString());
+        return new AuthResponse(session.accessToken, session.clientToken, new AuthProfile[]{session.profile}, session.profile);
+    }
+
+    private Reply authenticate(Reader body) {
+        AuthRequest request = gson.fromJson(body, AuthRequest.class);
+        if (request == null || !checkCredentials(request.getUsername(), request.getPassword())) {
+            return Reply.error(403, FORBIDDEN, "Invalid credentials. Invalid username or password.");
+        }
+
+        String clientToken = request.getClientToken() != null ? request.getClientToken() : UUID.randomUUID().toString();
+        Session session = newSession(request.getUsername(), clientToken);
+
+        AuthProfile[] profiles = request.getAgent() != null ? new AuthProfile[]{session.profile} : null;
+        AuthProfile selected = request.getAgent() != null ? session.profile : null;
+
+        return Reply.json(new AuthResponse(session.accessToken, clientToken, profiles, selected));
+    }
+
+    private Reply refresh(Reader body) {
+        RefreshRequest request = gson.fromJson(body, RefreshRequest.class);
+        Session session = request != null ? sessions.get(request.getAccessToken()) : null;
+
+        if (session == null || !session.clientToken.equals(request.getClientToken()) || !sessions.remove(session.accessToken, session)) {
+            return Reply.error(403, FORBIDDEN, "Invalid token.");
+        }
+
+        // Rotation: the old access token is now invalid, even if it didn't expire
+        Session rotated = newSession(session.username, session.clientToken);
+        return Reply.json(new RefreshResponse(rotated.accessToken, rotated.clientToken, rotated.profile));
+    }
+
+    private Reply validate(Reader body) {
+        ValidateRequest request = gson.fromJson(body, ValidateRequest.class);
+        Session session = request != null ? sessions.get(request.getAccessToken()) : null;
+
+        if (session == null || session.expiresAt < System.currentTimeMillis()) {
+            return Reply.error(403, FORBIDDEN, "Invalid token.");
+        }
+
+        return Reply.NO_CONTENT;
+    }
+
+    private Reply signout(Reader body) {
+        SignoutRequest request = gson.fromJson(body, SignoutRequest.class);
+        if (request == null || !checkCredentials(request.getUsername(), request.getPassword())) {
+            return Reply.error(403, FORBIDDEN, "Invalid credentials. Invalid username or password.");
+        }
+
+        sessions.values().removeIf(session -> session.username.equals(request.getUsername()));
+        return Reply.NO_CONTENT;
+    }
+
+    private Reply invalidate(Reader body) {
+        InvalidateRequest request = gson.fromJson(body, InvalidateRequest.class);
+        Session session = request != null ? sessions.get(request.getAccessToken()) : null;
+
+        if (session != null && session.clientToken.equals(request.getClientToken())) {
+            sessions.remove(session.accessToken, session);
+        }
+
+        return Reply.NO_CONTENT;
+    }
+
+    private boolean checkCredentials(String username, String password) {
+        if (username == null || password == null) {
+            return false;
+        }
+
+        return accounts.isEmpty() || password.equals(accounts.get(username));
+    }
+
+    private Session newSession(String username, String clientToken) {
+        String accessToken = UUID.randomUUID().toString().replace("-", "");
+        String id = UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+
+        Session session = new Session(username, accessToken, clientToken, new AuthProfile(username, id), System.currentTimeMillis() + tokenLifetime);
+        sessions.put(accessToken, session);
+
+        return session;
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        requests.incrementAndGet();
+
+        try {
+            long latency = this.latency;
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            Reply reply;
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply = Reply.error(405, "Method Not Allowed", "The method specified in the request is not allowed for the resource identified by the request URI");
+            } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                reply = Reply.error(503, "ServiceUnavailableException", "Injected error");
+            } else {
+                try (Reader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                    reply = endpoint.handle(body);
+                } catch (RuntimeException e) {
+                    reply = Reply.error(400, "IllegalArgumentException", String.valueOf(e.getMessage()));
+                }
+            }
+
+            if (reply.body == null) {
+                exchange.sendResponseHeaders(reply.status, -1);
+            } else {
+                byte[] bytes = gson.toJson(reply.body).getBytes(StandardCharsets.UTF_8);
+
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (compression && accepted != null && accepted.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                        gzip.write(bytes);
+                    }
+
+                    bytes = compressed.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(reply.status, bytes.length);
+
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private interface Endpoint {
+        Reply handle(Reader body);
+    }
+
+    private static class Reply {
+
+        private static final Reply NO_CONTENT = new Reply(204, null);
+
+        private final int status;
+
+        private final Object body;
+
+        private Reply(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Reply json(Object body) {
+            return new Reply(200, body);
+        }
+
+        private static Reply error(int status, String error, String message) {
+            return new Reply(status, new AuthError(error, message, null));
+        }
+    }
+
+    private static class Session {
+
+        private final String username;
+
+        private final String accessToken;
+
+        private final String clientToken;
+
+        private final AuthProfile profile;
+
+        private final long expiresAt;
+
+        private Session(String username, String accessToken, String clientToken, AuthProfile profile, long expiresAt) {
+            this.username = username;
+            this.accessToken = accessToken;
+            this.clientToken = clientToken;
+            this.profile = profile;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
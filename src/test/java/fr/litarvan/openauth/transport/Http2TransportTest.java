@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * The asynchronous requests of the Java 11 transport, that must not wait for their responses on a thread
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class Http2TransportTest {
+
+    @Test
+    public void validateAsyncDoesNotWaitOnAThread() throws Exception {
+        Assume.assumeTrue("Requires Java 11", HttpTransports.isHttp2Supported());
+
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        AtomicLong busy = new AtomicLong();
+
+        try (YggdrasilStubServer server = new YggdrasilStubServer().setLatency(300, TimeUnit.MILLISECONDS).start();
+             HttpTransport transport = HttpTransports.createDefault();
+             Authenticator authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS, transport, task -> threads.execute(() -> {
+                 long start = System.nanoTime();
+                 try {
+                     task.run();
+                 } finally {
+                     busy.addAndGet(System.nanoTime() - start);
+                 }
+             }))) {
+            assertTrue(transport.isAsync());
+
+            String accessToken = server.issue("Notch").getAccessToken();
+
+            // Loads the classes of the client first, which isn't the time measured
+            authenticator.validateAsync(accessToken).get(5, TimeUnit.SECONDS);
+            busy.set(0);
+
+            // Plain HTTP, through the HTTP/1.1 fallback
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> validations = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                validations.add(authenticator.validateAsync(accessToken));
+            }
+            assertTrue("The calling thread waited for the responses", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(300));
+
+            for (CompletableFuture<Void> validation : validations) {
+                validation.get(5, TimeUnit.SECONDS);
+            }
+
+            // 16 validations waiting 300ms each on the single thread would take 4.8s
+            assertTrue("The executor waited " + TimeUnit.NANOSECONDS.toMillis(busy.get()) + "ms", busy.get() < TimeUnit.MILLISECONDS.toNanos(300));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stalledBodiesTimeOut() throws Exception {
+        Assume.assumeTrue("Requires Java 11", HttpTransports.isHttp2Supported());
+
+        // Announces 10 bytes, but only sends 2
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> "HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nok");
+             HttpTransport transport = HttpTransports.createDefault()) {
+            HttpRequest request = new HttpRequest("GET", server.getUrl("/"), Collections.emptyMap(), null, Proxy.NO_PROXY, 500);
+            long start = System.nanoTime();
+
+            try {
+                transport.executeAsync(request).get(5, TimeUnit.SECONDS);
+                fail("The truncated body was read");
+            } catch (ExecutionException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+            }
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * The response parsing and the connection reuse of the {@link NioHttpTransport}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class NioHttpTransportTest {
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    @Test
+    public void parsesChunkedBodiesWithTrailers() throws IOException {
+        ResponseParser parser = parseByteByByte(false, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;ext=1\r\nhello\r\n6\r\n world\r\n0\r\nX-Trailer: yes\r\n\r\n");
+
+        assertTrue(parser.isDone());
+        assertTrue(parser.isKeepAlive());
+        assertEquals("hello world", body(parser));
+    }
+
+    @Test
+    public void parsesContentLengthAfterInterimResponses() throws IOException {
+        ResponseParser parser = parseByteByByte(false, "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 4\r\n\r\nbody");
+
+        assertTrue(parser.isDone());
+        assertEquals(201, parser.getStatus());
+        assertEquals("body", body(parser));
+    }
+
+    @Test
+    public void leavesTheNextResponseInTheBuffer() throws IOException {
+        ByteBuffer in = ByteBuffer.wrap((OK + OK).getBytes(StandardCharsets.ISO_8859_1));
+        ResponseParser parser = new ResponseParser(false, false);
+        parser.feed(in);
+
+        assertTrue(parser.isDone());
+        assertEquals(OK.length(), in.remaining());
+    }
+
+    @Test
+    public void http10ClosesUnlessKeptAlive() throws IOException {
+        assertFalse(parseByteByByte(false, "HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n").isKeepAlive());
+        assertTrue(parseByteByByte(false, "HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 0\r\n\r\n").isKeepAlive());
+        assertFalse(parseByteByByte(false, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n").isKeepAlive());
+    }
+
+    @Test
+    public void bodyUntilEndOfStream() throws IOException {
+        ResponseParser parser = parseByteByByte(false, "HTTP/1.1 200 OK\r\n\r\nuntil the end");
+        assertFalse(parser.isDone());
+
+        parser.onEndOfStream();
+        assertTrue(parser.isDone());
+        assertFalse(parser.isKeepAlive());
+        assertEquals("until the end", body(parser));
+    }
+
+    @Test
+    public void noBodyForHeadAndNoContent() throws IOException {
+        assertTrue(parseByteByByte(true, "HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n").isDone());
+        assertTrue(parseByteByByte(false, "HTTP/1.1 204 No Content\r\n\r\n").isDone());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidChunkSizes() throws IOException {
+        parseByteByByte(false, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n");
+    }
+
+    @Test
+    public void reusesKeepAliveConnections() throws IOException {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> OK);
+             NioHttpTransport transport = new NioHttpTransport()) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("ok", read(transport.execute(get(server))));
+            }
+
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    public void retriesOnStaleKeepAliveConnection() throws IOException {
+        // The first connection is closed by the server on its second request, without any response
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> connection == 0 && request == 1 ? null : OK);
+             NioHttpTransport transport = new NioHttpTransport()) {
+            assertEquals("ok", read(transport.execute(get(server))));
+            assertEquals("ok", read(transport.execute(get(server))));
+
+            assertEquals(2, server.getConnectionCount());
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void doesNotRetryPartialResponses() throws IOException {
+        // The second response is cut after its status line, it may have been processed
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> request == 0 ? OK : "HTTP/1.1 200 OK\r\n" + ScriptedHttpServer.CLOSE);
+             NioHttpTransport transport = new NioHttpTransport()) {
+            assertEquals("ok", read(transport.execute(get(server))));
+
+            try {
+                read(transport.execute(get(server)));
+                fail("A cut response was read");
+            } catch (IOException expected) {
+                // Not retried
+            }
+
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+
+    static HttpRequest get(ScriptedHttpServer server) {
+        return new HttpRequest("GET", server.getUrl("/"), Collections.<String, String>emptyMap(), null, null);
+    }
+
+    static String read(HttpResponse response) throws IOException {
+        try (InputStream in = response.getBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static ResponseParser parseByteByByte(boolean noBody, String response) throws IOException {
+        ResponseParser parser = new ResponseParser(noBody, false);
+        for (byte b : response.getBytes(StandardCharsets.ISO_8859_1)) {
+            parser.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+
+        return parser;
+    }
+
+    private static String body(ResponseParser parser) {
+        return new String(parser.getBody(), 0, parser.getLength(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static fr.litarvan.openauth.transport.NioHttpTransportTest.get;
+import static fr.litarvan.openauth.transport.NioHttpTransportTest.read;
+import static org.junit.Assert.*;
+
+/**
+ * The connection reuse of the {@link PooledHttpTransport}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class PooledHttpTransportTest {
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    @Test
+    public void reusesKeepAliveConnections() throws IOException {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> OK);
+             PooledHttpTransport transport = new PooledHttpTransport()) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("ok", read(transport.execute(get(server))));
+            }
+
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    public void retriesOnStaleKeepAliveConnection() throws IOException {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> connection == 0 && request == 1 ? null : OK);
+             PooledHttpTransport transport = new PooledHttpTransport()) {
+            assertEquals("ok", read(transport.execute(get(server))));
+            assertEquals("ok", read(transport.execute(get(server))));
+
+            assertEquals(2, server.getConnectionCount());
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void doesNotRetryPartialResponses() throws IOException {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> request == 0 ? OK : "HTTP/1.1 200 OK\r\n" + ScriptedHttpServer.CLOSE);
+             PooledHttpTransport transport = new PooledHttpTransport()) {
+            assertEquals("ok", read(transport.execute(get(server))));
+
+            try {
+                read(transport.execute(get(server)));
+                fail("A cut response was read");
+            } catch (IOException expected) {
+                // Not retried
+            }
+
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void doesNotRetryNewConnections() throws IOException {
+        try (ScriptedHttpServer server = new ScriptedHttpServer((connection, request) -> null);
+             PooledHttpTransport transport = new PooledHttpTransport()) {
+            try {
+                transport.execute(get(server));
+                fail("A response was read");
+            } catch (IOException expected) {
+                // Not retried
+            }
+
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+}
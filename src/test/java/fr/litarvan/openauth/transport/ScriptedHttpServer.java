@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripted HTTP Server
+ *
+ * <p>
+ *     A raw socket server answering each request with the bytes its {@link Script} gives, to test
+ *     the transports against exact responses and connections closed at a given point.
+ * </p>
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ScriptedHttpServer implements Closeable {
+
+    /**
+     * The response of a request
+     */
+    public interface Script {
+
+        /**
+         * @param connection
+         *            The index of the connection, from 0
+         * @param request
+         *            The index of the request on this connection, from 0
+         *
+         * @return The raw bytes to send, then the connection is kept open ; or null to close it
+         *         without answering. Ending the bytes with {@link #CLOSE} closes it after them.
+         */
+        String respond(int connection, int request);
+    }
+
+    /**
+     * Suffix of a scripted response closing the connection after it
+     */
+    public static final String CLOSE = "\u0000close";
+
+    private final ServerSocket socket;
+
+    private final Script script;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Scripted-Server");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * @param script
+     *            The responses of the requests
+     *
+     * @throws IOException If the server couldn't be bound
+     */
+    public ScriptedHttpServer(Script script) throws IOException {
+        this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.script = script;
+
+        executor.execute(this::accept);
+    }
+
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                int index = connections.getAndIncrement();
+
+                executor.execute(() -> serve(client, index));
+            } catch (IOException ignored) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket client, int connection) {
+        try (InputStream in = client.getInputStream(); OutputStream out = client.getOutputStream()) {
+            for (int request = 0; readRequest(in); request++) {
+                requests.incrementAndGet();
+
+                String response = script.respond(connection, request);
+                if (response == null) {
+                    return;
+                }
+
+                boolean close = response.endsWith(CLOSE);
+                if (close) {
+                    response = response.substring(0, response.length() - CLOSE.length());
+                }
+
+                out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+
+                if (close) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+            // Closed by the client
+        }
+    }
+
+    /**
+     * Reads a request head and its body, returns false at the end of the stream
+     */
+    private static boolean readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            head.write(c);
+
+            byte[] bytes = head.toByteArray();
+            int size = bytes.length;
+            if (size >= 4 && bytes[size - 4] == '\r' && bytes[size - 3] == '\n' && bytes[size - 2] == '\r' && bytes[size - 1] == '\n') {
+                break;
+            }
+        }
+
+        if (c == -1) {
+            return false;
+        }
+
+        long length = 0;
+        for (String line : head.toString("ISO-8859-1").split("\r\n")) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                length = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+            }
+        }
+
+        for (long i = 0; i < length; i++) {
+            if (in.read() == -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param path
+     *            The path of the URL
+     *
+     * @return The URL of the given path on this server
+     */
+    public URL getUrl(String path) {
+        try {
+            return new URL("http", socket.getInetAddress().getHostAddress(), socket.getLocalPort(), path);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The number of accepted connections
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return The number of received requests
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+
+        executor.shutdownNow();
+    }
+}
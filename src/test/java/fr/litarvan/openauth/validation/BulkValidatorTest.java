@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * The validations of a {@link BulkValidator}, against a {@link YggdrasilStubServer}
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class BulkValidatorTest {
+
+    private YggdrasilStubServer server;
+
+    private Authenticator authenticator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new YggdrasilStubServer().setLatency(5, TimeUnit.MILLISECONDS).start();
+        authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS);
+    }
+
+    @After
+    public void tearDown() {
+        authenticator.close();
+        server.close();
+    }
+
+    @Test
+    public void countsEveryResult() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tokens.add(i % 5 == 0 ? "invalid-" + i : server.issue("Player" + i).getAccessToken());
+        }
+
+        AtomicInteger results = new AtomicInteger();
+        AtomicLong lastProgress = new AtomicLong();
+        BulkValidationSummary summary = new BulkValidator(authenticator, 8).validate(tokens, new BulkValidationListener() {
+            @Override
+            public void onResult(TokenValidation result) {
+                results.incrementAndGet();
+                assertEquals(result.getAccessToken().startsWith("invalid"), !result.isValid());
+            }
+
+            @Override
+            public void onProgress(long completed, long total) {
+                assertEquals(50, total);
+                lastProgress.set(completed);
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(40, summary.getValid());
+        assertEquals(10, summary.getInvalid());
+        assertEquals(0, summary.getErrors());
+        assertEquals(50, results.get());
+        assertEquals(50, lastProgress.get());
+    }
+
+    @Test
+    public void emptyInputCompletesAtOnce() throws Exception {
+        BulkValidationSummary summary = new BulkValidator(authenticator, 4).validate(new ArrayList<>(), result -> fail("A result was given")).get(1, TimeUnit.SECONDS);
+
+        assertEquals(0, summary.getTotal());
+    }
+
+    @Test
+    public void nullTokensAreRejected() throws Exception {
+        try {
+            new BulkValidator(authenticator, 4).validate(Arrays.asList("token-1", null, "token-2"), result -> {
+            }).get(10, TimeUnit.SECONDS);
+            fail("The validation completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+
+        // Only the token before the null one was sent
+        Thread.sleep(100);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void slowListenerDoesNotStopTheRequests() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tokens.add("token-" + i);
+        }
+
+        AtomicBoolean first = new AtomicBoolean(true);
+        AtomicBoolean requested = new AtomicBoolean();
+        AtomicInteger calling = new AtomicInteger();
+        AtomicBoolean concurrent = new AtomicBoolean();
+
+        BulkValidationSummary summary = new BulkValidator(authenticator, 4).validate(tokens, result -> {
+            if (calling.incrementAndGet() != 1) {
+                concurrent.set(true);
+            }
+
+            // The other results keep freeing request slots while the listener is busy
+            if (first.getAndSet(false)) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                while (server.getRequestCount() < 8 && System.nanoTime() < deadline) {
+                    Thread.yield();
+                }
+
+                requested.set(server.getRequestCount() >= 8);
+            }
+
+            calling.decrementAndGet();
+        }).get(10, TimeUnit.SECONDS);
+
+        assertTrue(requested.get());
+        assertFalse(concurrent.get());
+        assertEquals(20, summary.getTotal());
+    }
+
+    @Test
+    public void failingListenerStopsTheValidation() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tokens.add("token-" + i);
+        }
+
+        try {
+            new BulkValidator(authenticator, 1).validate(tokens, result -> {
+                throw new IllegalStateException("Stop");
+            }).get(10, TimeUnit.SECONDS);
+            fail("The validation completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Thread.sleep(100);
+        assertTrue(server.getRequestCount() < 100);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2021 Adrien 'Litarvan' Navratil
+ *
+ * This file is part of OpenAuth.
+
+ * OpenAuth is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenAuth is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with OpenAuth.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package fr.litarvan.openauth.validation;
+
+import fr.litarvan.openauth.AuthPoints;
+import fr.litarvan.openauth.Authenticator;
+import fr.litarvan.openauth.model.response.AuthResponse;
+import fr.litarvan.openauth.stub.YggdrasilStubServer;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The {@link ValidationCache}, and the validations in flight while their token is invalidated
+ *
+ * @version 1.1.6
+ * @author Litarvan
+ */
+public class ValidationCacheTest {
+
+    @Test
+    public void evictedTokensAreNotCachedByOlderValidations() {
+        ValidationCache cache = new ValidationCache(1, TimeUnit.MINUTES, 16);
+
+        long stamp = cache.stamp();
+        cache.evict("token");
+        assertFalse(cache.put("token", stamp));
+        assertFalse(cache.isValid("token"));
+
+        // Other tokens and newer validations are not affected
+        assertTrue(cache.put("other", stamp));
+        assertTrue(cache.put("token", cache.stamp()));
+        assertTrue(cache.isValid("token"));
+    }
+
+    @Test
+    public void clearIgnoresEveryOlderValidation() {
+        ValidationCache cache = new ValidationCache(1, TimeUnit.MINUTES, 16);
+
+        long stamp = cache.stamp();
+        cache.clear();
+        assertFalse(cache.put("token", stamp));
+        assertTrue(cache.put("token", cache.stamp()));
+    }
+
+    @Test
+    public void forgottenEvictionsStillIgnoreOlderValidations() {
+        ValidationCache cache = new ValidationCache(1, TimeUnit.MINUTES, 2);
+
+        long stamp = cache.stamp();
+        for (int i = 0; i < 10; i++) {
+            cache.evict("token-" + i);
+        }
+
+        assertFalse(cache.put("token-0", stamp));
+        assertTrue(cache.put("token-0", cache.stamp()));
+    }
+
+    @Test
+    public void invalidationWinsOverAValidationInFlight() throws Exception {
+        try (YggdrasilStubServer server = new YggdrasilStubServer().setLatency(300, TimeUnit.MILLISECONDS).start();
+             Authenticator authenticator = new Authenticator(server.getUrl(), AuthPoints.NORMAL_AUTH_POINTS)) {
+            ValidationCache cache = new ValidationCache(1, TimeUnit.MINUTES, 16);
+            authenticator.setValidationCache(cache);
+
+            AuthResponse session = server.issue("Notch");
+
+            // Answered by the server before the invalidation, but after the eviction
+            CompletableFuture<Void> validation = authenticator.validateAsync(session.getAccessToken());
+            Thread.sleep(50);
+            CompletableFuture<Void> invalidation = authenticator.invalidateAsync(session.getAccessToken(), session.getClientToken());
+
+            validation.get(5, TimeUnit.SECONDS);
+            assertFalse(cache.isValid(session.getAccessToken()));
+
+            invalidation.get(5, TimeUnit.SECONDS);
+            assertFalse(cache.isValid(session.getAccessToken()));
+        }
+    }
+}